@@ -1,7 +1,5 @@
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.HashMap;
@@ -9,6 +7,8 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import stackingm2.SlotSchema;
+import stackingm2.TsvReader;
 
 /*
  *  OBJECTIVES OF ANALYSIS
@@ -37,7 +37,6 @@ public class Analyzer {
 	Map<String,String> output1,output2;
 	Map<String,String> unique1,unique2,common,common1,common2;
 	
-	Set<String> singleValuedSlots;
 	SFScore scorer_sys1;
 	SFScore scorer_sys2;
 	
@@ -69,13 +68,11 @@ public class Analyzer {
 		common1 = new HashMap<String,String>();
 		common2 = new HashMap<String,String>();
 		
-		singleValuedSlots= new HashSet<String>();
 		
 		scorer_sys1 = new SFScore();
 		scorer_sys2 = new SFScore();
 		
 		uniqueSlotWiseCount = new HashMap<String,Integer>();
-		populateSingleValuedSlots();
 		getExtractions();
 		
 		System.out.println("First file: "+extractions1.size());
@@ -99,52 +96,28 @@ public class Analyzer {
 //		}
 		
 	}
-	public void populateSingleValuedSlots(){
-		singleValuedSlots.add("per:date_of_birth");
-		singleValuedSlots.add("per:age");
-		singleValuedSlots.add("per:country_of_birth");
-		singleValuedSlots.add("per:stateorprovince_of_birth");
-		singleValuedSlots.add("per:city_of_birth");
-		singleValuedSlots.add("per:date_of_death");
-		singleValuedSlots.add("per:country_of_death");
-		singleValuedSlots.add("per:stateorprovince_of_death");
-		singleValuedSlots.add("per:city_of_death");
-		singleValuedSlots.add("per:cause_of_death");
-		singleValuedSlots.add("per:religion");
-		
-		singleValuedSlots.add("org:number_of_employees_members");
-		singleValuedSlots.add("org:website");
-		singleValuedSlots.add("org:city_of_headquarters");
-		singleValuedSlots.add("org:stateorprovince_of_headquarters");
-		singleValuedSlots.add("org:country_of_headquarters");
-		singleValuedSlots.add("org:date_dissolved");
-		singleValuedSlots.add("org:date_founded");
-	}
 	public void extractForFile(String inFile, Map<String,Map<String,Set<String>>> extractions, Map<String,String> output) throws IOException{
-		BufferedReader fread = null;
+		TsvReader fread = null;
 		try {
-			fread = new BufferedReader(new FileReader(inFile));
-			String line;
-			while ((line = fread.readLine()) != null) {
-				String[] parts=line.split("\t");
-				String[] segs=line.split("\t",4);
-				String query_id=parts[0];
-				String slot_name=parts[1];
+			fread = new TsvReader(inFile);
+			while (fread.next()) {
+				String query_id=fread.field(0);
+				String slot_name=fread.field(1);
 				String slot_value=null;
 				
 				
 				Map<String,Set<String>> mp=null;
 				Set<String> st=null;
-				if(parts[3].equals("NIL")){					
+				if(fread.fieldEquals(3, "NIL")){					
 					slot_value="NIL";					
 					nil_count++;
 				}
 				else{
-					slot_value=parts[4].toLowerCase().trim();
+					slot_value=fread.field(4).toLowerCase().trim();
 					fill_count++;
 				}
 				String kk = query_id+"~"+slot_name+"~"+slot_value;
-				output.put(kk, segs[3]);
+				output.put(kk, fread.rest(3));
 				if(extractions.containsKey(query_id)){
 					mp=extractions.get(query_id);
 					extractions.remove(query_id);
@@ -533,7 +506,7 @@ public class Analyzer {
 			
 			
 			
-			if(singleValuedSlots.contains(slot_name)){
+			if(SlotSchema.isSingleValued(slot_name)){
 				//if it is a single valued slot then get highest confidence entry among two extractors
 				String slot_fill_entry = gethighestConfidenceFill(key,query_id,slot_name);
 				slot_fill_entry = noisyAndOutputs(slot_name,slot_fill_entry); 
@@ -558,7 +531,7 @@ public class Analyzer {
 			String slot_name = parts[1];
 			String line = query_id+"\t"+slot_name+"\t"+"e"+typeStr+"\t";
 			
-			if(singleValuedSlots.contains(slot_name)){
+			if(SlotSchema.isSingleValued(slot_name)){
 				//check if this was selected as the best confidence slot before
 				//if so a corresponding entry would be present in extractions1 for same query_id,slot_name
 				if(extractions1.containsKey(query_id)){
@@ -624,7 +597,7 @@ public class Analyzer {
 					uniqueSlotWiseCount.put(slot_name, 1);
 				}
 				
-				if(singleValuedSlots.contains(slot_name)){
+				if(SlotSchema.isSingleValued(slot_name)){
 					//if it is a single valued slot then get highest confidence entry among two extractors
 					String slot_fill_entry = gethighestConfidenceFill(key,query_id,slot_name);
 					line += slot_fill_entry+"\n";
@@ -655,7 +628,7 @@ public class Analyzer {
 					uniqueSlotWiseCount.put(slot_name, 1);
 				}
 				
-				if(singleValuedSlots.contains(slot_name)){
+				if(SlotSchema.isSingleValued(slot_name)){
 					//check if this was selected as the best confidence slot before
 					//if so a corresponding entry would be present in extractions1 for same query_id,slot_name
 					if(extractions1.containsKey(query_id)){
@@ -13,6 +13,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import stackingm2.BatchScorer;
+import stackingm2.KeyIndex;
+import stackingm2.KeyModel;
+import stackingm2.OutputCache;
+import stackingm2.PolyFeatures;
+import stackingm2.ResponseScorer;
+
 public class DataExtractor {
 
 	/**
@@ -27,7 +34,11 @@ public class DataExtractor {
 	Map<String,Integer> fextractions_target;
 	Map<String,String> fextractions_output;
 	scorer2013[] scorers_2013;
-	scorer2014[] scorers_2014;
+	//all 2014 scorers share one read-only key model
+	KeyModel key_2014;
+	ResponseScorer[] scorers_2014;
+	//polynomial features of the confidences written after them, null for none
+	PolyFeatures polyFeatures;
 	
 	public DataExtractor(int nsys){
 		numSystems = nsys;
@@ -46,14 +57,24 @@ public class DataExtractor {
 		scorers_2013 = new scorer2013[numSystems];
 		for(int i=0;i<numSystems;i++)
 			scorers_2013[i] = new scorer2013();
-		scorers_2014 = new scorer2014[numSystems];
-		for(int i=0;i<numSystems;i++)
-			scorers_2014[i] = new scorer2014();
+		scorers_2014 = new ResponseScorer[numSystems];
 		
 		fextractions_target = new HashMap<String,Integer>();
 		fextractions_output = new HashMap<String,String>();
 	}
 	
+	/*
+	 * scorer for one 2014 system output, judging against the shared key;
+	 * targets are 2 for correct and redundant fills, as in the stackingm2 scorer.
+	 * The systems are scored in parallel, so each one is parsed on a single
+	 * thread (see BatchScorer.newScorers)
+	 */
+	ResponseScorer newScorer2014(){
+		ResponseScorer scorer = new ResponseScorer(key_2014, "stackingms");
+		scorer.readThreads = 1;
+		return scorer;
+	}
+	
 	public void getFiles(String path){
 		File folder = new File(path);
 		File[] listOfFiles = folder.listFiles();
@@ -193,9 +214,16 @@ public class DataExtractor {
 			int tmp=i+1;
 			header += "conf_"+tmp+ "\t";
 		}
+		if(polyFeatures != null){
+			for(int i=0;i<polyFeatures.size();i++){
+				header += polyFeatures.name(i)+"\t";
+			}
+		}
 		header += "relationtype";
 		header += "\t" + "target";
 		bfeatures.write(header+"\n");
+		double[] x = new double[numSystems];
+		StringBuilder poly_str = new StringBuilder();
 		for(String key : fextractions_confs.keySet()){
 			ArrayList<Double> confs = (ArrayList<Double>) fextractions_confs.get(key);
 			String conf_str =  "";
@@ -206,6 +234,16 @@ public class DataExtractor {
 			}
 			conf_str = conf_str.trim();
 			
+			poly_str.setLength(0);
+			if(polyFeatures != null){
+				for(int i=0;i<numSystems;i++){
+					x[i] = confs.get(i);
+				}
+				for(double feature : polyFeatures.evaluate(x)){
+					poly_str.append("\t").append(feature);
+				}
+			}
+			
 			String[] parts = key.split("~");
 			String relationType = parts[1];
 			
@@ -216,7 +254,7 @@ public class DataExtractor {
 			out_str += delimiter + fextractions_target.get(key);
 			
 			bw.write(out_str+"\n");
-			bfeatures.write(conf_str+"\t"+relationType+"\t"+fextractions_target.get(key)+"\n");
+			bfeatures.write(conf_str+poly_str+"\t"+relationType+"\t"+fextractions_target.get(key)+"\n");
 		}
 		
 		bw.close();
@@ -232,6 +270,8 @@ public class DataExtractor {
 
 	 * args[3] = key file
 	 * args[4] = number of systems
+	 * args[5] = (optional) directory of cached scorer outputs (see OutputCache), "-" for none; outputs found there are not scored again
+	 * args[6] = (optional) spec of polynomial features of the confidences to add to the .features file (see PolyFeatures)
 	 */
 	public static void main(String[] args) throws IOException {
 		// TODO Auto-generated method stub
@@ -243,8 +283,47 @@ public class DataExtractor {
 		
 		DataExtractor de = new DataExtractor(nsys);
 		de.getFiles(inputDir);
+		if(args.length > 6){
+			//compile the feature spec before scoring, so that a bad spec fails early
+			de.polyFeatures = PolyFeatures.load(args[6], nsys);
+		}
+		
+		OutputCache cache = null;
+		if(args.length > 5 && !args[5].equals("-")){
+			String flags = year.equals("2014") ? "stackingm2.ResponseScorer\t"+KeyIndex.mode(true, true, false)+"\t2\t2" : "MultipleSystems.stacking.scorer2013\tanydoc";
+			cache = new OutputCache(args[5], key, flags);
+		}
+		
+		if(year.equals("2014")){
+			//take the systems found in the cache from there
+			List<Integer> misses = new ArrayList<Integer>();
+			for(int i=0;i<nsys;i++){
+				ResponseScorer scorer = de.newScorer2014();
+				if(OutputCache.load(cache, de.REOutputs[i], scorer))
+					de.scorers_2014[i] = scorer;
+				else
+					misses.add(i);
+			}
+			//parse the key once and score all other systems in parallel against it
+			if(!misses.isEmpty()){
+				de.key_2014 = KeyModel.load(key, true, true, false, null);
+				List<ResponseScorer> scorers = new ArrayList<ResponseScorer>();
+				List<String> files = new ArrayList<String>();
+				for(int i : misses){
+					de.scorers_2014[i] = de.newScorer2014();
+					scorers.add(de.scorers_2014[i]);
+					files.add(de.REOutputs[i]);
+				}
+				BatchScorer.scoreAll(scorers, files, Runtime.getRuntime().availableProcessors());
+				for(int i : misses)
+					OutputCache.store(cache, de.REOutputs[i], de.scorers_2014[i]);
+			}
+		}
 		
 		for(int i=0;i<nsys;i++){
+			if(year.equals("2014")){
+				continue;
+			}
 			System.out.println("here");
 			//run scorer
 			String[] nargs=new String[3];
@@ -253,10 +332,10 @@ public class DataExtractor {
 			nargs[2]= new String("anydoc");
 			
 			if(year.equals("2013")){
+				if(!OutputCache.load(cache, de.REOutputs[i], de.scorers_2013[i])){
 					de.scorers_2013[i].run(nargs);
-			}
-			else if(year.equals("2014")){
-					de.scorers_2014[i].run(nargs);				
+					OutputCache.store(cache, de.REOutputs[i], de.scorers_2013[i]);
+				}
 			}
 			
 		}
@@ -1,8 +1,6 @@
 package MultipleSystems.stacking;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -13,6 +11,8 @@ import java.util.Map;
 import java.util.Set;
 
 import MultipleSystems.aliasing.AliasWrapper;
+import stackingm2.SlotSchema;
+import stackingm2.TsvReader;
 
 /*
  * postProcessor Class:
@@ -35,7 +35,6 @@ public class postProcessor {
 	 */
 	Map<String,String> mpOutput=new HashMap<String,String>();
 	Map<String,Double> mpConfidence=new HashMap<String,Double>();
-	Set<String> singleValuedSlots= new HashSet<String>();
 	Set<String> filledSlots = new HashSet<String>(); //only tracks single valued slots
 	Map<String,Boolean> slotfills = new HashMap<String,Boolean>();
 	Set<String> perSlots = new HashSet<String>();
@@ -60,57 +59,10 @@ public class postProcessor {
 	public void populateSlotFills(){
 		
 		//add per slots
-		perSlots.add("per:alternate_names");
-		perSlots.add("per:date_of_birth");
-		perSlots.add("per:age");
-		perSlots.add("per:country_of_birth");
-		perSlots.add("per:stateorprovince_of_birth");
-		
-		perSlots.add("per:city_of_birth");
-		perSlots.add("per:origin");
-		perSlots.add("per:date_of_death");
-		perSlots.add("per:country_of_death");
-		perSlots.add("per:stateorprovince_of_death");
-		
-		perSlots.add("per:city_of_death");
-		perSlots.add("per:cause_of_death");
-		perSlots.add("per:countries_of_residence");
-		perSlots.add("per:statesorprovinces_of_residence");
-		perSlots.add("per:cities_of_residence");
-		
-		perSlots.add("per:schools_attended");
-		perSlots.add("per:title");
-		perSlots.add("per:employee_or_member_of");
-		perSlots.add("per:religion");
-		perSlots.add("per:spouse");
-		
-		perSlots.add("per:children");
-		perSlots.add("per:parents");
-		perSlots.add("per:siblings");
-		perSlots.add("per:other_family");
-		perSlots.add("per:charges");
-		
+		perSlots.addAll(SlotSchema.relationNames(SlotSchema.EntityType.PER));
 		
 		//add org slots
-		orgSlots.add("org:alternate_names");
-		orgSlots.add("org:political_religious_affiliation");
-		orgSlots.add("org:top_members_employees");
-		orgSlots.add("org:number_of_employees_members");
-		orgSlots.add("org:members");
-		
-		orgSlots.add("org:member_of");
-		orgSlots.add("org:subsidiaries");
-		orgSlots.add("org:parents");
-		orgSlots.add("org:founded_by");
-		orgSlots.add("org:date_founded");
-		
-		orgSlots.add("org:date_dissolved");
-		orgSlots.add("org:country_of_headquarters");
-		orgSlots.add("org:stateorprovince_of_headquarters");
-		orgSlots.add("org:city_of_headquarters");
-		orgSlots.add("org:shareholders");
-		orgSlots.add("org:website");
-	
+		orgSlots.addAll(SlotSchema.relationNames(SlotSchema.EntityType.ORG));
 		
 		String queryPrefix = new String("SF14_ENG_");
 		String delimiter = new String("~");
@@ -136,27 +88,6 @@ public class postProcessor {
 		}
 		
 	}
-	public void populateSingleValuedSlots(){
-		singleValuedSlots.add("per:date_of_birth");
-		singleValuedSlots.add("per:age");
-		singleValuedSlots.add("per:country_of_birth");
-		singleValuedSlots.add("per:stateorprovince_of_birth");
-		singleValuedSlots.add("per:city_of_birth");
-		singleValuedSlots.add("per:date_of_death");
-		singleValuedSlots.add("per:country_of_death");
-		singleValuedSlots.add("per:stateorprovince_of_death");
-		singleValuedSlots.add("per:city_of_death");
-		singleValuedSlots.add("per:cause_of_death");
-		singleValuedSlots.add("per:religion");
-		
-		singleValuedSlots.add("org:number_of_employees_members");
-		singleValuedSlots.add("org:website");
-		singleValuedSlots.add("org:city_of_headquarters");
-		singleValuedSlots.add("org:stateorprovince_of_headquarters");
-		singleValuedSlots.add("org:country_of_headquarters");
-		singleValuedSlots.add("org:date_dissolved");
-		singleValuedSlots.add("org:date_founded");
-	}
 	
 
 	public void writeOutputFile(String file) throws IOException{
@@ -185,10 +116,9 @@ public class postProcessor {
 	}
 	public void processClassifierOutput(String infile, String year) throws IOException{
 		int nLines=0, nSkipped=0, nAliasFillsSkipped=0;
-		BufferedReader csv = null;
-		csv = new BufferedReader(new FileReader(infile));
-		String line;
-		csv.readLine(); //skip header
+		TsvReader csv = null;
+		csv = new TsvReader(infile);
+		csv.next(); //skip header
 		int expectedNumFields=10,predictedTargetFieldIndex=8,fillIndex=4;
 		int conf1Index=6, conf2Index=7;
 		int confIndexStart=0,confIndexEnd=0;
@@ -210,9 +140,9 @@ public class postProcessor {
 		else{
 			System.out.println("ERR: Invalid year");
 		}
-		while ((line = csv.readLine()) != null) {
+		while (csv.next()) {
 			nLines++;
-			String[] data = line.split("\t");
+			String[] data = csv.fields();
 			runid=data[2];
 			
 			if(data.length<expectedNumFields)
@@ -243,7 +173,7 @@ public class postProcessor {
 			
 			
 			String key = data[0] + "~" + data[1];
-			if(singleValuedSlots.contains(data[1])){
+			if(SlotSchema.isSingleValued(data[1])){
 				//chose the highest confidence value for extraction				
 				if(filledSlots.contains(key)){
 					//find which extraction to keep
@@ -341,7 +271,6 @@ public class postProcessor {
 		String year = new String(args[2]);
 		String aliasFlag = new String(args[3]);
 		postProcessor pp = new postProcessor(aliasFlag, args[4],args[5]);
-		pp.populateSingleValuedSlots();
 		pp.populateSlotFills();
 		pp.processClassifierOutput(fname,year);
 		pp.writeOutputFile(outFile);
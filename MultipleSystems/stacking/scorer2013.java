@@ -252,8 +252,10 @@ package MultipleSystems.stacking;
 
 import java.io.*;
 import java.util.*;
+import stackingm2.OutputCache;
+import stackingm2.SlotSchema;
 
-public class scorer2013 {
+public class scorer2013 implements OutputCache.Tables {
 
 	float recall;
 	float precision;
@@ -311,6 +313,20 @@ public class scorer2013 {
      Map<String,Double> mpConfidence = new HashMap<String,Double>();
      Map<String,Integer> mpTarget = new HashMap<String,Integer>();
      String runid = new String("stackingms");
+
+    /**
+     *  the tables above, to take from or store in an OutputCache
+     */
+
+    public OutputCache.Outputs outputs () {
+	return new OutputCache.Outputs(mpConfidence, mpTarget, mpOutput);
+    }
+
+    public void setOutputs (OutputCache.Outputs outputs) {
+	mpConfidence = outputs.mpConfidence;
+	mpTarget = outputs.mpTarget;
+	mpOutput = outputs.mpOutput;
+    }
     
     // codes in judgement file
     // static final String CORRECT = "C";
@@ -817,82 +833,19 @@ public class scorer2013 {
 	return lines;
     }
 
-    static List<String> singleValuedSlots = Arrays.asList(
-	"per:date_of_birth",
-	"per:age",
-	"per:country_of_birth",
-	"per:stateorprovince_of_birth",
-	"per:city_of_birth",
-	"per:date_of_death",
-	"per:country_of_death",
-	"per:stateorprovince_of_death",
-	"per:city_of_death",
-	"per:cause_of_death",
-	"per:religion",
-	"org:number_of_employees_members",
-	"org:date_founded",
-	"org:date_dissolved",
-	"org:country_of_headquarters",
-	"org:stateorprovince_of_headquarters",
-	"org:city_of_headquarters",
-	"org:website");
-
-    static List<String> listValuedSlots = Arrays.asList(
-	"per:alternate_names",
-	"per:origin",
-	"per:countries_of_residence",
-	"per:statesorprovinces_of_residence",
-	"per:cities_of_residence",
-	"per:schools_attended",
-	"per:title",
-	//	"per:member_of",
-	//	"per:employee_of",
-	"per:employee_or_member_of",
-	"per:spouse",
-	"per:children",
-	"per:parents",
-	"per:siblings",
-	"per:other_family",
-	"per:charges",
-	"org:alternate_names",
-	"org:political_religious_affiliation",
-	"org:top_members_employees",
-	"org:members",
-	"org:member_of",
-	"org:subsidiaries",
-	"org:parents",
-	"org:founded_by",
-	"org:shareholders",
-	"per:awards_won",
-	"per:charities_supported",
-	"per:diseases",
-	"org:products",
-	"per:pos-from",
-	"per:neg-from",
-	"per:pos-towards",
-	"per:neg-towards",
-	"org:pos-from",
-	"org:neg-from",
-	"org:pos-towards",
-	"org:neg-towards",
-	"gpe:pos-from",
-	"gpe:neg-from",
-	"gpe:pos-towards",
-	"gpe:neg-towards");
     /*
      * given entityId:slot, classify slot as "single" or "list" valued
      */
 
     static String slotType (String slot) {
-	String[] slotFields = slot.split(":", 2);
-	if (slotFields.length != 2) {
+	int colon = slot.indexOf(':');
+	if (colon < 0) {
 	    System.out.println("Invalid slot " + slot);
 	    return "error";
 	}
-	if (singleValuedSlots.contains(slotFields[1]))
-	    return "single";
-	if (listValuedSlots.contains(slotFields[1]))
-	    return "list";
+	SlotSchema slotSchema = SlotSchema.parse(slot, colon + 1, slot.length());
+	if (slotSchema != null)
+	    return slotSchema.single ? "single" : "list";
 	System.out.println("Invalid slot " + slot);
         // return "list" if you want 2009 slots to be scored too
 	return "error"; 
@@ -1,16 +1,25 @@
 package MultipleSystems.union;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import stackingm2.BatchScorer;
+import stackingm2.DeltaScorer;
+import stackingm2.KeyModel;
+import stackingm2.OracleReport;
+import stackingm2.ResponseScorer;
+import stackingm2.ScoreResult;
+import stackingm2.SlotSchema;
+import stackingm2.TsvReader;
+
 public class SFOutputPreprocessor {
 
 	/**
@@ -64,56 +73,10 @@ public class SFOutputPreprocessor {
 	public void populateSlotFills(){
 		
 		//add per slots
-		perSlots.add("per:alternate_names");
-		perSlots.add("per:date_of_birth");
-		perSlots.add("per:age");
-		perSlots.add("per:country_of_birth");
-		perSlots.add("per:stateorprovince_of_birth");
-
-		perSlots.add("per:city_of_birth");
-		perSlots.add("per:origin");
-		perSlots.add("per:date_of_death");
-		perSlots.add("per:country_of_death");
-		perSlots.add("per:stateorprovince_of_death");
-
-		perSlots.add("per:city_of_death");
-		perSlots.add("per:cause_of_death");
-		perSlots.add("per:countries_of_residence");
-		perSlots.add("per:statesorprovinces_of_residence");
-		perSlots.add("per:cities_of_residence");
-
-		perSlots.add("per:schools_attended");
-		perSlots.add("per:title");
-		perSlots.add("per:employee_or_member_of");
-		perSlots.add("per:religion");
-		perSlots.add("per:spouse");
-
-		perSlots.add("per:children");
-		perSlots.add("per:parents");
-		perSlots.add("per:siblings");
-		perSlots.add("per:other_family");
-		perSlots.add("per:charges");
-
-
+		perSlots.addAll(SlotSchema.relationNames(SlotSchema.EntityType.PER));
+		
 		//add org slots
-		orgSlots.add("org:alternate_names");
-		orgSlots.add("org:political_religious_affiliation");
-		orgSlots.add("org:top_members_employees");
-		orgSlots.add("org:number_of_employees_members");
-		orgSlots.add("org:members");
-
-		orgSlots.add("org:member_of");
-		orgSlots.add("org:subsidiaries");
-		orgSlots.add("org:parents");
-		orgSlots.add("org:founded_by");
-		orgSlots.add("org:date_founded");
-
-		orgSlots.add("org:date_dissolved");
-		orgSlots.add("org:country_of_headquarters");
-		orgSlots.add("org:stateorprovince_of_headquarters");
-		orgSlots.add("org:city_of_headquarters");
-		orgSlots.add("org:shareholders");
-		orgSlots.add("org:website");		
+		orgSlots.addAll(SlotSchema.relationNames(SlotSchema.EntityType.ORG));
 			
 	}
 	
@@ -157,29 +120,26 @@ public class SFOutputPreprocessor {
 	}
 	
 	public void extractFillsFromFile(String inFile) throws IOException{
-		BufferedReader fread = null;
+		TsvReader fread = null;
 		try {
-			fread = new BufferedReader(new FileReader(inFile));
-			String line;
-			while ((line = fread.readLine()) != null) {
-				String[] parts=line.split("\t");
-				String[] segs=line.split("\t",4);
-				String query_id=parts[0];
-				String slot_name=parts[1];
+			fread = new TsvReader(inFile);
+			while (fread.next()) {
+				String query_id=fread.field(0);
+				String slot_name=fread.field(1);
 				String slot_value=null;
-				typeStr = parts[2];
-				if(parts[3].equals("NIL")){					
+				typeStr = fread.field(2);
+				if(fread.fieldEquals(3, "NIL")){					
 					slot_value="NIL";					
 					nilCount++;
 				}
 				else{
-					slot_value=parts[4].toLowerCase().trim();
+					slot_value=fread.field(4).toLowerCase().trim();
 					fillCount++;
 				}
 				String key = query_id+"~"+slot_name+"~"+slot_value;				
 				if(extractions.contains(key)==false){
 					extractions.add(key);
-					outputs.put(key, segs[3]);
+					outputs.put(key, fread.rest(3));
 					slotfills.put(query_id+"~"+slot_name, true);
 				}
 				else{
@@ -243,8 +203,9 @@ public class SFOutputPreprocessor {
 	 * args[1] = output path
 	 * args[2] = results summary file of all SF systems
 	 * args[3] = key file
-	 * args[5] = number of SF output files
-	 * args[6] = year
+	 * args[4] = number of SF output files
+	 * args[5] = year
+	 * args[6] = (optional) oracle report file (see stackingm2.OracleReport), 2014 only
 	 */
 	public static void main(String[] args) throws IOException {
 		// TODO Auto-generated method stub
@@ -262,6 +223,9 @@ public class SFOutputPreprocessor {
 		sfp.populateSlotFills();
 		
 		bw.write("System ID \t Precision \t Recall \t F1\n");
+		//2014 runs are scored together once all of them are preprocessed
+		List<String> runNames = new ArrayList<String>();
+		List<String> processedFiles = new ArrayList<String>();
 		for(String inFile : sfp.REOutput){
 			//extract fills from output file of SF System
 			sfp.extractFillsFromFile(inFile);
@@ -285,9 +249,8 @@ public class SFOutputPreprocessor {
 				sfp.scorer2013 = new SFScore();
 			}
 			else if(year.equals("2014")){
-				sfp.scorer2014.run(nargs);
-				bw.write(sfp.typeStr+"\t"+sfp.scorer2014.precision+"\t"+sfp.scorer2014.recall+"\t"+sfp.scorer2014.F+"\n");
-				sfp.scorer2014 = new SFScore2014();
+				runNames.add(sfp.typeStr);
+				processedFiles.add(sfp.outFile);
 			}
 			
 			
@@ -306,6 +269,23 @@ public class SFOutputPreprocessor {
 			
 		}
 		
+		if(year.equals("2014")){
+			//parse the key once and score all systems in parallel
+			KeyModel key = KeyModel.load(keyPath, true, true, false, null);
+			List<ResponseScorer> scorers = BatchScorer.newScorers(key, runNames);
+			List<ScoreResult> results = BatchScorer.scoreAll(scorers, processedFiles, Runtime.getRuntime().availableProcessors());
+			for(int i=0;i<results.size();i++){
+				ScoreResult result = results.get(i);
+				bw.write(runNames.get(i)+"\t"+result.precision()+"\t"+result.recall()+"\t"+result.f1()+"\n");
+			}
+			//oracle bounds and contribution of each system, from the responses the scorers have read
+			if(args.length > 6){
+				DeltaScorer ds = new DeltaScorer(key, null);
+				for(ResponseScorer scorer : scorers)
+					ds.addRun(scorer);
+				new OracleReport(ds).write(args[6], runNames, results);
+			}
+		}
 		
 		bw.close();
 	}
@@ -252,6 +252,7 @@ package MultipleSystems.union;
 
 import java.io.*;
 import java.util.*;
+import stackingm2.SlotSchema;
 
 public class SFScore {
 	float recall;
@@ -309,9 +310,13 @@ public class SFScore {
      Map<String, Double> mpSlotConfidence_precision = new HashMap<String, Double> (); //this is same as probability
      Map<String, Double> mpSlotConfidence_recall = new HashMap<String, Double> ();
      Map<String, Double> mpSlotConfidence_f1 = new HashMap<String, Double> ();
-     Map<String, Integer> mpSlotJudgementEntriesCount = new HashMap<String, Integer> ();
-     Map<String, Integer> mpSlotResponseEntriesCount = new HashMap<String, Integer> ();
-     Map<String, Integer> mpSlotCorrectResponseEntriesCount = new HashMap<String, Integer> ();
+     // per slot counts, one row per slot id (see slotId): key judgements, key answers, correct responses
+     int[][] slotCounts = new int[SlotSchema.NUM_SLOTS][3];
+     // slots SlotSchema does not know, their rows follow the SlotSchema ids
+     List<String> otherSlots = new ArrayList<String> ();
+     static final int SLOT_JUDGEMENTS = 0;
+     static final int SLOT_ANSWERS = 1;
+     static final int SLOT_CORRECT = 2;
     
     // codes in judgement file
     // static final String CORRECT = "C";
@@ -480,13 +485,7 @@ public class SFScore {
 	    	
 	    	//this is tracking the number of entries in judgement per slot type
 	    	
-	    String slot_type=fields[1].split(":",2)[1];
-	    if(mpSlotJudgementEntriesCount.containsKey(slot_type)){
-	    	mpSlotJudgementEntriesCount.put(slot_type,mpSlotJudgementEntriesCount.get(slot_type)+1);
-	    }
-	    else{
-	    	mpSlotJudgementEntriesCount.put(slot_type, 1);
-	    }
+	    slotCounts[slotId(fields[1])][SLOT_JUDGEMENTS]++;
 	    
 		judgement.put(key, jment);
 		equivalenceClass.put(key, eclass);
@@ -633,13 +632,8 @@ public class SFScore {
 	    num_kb_answers += num_kb_answers_to_query;
 	    
 	    
-	    String slot_type=query.split(":",2)[1];
-	    if(mpSlotResponseEntriesCount.containsKey(slot_type)){
-	    	mpSlotResponseEntriesCount.put(slot_type,mpSlotResponseEntriesCount.get(slot_type)+num_answers_to_query+num_kb_answers_to_query);
-	    }
-	    else{
-	    	mpSlotResponseEntriesCount.put(slot_type, num_answers_to_query+num_kb_answers_to_query);
-	    }
+	    int slot_row=slotId(query);
+	    slotCounts[slot_row][SLOT_ANSWERS] += num_answers_to_query+num_kb_answers_to_query;
 	    
 
 	    List<String> responseList = response.get(query);
@@ -696,12 +690,7 @@ public class SFScore {
 			Integer E = equivalenceClass.get(key);
 			if (distincts.contains(E)) {
 			    num_redundant++;
-			    if(mpSlotCorrectResponseEntriesCount.containsKey(slot_type)){
-			    	mpSlotCorrectResponseEntriesCount.put(slot_type, mpSlotCorrectResponseEntriesCount.get(slot_type)+1);
-			    }
-			    else{
-			    	mpSlotCorrectResponseEntriesCount.put(slot_type, 1);
-			    }
+			    slotCounts[slot_row][SLOT_CORRECT]++;
 			    symbol = "r";   // redundant with other returned response
 			} else {
 			    num_kb_redundant++;
@@ -715,12 +704,7 @@ public class SFScore {
 			} else {
 			    num_correct++;
 			    distincts.add(E);
-			    if(mpSlotCorrectResponseEntriesCount.containsKey(slot_type)){
-			    	mpSlotCorrectResponseEntriesCount.put(slot_type, mpSlotCorrectResponseEntriesCount.get(slot_type)+1);
-			    }
-			    else{
-			    	mpSlotCorrectResponseEntriesCount.put(slot_type, 1);
-			    }
+			    slotCounts[slot_row][SLOT_CORRECT]++;
 			}
 		    } else {
 			System.out.println ("ERROR: Invalid judgement " + J);
@@ -767,10 +751,14 @@ public class SFScore {
 	System.out.println ("\tF1: " + F);
 	
 	
-	for(String key : mpSlotCorrectResponseEntriesCount.keySet()){
-		double ncorrect =  mpSlotCorrectResponseEntriesCount.get(key);
-		double nresponses = mpSlotResponseEntriesCount.get(key);
-		double njudgement = mpSlotJudgementEntriesCount.get(key);
+	for(int row = 0; row < SlotSchema.NUM_SLOTS + otherSlots.size(); row++){
+		int[] counts = slotCounts[row];
+		if(counts[SLOT_CORRECT] == 0)
+			continue;  // only slots with correct responses get a confidence
+		String key = row < SlotSchema.NUM_SLOTS ? SlotSchema.byId(row).slotName : otherSlots.get(row - SlotSchema.NUM_SLOTS);
+		double ncorrect = counts[SLOT_CORRECT];
+		double nresponses = counts[SLOT_ANSWERS];
+		double njudgement = counts[SLOT_JUDGEMENTS];
 		//System.out.println("key: "+key+ " correct responses: "+ncorrect);
 		//System.out.println("key: "+key+ " total responses: "+nresponses);
 		//System.out.println("key: "+key+ " judgement responses: "+njudgement);
@@ -802,6 +790,33 @@ public class SFScore {
 		
     }
 
+
+    /**
+     *  row of slotCounts for the slot of query (query id:slot): its SlotSchema
+     *  id, or a row after them for a slot SlotSchema does not know, added
+     *  (and the matrix grown) on first use
+     */
+
+    int slotId (String query) {
+	int colon = query.indexOf(':');
+	SlotSchema slotSchema = SlotSchema.parse(query, colon + 1, query.length());
+	if (slotSchema != null)
+	    return slotSchema.id();
+	String slot = query.substring(colon + 1);
+	int other = otherSlots.indexOf(slot);
+	if (other < 0) {
+	    other = otherSlots.size();
+	    otherSlots.add(slot);
+	    int row = SlotSchema.NUM_SLOTS + other;
+	    if (row == slotCounts.length) {
+		slotCounts = Arrays.copyOf(slotCounts, row * 2);
+		for (int i = row; i < slotCounts.length; i++)
+		    slotCounts[i] = new int[3];
+	    }
+	}
+	return SlotSchema.NUM_SLOTS + other;
+    }
+
     /**
      *  reads a series of lines from 'fileName' and returns them as a list of Strings
      */
@@ -828,82 +843,19 @@ public class SFScore {
 	return lines;
     }
 
-    static List<String> singleValuedSlots = Arrays.asList(
-	"per:date_of_birth",
-	"per:age",
-	"per:country_of_birth",
-	"per:stateorprovince_of_birth",
-	"per:city_of_birth",
-	"per:date_of_death",
-	"per:country_of_death",
-	"per:stateorprovince_of_death",
-	"per:city_of_death",
-	"per:cause_of_death",
-	"per:religion",
-	"org:number_of_employees_members",
-	"org:date_founded",
-	"org:date_dissolved",
-	"org:country_of_headquarters",
-	"org:stateorprovince_of_headquarters",
-	"org:city_of_headquarters",
-	"org:website");
-
-    static List<String> listValuedSlots = Arrays.asList(
-	"per:alternate_names",
-	"per:origin",
-	"per:countries_of_residence",
-	"per:statesorprovinces_of_residence",
-	"per:cities_of_residence",
-	"per:schools_attended",
-	"per:title",
-	//	"per:member_of",
-	//	"per:employee_of",
-	"per:employee_or_member_of",
-	"per:spouse",
-	"per:children",
-	"per:parents",
-	"per:siblings",
-	"per:other_family",
-	"per:charges",
-	"org:alternate_names",
-	"org:political_religious_affiliation",
-	"org:top_members_employees",
-	"org:members",
-	"org:member_of",
-	"org:subsidiaries",
-	"org:parents",
-	"org:founded_by",
-	"org:shareholders",
-	"per:awards_won",
-	"per:charities_supported",
-	"per:diseases",
-	"org:products",
-	"per:pos-from",
-	"per:neg-from",
-	"per:pos-towards",
-	"per:neg-towards",
-	"org:pos-from",
-	"org:neg-from",
-	"org:pos-towards",
-	"org:neg-towards",
-	"gpe:pos-from",
-	"gpe:neg-from",
-	"gpe:pos-towards",
-	"gpe:neg-towards");
     /*
      * given entityId:slot, classify slot as "single" or "list" valued
      */
 
     static String slotType (String slot) {
-	String[] slotFields = slot.split(":", 2);
-	if (slotFields.length != 2) {
+	int colon = slot.indexOf(':');
+	if (colon < 0) {
 	    System.out.println("Invalid slot " + slot);
 	    return "error";
 	}
-	if (singleValuedSlots.contains(slotFields[1]))
-	    return "single";
-	if (listValuedSlots.contains(slotFields[1]))
-	    return "list";
+	SlotSchema slotSchema = SlotSchema.parse(slot, colon + 1, slot.length());
+	if (slotSchema != null)
+	    return slotSchema.single ? "single" : "list";
 	System.out.println("Invalid slot " + slot);
         // return "list" if you want 2009 slots to be scored too
 	return "error"; 
@@ -361,6 +361,8 @@ package MultipleSystems.union;
 
 import java.io.*;
 import java.util.*;
+import stackingm2.JudgmentLog;
+import stackingm2.SlotSchema;
 
 public class SFScore2014 {
 	float recall;
@@ -369,6 +371,9 @@ public class SFScore2014 {
     // true to print out judgement for each line of response
      boolean trace = false;
 
+    // file to write the judgement of each line of response to (see stackingm2.JudgmentLog); null for none
+     String traceFile = null;
+
     // true to ignore docId ... match only on answerString
      boolean anydoc = false;
 
@@ -401,6 +406,10 @@ public class SFScore2014 {
     //  mapping from entity_id:slot_name --> list[provenance\tresponse_string]
      Map<String, List<String>> response = new HashMap <String, List<String>> ();
 
+    //  parallel to response: confidence of each response, in the same order
+    //  (kept for the judgment trace only, see trace= flag)
+     Map<String, List<Double>> responseConfidence = new HashMap <String, List<Double>> ();
+
     // keeps track of equivalent eclasses (necessary due to lenient matching)
      Map<String, Set<Integer>> equivEclassesByKey = new HashMap<String, Set<Integer>> ();
     
@@ -409,9 +418,13 @@ public class SFScore2014 {
     Map<String, Double> mpSlotConfidence_precision = new HashMap<String, Double> (); //this is same as probability
     Map<String, Double> mpSlotConfidence_recall = new HashMap<String, Double> ();
     Map<String, Double> mpSlotConfidence_f1 = new HashMap<String, Double> ();
-    Map<String, Integer> mpSlotJudgementEntriesCount = new HashMap<String, Integer> ();
-    Map<String, Integer> mpSlotResponseEntriesCount = new HashMap<String, Integer> ();
-    Map<String, Integer> mpSlotCorrectResponseEntriesCount = new HashMap<String, Integer> ();
+    // per slot counts, one row per slot id (see slotId): key judgements, key answers, correct responses
+    int[][] slotCounts = new int[SlotSchema.NUM_SLOTS][3];
+    // slots SlotSchema does not know, their rows follow the SlotSchema ids
+    List<String> otherSlots = new ArrayList<String> ();
+    static final int SLOT_JUDGEMENTS = 0;
+    static final int SLOT_ANSWERS = 1;
+    static final int SLOT_CORRECT = 2;
 
     // codes in judgement file
     // static final String CORRECT = "C";
@@ -446,11 +459,12 @@ public class SFScore2014 {
 
     public  void run (String[] args) throws IOException {
 
-	if (args.length < 2 || args.length > 7) {
+	if (args.length < 2 || args.length > 8) {
 	    System.out.println ("SlotScorer must be invoked with 2 to 8 arguments:");
 	    System.out.println ("\t<responses file>  <key file> [flag ...]");
 	    System.out.println ("flags:");
 	    System.out.println ("\ttrace  -- print a line with assessment of each system response");
+	    System.out.println ("\ttrace=<file> -- write the assessment of each system response to a binary judgment log");
 	    System.out.println ("\tanydoc -- judge response based only on answer string, ignoring doc id(s) and justification offsets");
 	    System.out.println ("\tignoreoffsets -- judge response based on answer string and doc id(s), ignoring justification offsets");
 	    System.out.println ("\tnocase -- ignore case in matching answer string");
@@ -464,6 +478,8 @@ public class SFScore2014 {
 	    String flag = args[i];
 	    if (flag.equals("trace")) {
 		trace = true;
+	    } else if (flag.startsWith("trace=")) {
+		traceFile = flag.substring(6);
 	    } else if (flag.equals("anydoc")) {
 		anydoc = true;
 		ignoreoffsets = true;
@@ -578,13 +594,7 @@ public class SFScore2014 {
 
 	    } else { // new key, this is easy: we shouldn't have any conflicts
 	    	
-		    String slot_type=fields[1].split(":",2)[1];
-		    if(mpSlotJudgementEntriesCount.containsKey(slot_type)){
-		    	mpSlotJudgementEntriesCount.put(slot_type,mpSlotJudgementEntriesCount.get(slot_type)+1);
-		    }
-		    else{
-		    	mpSlotJudgementEntriesCount.put(slot_type, 1);
-		    }
+		    slotCounts[slotId(fields[1])][SLOT_JUDGEMENTS]++;
 		    
 		judgement.put(key, jment);
 		equivalenceClass.put(key, eclass);
@@ -641,9 +651,12 @@ public class SFScore2014 {
 	    String answer_string = "";
 	    String fillerProv = "*";
 	    String provenance = relationProv;
+	    double confidence = 1.0;
 	    
 	    if (!relationProv.equals("NIL")) {
 		answer_string = "\t" + fields[4].trim();
+		if (traceFile != null && fields.length > 6)
+		    confidence = Double.parseDouble(fields[6].trim());
 		if (!ignoreoffsets) {
 		    fillerProv = fields[5].trim(); 
             fillerProv = sortSpans(fillerProv); // TODO: need to sort spans in fillerProv for lenient (unofficial) scoring
@@ -658,10 +671,15 @@ public class SFScore2014 {
 		answer_string = answer_string.toLowerCase();
 
 
-	    if (response.get(query_id) == null)
+	    if (response.get(query_id) == null) {
 		response.put(query_id, new ArrayList<String>());
+		if (traceFile != null)
+		    responseConfidence.put(query_id, new ArrayList<Double>());
+	    }
         //System.out.println("ADDING TO RESPONSES: " + query_id + " WITH " + relationProv + " AND " + fillerProv + " AND " + answer_string);
 	    response.get(query_id).add(provenance + answer_string);
+	    if (traceFile != null)
+		responseConfidence.get(query_id).add(confidence);
 	    slots.add(query_id);
 	}
 	System.out.println ("Read responses for " + response.size() + " slots.");
@@ -702,7 +720,8 @@ public class SFScore2014 {
 	// number of Redundant answers in key (that are in reference KB)
 	//   (list-value kb equivalence classes)
 	int num_kb_answers = 0;
-	
+
+	JudgmentLog judgmentLog = traceFile != null ? new JudgmentLog(traceFile) : null;
 	for (String query : slots) {
 	    String type = slotType(query);
 	    int num_answers_to_query = 0;
@@ -733,13 +752,8 @@ public class SFScore2014 {
 	    if (type == "list" || num_answers_to_query == 0)
 		num_kb_answers += num_kb_answers_to_query;
 	    
-	    String slot_type=query.split(":",2)[1];
-	    if(mpSlotResponseEntriesCount.containsKey(slot_type)){
-	    	mpSlotResponseEntriesCount.put(slot_type,mpSlotResponseEntriesCount.get(slot_type)+num_answers_to_query+num_kb_answers_to_query);
-	    }
-	    else{
-	    	mpSlotResponseEntriesCount.put(slot_type, num_answers_to_query+num_kb_answers_to_query);
-	    }
+	    int slot_row=slotId(query);
+	    slotCounts[slot_row][SLOT_ANSWERS] += num_answers_to_query+num_kb_answers_to_query;
 
 	    List<String> responseList = response.get(query);
 	    if (responseList == null) {
@@ -759,10 +773,13 @@ public class SFScore2014 {
 		}
 	    }
 	    Set<Integer> distincts = new HashSet<Integer>();
-	    for (String responseString : responseList) {
+	    List<Double> confidences = responseConfidence.get(query);
+	    for (int r=0; r<responseList.size(); r++) {
+		String responseString = responseList.get(r);
 		String fields[] = responseString.split("\t");  
 		String prov = fields[0];
 		String symbol = "?";
+		Integer eclass = null;
 		if (prov.equals("NIL")) {
 		    if (num_responses_to_query > 1)
 			System.out.println ("Warning: More than one response, including NIL, for " + query);
@@ -790,14 +807,10 @@ public class SFScore2014 {
 			num_inexact++;
 		    } else if (J.equals(REDUNDANT)) {
 			Integer E = equivalenceClass.get(key);
+			eclass = E;
 			if (distincts.contains(E)) {
 			    num_redundant++;
-			    if(mpSlotCorrectResponseEntriesCount.containsKey(slot_type)){
-			    	mpSlotCorrectResponseEntriesCount.put(slot_type, mpSlotCorrectResponseEntriesCount.get(slot_type)+1);
-			    }
-			    else{
-			    	mpSlotCorrectResponseEntriesCount.put(slot_type, 1);
-			    }
+			    slotCounts[slot_row][SLOT_CORRECT]++;
 			    symbol = "r";   // redundant with other returned response
 			} else {
 			    num_kb_redundant++;
@@ -805,18 +818,14 @@ public class SFScore2014 {
 			}
 		    } else if (J.equals(CORRECT)) {
 			Integer E = equivalenceClass.get(key);
+			eclass = E;
 			if (distincts.contains(E)) {
 			    num_redundant++;
 			    symbol = "r";   // redundant with other returned response
 			} else {
 			    num_correct++;
 			    distincts.add(E);
-			    if(mpSlotCorrectResponseEntriesCount.containsKey(slot_type)){
-			    	mpSlotCorrectResponseEntriesCount.put(slot_type, mpSlotCorrectResponseEntriesCount.get(slot_type)+1);
-			    }
-			    else{
-			    	mpSlotCorrectResponseEntriesCount.put(slot_type, 1);
-			    }
+			    slotCounts[slot_row][SLOT_CORRECT]++;
 			}
 		    } else {
 			System.out.println ("ERROR: Invalid judgement " + J);
@@ -825,8 +834,12 @@ public class SFScore2014 {
 		}
 	    if (trace)
 		System.out.println (symbol + " " + query + " " + responseString);
+	    if (judgmentLog != null)
+		judgmentLog.write(query, r, symbol.charAt(0), eclass == null ? -1 : eclass, confidences.get(r));
 	    }
 	}
+	if (judgmentLog != null)
+	    judgmentLog.close();
 
 	System.out.println ("\n======== Summary Statistics ===========");
 	if (slotFile != null)
@@ -862,30 +875,14 @@ public class SFScore2014 {
 	System.out.println ("\tPrecision: (" + num_correct + "+" + num_kb_redundant + ") / " + num_responses + " = " + precision);
 	System.out.println ("\tF1: " + F);
 	
-	for(String key : mpSlotCorrectResponseEntriesCount.keySet()){
-		double ncorrect =  0.0;
-		double nresponses = 0.0;
-		double njudgement = 0.0;
-		if(mpSlotCorrectResponseEntriesCount.containsKey(key)){
-			ncorrect = mpSlotCorrectResponseEntriesCount.get(key);
-		}
-		else
-			ncorrect = 0.0;
-		
-		if(mpSlotResponseEntriesCount.containsKey(key)){
-			nresponses = mpSlotResponseEntriesCount.get(key);
-		}
-		else
-			nresponses = 0.0;
-		
-		
-		if(mpSlotJudgementEntriesCount.containsKey(key)){
-			njudgement = mpSlotJudgementEntriesCount.get(key);
-		}
-		else
-			njudgement = 0.0;
-		
-		
+	for(int row = 0; row < SlotSchema.NUM_SLOTS + otherSlots.size(); row++){
+		int[] counts = slotCounts[row];
+		if(counts[SLOT_CORRECT] == 0)
+			continue;  // only slots with correct responses get a confidence
+		String key = row < SlotSchema.NUM_SLOTS ? SlotSchema.byId(row).slotName : otherSlots.get(row - SlotSchema.NUM_SLOTS);
+		double ncorrect = counts[SLOT_CORRECT];
+		double nresponses = counts[SLOT_ANSWERS];
+		double njudgement = counts[SLOT_JUDGEMENTS];
 		//System.out.println("key: "+key+ " correct responses: "+ncorrect);
 		//System.out.println("key: "+key+ " total responses: "+nresponses);
 		//System.out.println("key: "+key+ " judgement responses: "+njudgement);
@@ -915,6 +912,33 @@ public class SFScore2014 {
 	}*/
     }
 
+
+    /**
+     *  row of slotCounts for the slot of query (query id:slot): its SlotSchema
+     *  id, or a row after them for a slot SlotSchema does not know, added
+     *  (and the matrix grown) on first use
+     */
+
+    int slotId (String query) {
+	int colon = query.indexOf(':');
+	SlotSchema slotSchema = SlotSchema.parse(query, colon + 1, query.length());
+	if (slotSchema != null)
+	    return slotSchema.id();
+	String slot = query.substring(colon + 1);
+	int other = otherSlots.indexOf(slot);
+	if (other < 0) {
+	    other = otherSlots.size();
+	    otherSlots.add(slot);
+	    int row = SlotSchema.NUM_SLOTS + other;
+	    if (row == slotCounts.length) {
+		slotCounts = Arrays.copyOf(slotCounts, row * 2);
+		for (int i = row; i < slotCounts.length; i++)
+		    slotCounts[i] = new int[3];
+	    }
+	}
+	return SlotSchema.NUM_SLOTS + other;
+    }
+
     /**
      *  reads a series of lines from 'fileName' and returns them as a list of Strings
      */
@@ -941,82 +965,19 @@ public class SFScore2014 {
 	return lines;
     }
 
-    static List<String> singleValuedSlots = Arrays.asList(
-	"per:date_of_birth",
-	"per:age",
-	"per:country_of_birth",
-	"per:stateorprovince_of_birth",
-	"per:city_of_birth",
-	"per:date_of_death",
-	"per:country_of_death",
-	"per:stateorprovince_of_death",
-	"per:city_of_death",
-	"per:cause_of_death",
-	"per:religion",
-	"org:number_of_employees_members",
-	"org:date_founded",
-	"org:date_dissolved",
-	"org:country_of_headquarters",
-	"org:stateorprovince_of_headquarters",
-	"org:city_of_headquarters",
-	"org:website");
-
-    static List<String> listValuedSlots = Arrays.asList(
-	"per:alternate_names",
-	"per:origin",
-	"per:countries_of_residence",
-	"per:statesorprovinces_of_residence",
-	"per:cities_of_residence",
-	"per:schools_attended",
-	"per:title",
-	//	"per:member_of",
-	//	"per:employee_of",
-	"per:employee_or_member_of",
-	"per:spouse",
-	"per:children",
-	"per:parents",
-	"per:siblings",
-	"per:other_family",
-	"per:charges",
-	"org:alternate_names",
-	"org:political_religious_affiliation",
-	"org:top_members_employees",
-	"org:members",
-	"org:member_of",
-	"org:subsidiaries",
-	"org:parents",
-	"org:founded_by",
-	"org:shareholders",
-	"per:awards_won",
-	"per:charities_supported",
-	"per:diseases",
-	"org:products",
-	"per:pos-from",
-	"per:neg-from",
-	"per:pos-towards",
-	"per:neg-towards",
-	"org:pos-from",
-	"org:neg-from",
-	"org:pos-towards",
-	"org:neg-towards",
-	"gpe:pos-from",
-	"gpe:neg-from",
-	"gpe:pos-towards",
-	"gpe:neg-towards");
     /*
      * given entityId:slot, classify slot as "single" or "list" valued
      */
 
     static String slotType (String slot) {
-	String[] slotFields = slot.split(":", 2);
-	if (slotFields.length != 2) {
+	int colon = slot.indexOf(':');
+	if (colon < 0) {
 	    System.out.println("Invalid slot " + slot);
 	    return "error";
 	}
-	if (singleValuedSlots.contains(slotFields[1]))
-	    return "single";
-	if (listValuedSlots.contains(slotFields[1]))
-	    return "list";
+	SlotSchema slotSchema = SlotSchema.parse(slot, colon + 1, slot.length());
+	if (slotSchema != null)
+	    return slotSchema.single ? "single" : "list";
 	System.out.println("Invalid slot " + slot);
         // return "list" if you want 2009 slots to be scored too
 	return "error"; 
@@ -1,9 +1,7 @@
 package MultipleSystems.union;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.HashMap;
@@ -11,6 +9,8 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import stackingm2.SlotSchema;
+import stackingm2.TsvReader;
 
 public class UnionGenerator {
 
@@ -33,7 +33,6 @@ public class UnionGenerator {
 	Map<String,String> uniqueOutputs;
 	Set<String> uniqueExtractions;
 	Set<String> nilExtractions;
-	Set<String> singleValuedSlots;
 	Set<String> filledSingleValuedSlots;
 	//SFScore[] scorers;
 	String typeStr=null;
@@ -57,7 +56,6 @@ public class UnionGenerator {
 		nilCount=0;
 		fillCount=0;
 	
-		singleValuedSlots = new HashSet<String>();
 		filledSingleValuedSlots = new HashSet<String>();
 	/*
 	  scorers = new SFScore[numSystems];
@@ -73,56 +71,31 @@ public class UnionGenerator {
 		slotfills = new HashMap<String,Boolean>();
 		perSlots = new HashSet<String>();
 		orgSlots = new HashSet<String>();
-		populateSingleValuedSlots();
 		populateSlotFills();
 	}
 	
-	public void populateSingleValuedSlots(){
-		singleValuedSlots.add("per:date_of_birth");
-		singleValuedSlots.add("per:age");
-		singleValuedSlots.add("per:country_of_birth");
-		singleValuedSlots.add("per:stateorprovince_of_birth");
-		singleValuedSlots.add("per:city_of_birth");
-		singleValuedSlots.add("per:date_of_death");
-		singleValuedSlots.add("per:country_of_death");
-		singleValuedSlots.add("per:stateorprovince_of_death");
-		singleValuedSlots.add("per:city_of_death");
-		singleValuedSlots.add("per:cause_of_death");
-		singleValuedSlots.add("per:religion");
-		
-		singleValuedSlots.add("org:number_of_employees_members");
-		singleValuedSlots.add("org:website");
-		singleValuedSlots.add("org:city_of_headquarters");
-		singleValuedSlots.add("org:stateorprovince_of_headquarters");
-		singleValuedSlots.add("org:country_of_headquarters");
-		singleValuedSlots.add("org:date_dissolved");
-		singleValuedSlots.add("org:date_founded");
-	}
 	
 	public void extractUnionFromFile(String inFile) throws IOException{
-		BufferedReader fread = null;
+		TsvReader fread = null;
 		try {
-			fread = new BufferedReader(new FileReader(inFile));
-			String line;
-			while ((line = fread.readLine()) != null) {
-				String[] parts=line.split("\t");
-				String[] segs=line.split("\t",4);
-				String query_id=parts[0];
-				String slot_name=parts[1];
+			fread = new TsvReader(inFile);
+			while (fread.next()) {
+				String query_id=fread.field(0);
+				String slot_name=fread.field(1);
 				String slot_value=null;			
 
-				if(parts[3].equals("NIL")){					
+				if(fread.fieldEquals(3, "NIL")){					
 					slot_value="NIL";					
 					nilCount++;
 				}
 				else{
-					slot_value=parts[4].toLowerCase().trim();
+					slot_value=fread.field(4).toLowerCase().trim();
 					fillCount++;
 				}
 				String key = query_id+"~"+slot_name+"~"+slot_value;				
 				if(uniqueExtractions.contains(key)==false){
 					uniqueExtractions.add(key);
-					uniqueOutputs.put(key, segs[3]);
+					uniqueOutputs.put(key, fread.rest(3));
 					slotfills.put(query_id+"~"+slot_name, true);
 				}
 				else{
@@ -147,56 +120,10 @@ public class UnionGenerator {
 	public void populateSlotFills(){
 			
 		//add per slots
-		perSlots.add("per:alternate_names");
-		perSlots.add("per:date_of_birth");
-		perSlots.add("per:age");
-		perSlots.add("per:country_of_birth");
-		perSlots.add("per:stateorprovince_of_birth");
-
-		perSlots.add("per:city_of_birth");
-		perSlots.add("per:origin");
-		perSlots.add("per:date_of_death");
-		perSlots.add("per:country_of_death");
-		perSlots.add("per:stateorprovince_of_death");
-
-		perSlots.add("per:city_of_death");
-		perSlots.add("per:cause_of_death");
-		perSlots.add("per:countries_of_residence");
-		perSlots.add("per:statesorprovinces_of_residence");
-		perSlots.add("per:cities_of_residence");
-
-		perSlots.add("per:schools_attended");
-		perSlots.add("per:title");
-		perSlots.add("per:employee_or_member_of");
-		perSlots.add("per:religion");
-		perSlots.add("per:spouse");
-
-		perSlots.add("per:children");
-		perSlots.add("per:parents");
-		perSlots.add("per:siblings");
-		perSlots.add("per:other_family");
-		perSlots.add("per:charges");
-
-
+		perSlots.addAll(SlotSchema.relationNames(SlotSchema.EntityType.PER));
+		
 		//add org slots
-		orgSlots.add("org:alternate_names");
-		orgSlots.add("org:political_religious_affiliation");
-		orgSlots.add("org:top_members_employees");
-		orgSlots.add("org:number_of_employees_members");
-		orgSlots.add("org:members");
-
-		orgSlots.add("org:member_of");
-		orgSlots.add("org:subsidiaries");
-		orgSlots.add("org:parents");
-		orgSlots.add("org:founded_by");
-		orgSlots.add("org:date_founded");
-
-		orgSlots.add("org:date_dissolved");
-		orgSlots.add("org:country_of_headquarters");
-		orgSlots.add("org:stateorprovince_of_headquarters");
-		orgSlots.add("org:city_of_headquarters");
-		orgSlots.add("org:shareholders");
-		orgSlots.add("org:website");		
+		orgSlots.addAll(SlotSchema.relationNames(SlotSchema.EntityType.ORG));
 			
 	}
 	
@@ -274,7 +201,7 @@ public class UnionGenerator {
 			String slotFill = new String(parts[2]);
 			String line = queryId+"\t"+slotName+"\t"+typeStr+"\t";
 			
-			if(singleValuedSlots.contains(slotName)){
+			if(SlotSchema.isSingleValued(slotName)){
 				if(filledSingleValuedSlots.contains(queryId+"\t"+slotName)){
 					//already filled slot with highest confidence fill
 					continue;
@@ -5,6 +5,8 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.util.Map;
 
+import stackingm2.OutputCache;
+
 /*
  * Extract training data for classifiers from 
  * output file of extractors and key file.
@@ -24,6 +26,16 @@ public class DataExtractor {
 	scorer2014 s1_2014=new scorer2014();
 	scorer2014 s2_2014= new scorer2014();
 	
+	/*
+	 * Command line args
+	 * 
+	 * @args[0] Relation extractor output 1
+	 * @args[1] Relation extractor output 2
+	 * @args[2] key file 
+	 * @args[3] year
+	 * @args[4] (optional) directory of cached scorer outputs (see stackingm2.OutputCache); outputs found there are not scored again
+	 *  
+	 */
 	public static void main(String[] args) throws IOException {
 		// TODO Auto-generated method stub
 		String fname1 = new String(args[0]);
@@ -41,20 +53,30 @@ public class DataExtractor {
 		Map<String,Double> mp1=null,mp2=null;
 		Map<String,Integer> t1=null,t2=null;
 		Map<String,String> mpOut1=null,mpOut2=null;
+		OutputCache cache = null;
+		if(args.length > 4){
+			cache = new OutputCache(args[4], key_file, "stacking.scorer"+year);
+		}
 
 		if(year.equals("2013")){
-			try {
-				de.s1_2013.run(nargs);
-			} catch (IOException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+			if(!OutputCache.load(cache, fname1, de.s1_2013)){
+				try {
+					de.s1_2013.run(nargs);
+					OutputCache.store(cache, fname1, de.s1_2013);
+				} catch (IOException e) {
+					// TODO Auto-generated catch block
+					e.printStackTrace();
+				}
 			}
 			nargs[0]=fname2;
-			try {
-				de.s2_2013.run(nargs);
-			} catch (IOException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+			if(!OutputCache.load(cache, fname2, de.s2_2013)){
+				try {
+					de.s2_2013.run(nargs);
+					OutputCache.store(cache, fname2, de.s2_2013);
+				} catch (IOException e) {
+					// TODO Auto-generated catch block
+					e.printStackTrace();
+				}
 			}
 			
 			
@@ -68,18 +90,24 @@ public class DataExtractor {
 			mpOut2=de.s2_2013.mpOutput;
 		}
 		else if(year.equals("2014")){
-			try {
-				de.s1_2014.run(nargs);
-			} catch (IOException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+			if(!OutputCache.load(cache, fname1, de.s1_2014)){
+				try {
+					de.s1_2014.run(nargs);
+					OutputCache.store(cache, fname1, de.s1_2014);
+				} catch (IOException e) {
+					// TODO Auto-generated catch block
+					e.printStackTrace();
+				}
 			}
 			nargs[0]=fname2;
-			try {
-				de.s2_2014.run(nargs);
-			} catch (IOException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+			if(!OutputCache.load(cache, fname2, de.s2_2014)){
+				try {
+					de.s2_2014.run(nargs);
+					OutputCache.store(cache, fname2, de.s2_2014);
+				} catch (IOException e) {
+					// TODO Auto-generated catch block
+					e.printStackTrace();
+				}
 			}
 			
 			
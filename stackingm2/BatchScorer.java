@@ -0,0 +1,198 @@
+package stackingm2;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * BatchScorer class:
+ *
+ * Scores a set of response files (system runs) against one key.
+ * The key is parsed once into a KeyModel that all runs share,
+ * and the runs are scored concurrently on a fork-join pool.
+ * Writes one summary table with official P/R/F1 per run and
+ * per slot of each run.
+ *
+ */
+public class BatchScorer {
+
+	/*
+	 * reads and scores responseFiles[i] with scorers[i], in parallel,
+	 * and returns the result of each
+	 *
+	 * args:
+	 *
+	 * 1) scorers - one (configured) ResponseScorer per file; they may share a KeyModel
+	 * 2) responseFiles - response file for each scorer
+	 * 3) threads - size of the worker pool
+	 *
+	 * if a run fails, the IOException or RuntimeException of the first
+	 * run that failed is thrown once all runs are done
+	 */
+	public static List<ScoreResult> scoreAll(final List<ResponseScorer> scorers, final List<String> responseFiles, int threads) throws IOException{
+		if(scorers.size() != responseFiles.size()){
+			throw new IllegalArgumentException("need one scorer per response file");
+		}
+		final ScoreResult[] results = new ScoreResult[scorers.size()];
+		//a task keeps its failure here instead of throwing it: join() would wrap it again
+		final Exception[] failures = new Exception[scorers.size()];
+		List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+		for(int i = 0; i < scorers.size(); i++){
+			final int run = i;
+			final ResponseScorer scorer = scorers.get(i);
+			final String responseFile = responseFiles.get(i);
+			tasks.add(new RecursiveAction() {
+				protected void compute() {
+					try {
+						scorer.readResponses(responseFile);
+						results[run] = scorer.score();
+					} catch (IOException e) {
+						failures[run] = e;
+					} catch (RuntimeException e) {
+						failures[run] = e;
+					}
+				}
+			});
+		}
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			for(RecursiveAction task : tasks){
+				pool.execute(task);
+			}
+			for(RecursiveAction task : tasks){
+				task.join();
+			}
+		} finally {
+			pool.shutdown();
+		}
+		//report the failure of the first run that failed, as it was thrown
+		for(Exception e : failures){
+			if(e instanceof IOException){
+				throw (IOException) e;
+			}
+			if(e != null){
+				throw (RuntimeException) e;
+			}
+		}
+		return Arrays.asList(results);
+	}
+
+	/*
+	 * one scorer per run, all sharing key; the runs are read in
+	 * parallel, so each one is parsed on a single thread
+	 */
+	public static List<ResponseScorer> newScorers(KeyModel key, List<String> runNames){
+		List<ResponseScorer> scorers = new ArrayList<ResponseScorer>();
+		for(String run : runNames){
+			ResponseScorer scorer = new ResponseScorer(key, run);
+			scorer.readThreads = 1;
+			scorers.add(scorer);
+		}
+		return scorers;
+	}
+
+	/*
+	 * writes run, slot (ALL for the whole run), counts and official P/R/F1
+	 */
+	public static void writeSummary(String summaryFile, List<String> runNames, List<ScoreResult> results) throws IOException{
+		String delimiter = "\t";
+		BufferedWriter bw = new BufferedWriter(new FileWriter(summaryFile));
+		try {
+			bw.write("run"+delimiter+"slot"+delimiter+"responses"+delimiter+"correct"+delimiter+"answers"+delimiter+"precision"+delimiter+"recall"+delimiter+"F1\n");
+			for(int i = 0; i < results.size(); i++){
+				ScoreResult result = results.get(i);
+				String run = runNames.get(i);
+				writeRow(bw, run, "ALL", result.total);
+				for(Map.Entry<String,ScoreResult.Counts> e : result.slots.entrySet()){
+					writeRow(bw, run, e.getKey(), e.getValue());
+				}
+			}
+		} finally {
+			bw.close();
+		}
+	}
+
+	private static void writeRow(BufferedWriter bw, String run, String slot, ScoreResult.Counts c) throws IOException{
+		String delimiter = "\t";
+		bw.write(run+delimiter+slot+delimiter+c.responses+delimiter+(c.correct+c.kb_redundant)+delimiter+(c.answers+c.kb_answers)
+				+delimiter+c.precision()+delimiter+c.recall()+delimiter+c.f1()+"\n");
+	}
+
+	/*
+	 * Command line args
+	 *
+	 * @args[0] directory of response files, one per run
+	 * @args[1] key file
+	 * @args[2] summary file
+	 * @args[3..] flags : anydoc, ignoreoffsets, nocase, keyindex=<dir>, threads=<n>
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 3){
+			System.out.println("BatchScorer must be invoked with: <responses dir> <key file> <summary file> [flag ...]");
+			System.exit(1);
+		}
+		String responseDir = args[0];
+		String keyFile = args[1];
+		String summaryFile = args[2];
+		boolean anydoc = false, ignoreoffsets = false, nocase = false;
+		String keyIndexDir = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		for(int i = 3; i < args.length; i++){
+			String flag = args[i];
+			if(flag.equals("anydoc")){
+				anydoc = true;
+				ignoreoffsets = true;
+			}
+			else if(flag.equals("ignoreoffsets")){
+				ignoreoffsets = true;
+			}
+			else if(flag.equals("nocase")){
+				nocase = true;
+			}
+			else if(flag.startsWith("keyindex=")){
+				keyIndexDir = flag.substring(9);
+			}
+			else if(flag.startsWith("threads=")){
+				threads = Integer.parseInt(flag.substring(8));
+			}
+			else{
+				System.out.println("Unknown flag: " + flag);
+				System.exit(1);
+			}
+		}
+
+		File[] listOfFiles = new File(responseDir).listFiles();
+		if(listOfFiles == null){
+			System.out.println("Unable to list response directory " + responseDir);
+			System.exit(1);
+		}
+		Arrays.sort(listOfFiles);
+		List<String> runNames = new ArrayList<String>();
+		List<String> responseFiles = new ArrayList<String>();
+		for(File f : listOfFiles){
+			if(f.isFile()){
+				runNames.add(f.getName());
+				responseFiles.add(f.getPath());
+			}
+		}
+
+		KeyModel key = KeyModel.load(keyFile, anydoc, ignoreoffsets, nocase, keyIndexDir);
+		List<ResponseScorer> scorers = newScorers(key, runNames);
+		List<ScoreResult> results = null;
+		try {
+			results = scoreAll(scorers, responseFiles, threads);
+		} catch (IllegalStateException e) {
+			System.out.println("Error: " + e.getMessage());
+			System.exit(1);
+		}
+		writeSummary(summaryFile, runNames, results);
+		System.out.println("Scored " + scorers.size() + " runs into " + summaryFile);
+	}
+}
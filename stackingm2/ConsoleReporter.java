@@ -0,0 +1,63 @@
+package stackingm2;
+
+import java.io.PrintStream;
+
+/*
+ * ConsoleReporter class:
+ *
+ * Prints a ScoreResult the way the NIST scorer always has: the
+ * warnings and trace lines of the run, then the summary statistics
+ * with the diagnostic and official scores.
+ *
+ */
+public class ConsoleReporter {
+
+	final PrintStream out;
+
+	public ConsoleReporter(PrintStream out){
+		this.out = out;
+	}
+
+	public ConsoleReporter(){
+		this(System.out);
+	}
+
+	public void report(ScoreResult result){
+		for(String message : result.messages){
+			out.println(message);
+		}
+		printSummary(result);
+	}
+
+	public void printSummary(ScoreResult result){
+		ScoreResult.Counts c = result.total;
+		out.println("\n======== Summary Statistics ===========");
+		if(result.slotFile != null)
+			out.println("Slot lists taken from file " + result.slotFile);
+		else
+			out.println("Slot lists taken from system responses");
+		out.println("Slot lists include " + result.num_sv_slots + " single valued slots");
+		out.println("               and " + result.num_list_slots + " list-valued slots");
+		out.println("\nNumber of filled slots in key that are not in reference KB: " + c.answers);
+		out.println("Number of filled slots in key that are in reference KB: " + c.kb_answers);
+		out.println("\nNumber of filled slots in responses: " + c.responses);
+		out.println("\tNumber Correct (not in reference KB): " + c.correct);
+		out.println("\tNumber Redundant with reference KB: " + c.kb_redundant);
+		out.println("\tNumber redundant with another response: " + c.redundant);
+		out.println("\tNumber inexact: " + c.inexact);
+		out.println("\tNumber incorrect / spurious: " + c.wrong);
+
+		if(result.countsNils)
+			out.println("nilc,nilw : " + result.nilc + "," + result.nilw);
+
+		out.println("\nDiagnostic scores (ignoring slot fillers in key and responses that are already in reference KB):");
+		out.println("\tDiagnostic Recall: " + c.correct + " / " + c.answers + " = " + c.diagnosticRecall());
+		out.println("\tDiagnostic Precision: " + c.correct + " / (" + c.responses + "-" + c.kb_redundant + ") = " + c.diagnosticPrecision());
+		out.println("\tDiagnostic F1: " + c.diagnosticF1());
+
+		out.println("\nOfficial Scores (requiring slot fillers that are already in reference KB):");
+		out.println("\tRecall: (" + c.correct + "+" + c.kb_redundant + ") / (" + c.answers + "+" + c.kb_answers + ") = " + c.recall());
+		out.println("\tPrecision: (" + c.correct + "+" + c.kb_redundant + ") / " + c.responses + " = " + c.precision());
+		out.println("\tF1: " + c.f1());
+	}
+}
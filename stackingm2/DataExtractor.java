@@ -1,13 +1,9 @@
 package stackingm2;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.TreeSet;
 
 /*
  * DataExtractor class:
@@ -32,177 +28,37 @@ public class DataExtractor {
 	scorer2014 s1_2014=new scorer2014();
 	scorer2014 s2_2014= new scorer2014();
 	
-	Map<String,Integer> relationIDs = new HashMap<String,Integer>();
-	Map<String,Integer> relationGroupIDs = new HashMap<String,Integer>();
-	Set<String> singleValuedSlots= new HashSet<String>();
+	//slot id -> fillscount
+	int[] fillsCount = new int[SlotSchema.NUM_RELATIONS];
 	
-	//map to track slot type -> fillscount 
-	Map<String,Integer> fillsCount = new HashMap<String,Integer>();
-	public DataExtractor(){
+	//format of the output files, see FeatureSink; null for none, with memorySinks only
+	String format = "tsv";
 	
-		//insert relation IDs - an integer value for each relation type to use as feature for classification
-		relationIDs.put("per:alternate_names",0);
-		relationIDs.put("per:date_of_birth",1);
-		relationIDs.put("per:age",2);
-		relationIDs.put("per:country_of_birth",3);
-		relationIDs.put("per:stateorprovince_of_birth",4);
-		relationIDs.put("per:city_of_birth",5);
-		relationIDs.put("per:origin",6);
-		relationIDs.put("per:date_of_death",7);
-		relationIDs.put("per:country_of_death",8);
-		relationIDs.put("per:stateorprovince_of_death",9);
-		relationIDs.put("per:city_of_death",10);
-		relationIDs.put("per:cause_of_death",11);
-		relationIDs.put("per:countries_of_residence",12);
-		relationIDs.put("per:statesorprovinces_of_residence",13);
-		relationIDs.put("per:cities_of_residence",14);
-		relationIDs.put("per:schools_attended",15);
-		relationIDs.put("per:title",16);
-		relationIDs.put("per:employee_or_member_of",17);
-		relationIDs.put("per:religion",18);
-		relationIDs.put("per:spouse",19);
-		relationIDs.put("per:children",20);
-		relationIDs.put("per:parents",21);
-		relationIDs.put("per:siblings",22);
-		relationIDs.put("per:other_family",23);
-		relationIDs.put("per:charges",24);
-		relationIDs.put("org:alternate_names",25);
-		relationIDs.put("org:political_religious_affiliation",26);
-		relationIDs.put("org:top_members_employees",27);
-		relationIDs.put("org:number_of_employees_members",28);
-		relationIDs.put("org:members",29);
-		relationIDs.put("org:member_of",30);
-		relationIDs.put("org:subsidiaries",31);
-		relationIDs.put("org:parents",32);
-		relationIDs.put("org:founded_by",33);
-		relationIDs.put("org:date_founded",34);
-		relationIDs.put("org:date_dissolved",35);
-		relationIDs.put("org:country_of_headquarters",36);
-		relationIDs.put("org:stateorprovince_of_headquarters",37);
-		relationIDs.put("org:city_of_headquarters",38);
-		relationIDs.put("org:shareholders",39);
-		relationIDs.put("org:website",40);
-		
-		//manually created groups of slots 
-		relationGroupIDs.put("per:date_of_birth",1);
-		relationGroupIDs.put("per:date_of_death",1);
-		relationGroupIDs.put("org:date_founded",1);
-		relationGroupIDs.put("org:date_dissolved",1);
-
-		relationGroupIDs.put("per:country_of_birth",2);
-		relationGroupIDs.put("per:stateorprovince_of_birth",2);
-		relationGroupIDs.put("per:city_of_birth",2);
-		relationGroupIDs.put("per:country_of_death",2);
-		relationGroupIDs.put("per:stateorprovince_of_death",2);
-		relationGroupIDs.put("per:city_of_death",2);
-		relationGroupIDs.put("per:countries_of_residence",2);
-		relationGroupIDs.put("per:statesorprovinces_of_residence",2);
-		relationGroupIDs.put("per:cities_of_residence",2);
-		relationGroupIDs.put("org:country_of_headquarters",2);
-		relationGroupIDs.put("org:stateorprovince_of_headquarters",2);
-		relationGroupIDs.put("org:city_of_headquarters",2);
-		
-		relationGroupIDs.put("per:alternate_names",3);
-		relationGroupIDs.put("org:alternate_names",3);
-		
-		
-		relationGroupIDs.put("per:spouse",4);
-		relationGroupIDs.put("per:children",4);
-		relationGroupIDs.put("per:parents",4);
-		relationGroupIDs.put("per:siblings",4);
-		relationGroupIDs.put("per:other_family",4);
-		
-		//a misc group for all other per slot types
-		relationGroupIDs.put("per:age",5);
-		relationGroupIDs.put("per:origin",5);
-		relationGroupIDs.put("per:cause_of_death",5);
-		relationGroupIDs.put("per:schools_attended",5);
-		relationGroupIDs.put("per:religion",5);
-		relationGroupIDs.put("per:charges",5);
-		
-		
-		relationGroupIDs.put("per:title",6);
-		
-		relationGroupIDs.put("per:employee_or_member_of",7);
-		
-		relationGroupIDs.put("org:top_members_employees",8);
-		
-		
-		relationGroupIDs.put("org:number_of_employees_members",9);
-		relationGroupIDs.put("org:political_religious_affiliation",9);
-		relationGroupIDs.put("org:members",9);
-		relationGroupIDs.put("org:member_of",9);
-		relationGroupIDs.put("org:subsidiaries",9);
-		relationGroupIDs.put("org:parents",9);
-		relationGroupIDs.put("org:founded_by",9);
-		relationGroupIDs.put("org:shareholders",9);
-		relationGroupIDs.put("org:website",9);
-		
-		
-		singleValuedSlots.add("per:date_of_birth");
-		singleValuedSlots.add("per:age");
-		singleValuedSlots.add("per:country_of_birth");
-		singleValuedSlots.add("per:stateorprovince_of_birth");
-		singleValuedSlots.add("per:city_of_birth");
-		singleValuedSlots.add("per:date_of_death");
-		singleValuedSlots.add("per:country_of_death");
-		singleValuedSlots.add("per:stateorprovince_of_death");
-		singleValuedSlots.add("per:city_of_death");
-		singleValuedSlots.add("per:cause_of_death");
-		singleValuedSlots.add("per:religion");
-		
-		singleValuedSlots.add("org:number_of_employees_members");
-		singleValuedSlots.add("org:website");
-		singleValuedSlots.add("org:city_of_headquarters");
-		singleValuedSlots.add("org:stateorprovince_of_headquarters");
-		singleValuedSlots.add("org:country_of_headquarters");
-		singleValuedSlots.add("org:date_dissolved");
-		singleValuedSlots.add("org:date_founded");
-		
-		
-		
-		//fillscount initialize
-		fillsCount.put("per:alternate_names",0);
-		fillsCount.put("per:date_of_birth",0);
-		fillsCount.put("per:age",0);
-		fillsCount.put("per:country_of_birth",0);
-		fillsCount.put("per:stateorprovince_of_birth",0);
-		fillsCount.put("per:city_of_birth",0);
-		fillsCount.put("per:origin",0);
-		fillsCount.put("per:date_of_death",0);
-		fillsCount.put("per:country_of_death",0);
-		fillsCount.put("per:stateorprovince_of_death",0);
-		fillsCount.put("per:city_of_death",0);
-		fillsCount.put("per:cause_of_death",0);
-		fillsCount.put("per:countries_of_residence",0);
-		fillsCount.put("per:statesorprovinces_of_residence",0);
-		fillsCount.put("per:cities_of_residence",0);
-		fillsCount.put("per:schools_attended",0);
-		fillsCount.put("per:title",0);
-		fillsCount.put("per:employee_or_member_of",0);
-		fillsCount.put("per:religion",0);
-		fillsCount.put("per:spouse",0);
-		fillsCount.put("per:children",0);
-		fillsCount.put("per:parents",0);
-		fillsCount.put("per:siblings",0);
-		fillsCount.put("per:other_family",0);
-		fillsCount.put("per:charges",0);
-		fillsCount.put("org:alternate_names",0);
-		fillsCount.put("org:political_religious_affiliation",0);
-		fillsCount.put("org:top_members_employees",0);
-		fillsCount.put("org:number_of_employees_members",0);
-		fillsCount.put("org:members",0);
-		fillsCount.put("org:member_of",0);
-		fillsCount.put("org:subsidiaries",0);
-		fillsCount.put("org:parents",0);
-		fillsCount.put("org:founded_by",0);
-		fillsCount.put("org:date_founded",0);
-		fillsCount.put("org:date_dissolved",0);
-		fillsCount.put("org:country_of_headquarters",0);
-		fillsCount.put("org:stateorprovince_of_headquarters",0);
-		fillsCount.put("org:city_of_headquarters",0);
-		fillsCount.put("org:shareholders",0);
-		fillsCount.put("org:website",0);
+	//if not null, rows are kept here in memory (see Pipeline) by output directory and name, without the year
+	Map<String,FeatureSink.Memory> memorySinks = null;
+	
+	//output columns of a row, ahead of its features
+	static final String[] OUTPUT_COLUMNS_2013 = {"queryid","relationtype","extractorID","docID","slotfill","prov1","prov2","prov3"};
+	static final String[] OUTPUT_COLUMNS_2014 = {"queryid","relationtype","extractorID","prov1","slotfill","prov2"};
+	
+	//features the side file of arff and bin output repeats: the confidences, which the predictions keep
+	static final int[] META_FEATURES = {FeatureExtractor.column("A-conf1"), FeatureExtractor.column("B-conf2")};
+	
+	/*
+	 * sink for the output file dir/year-name
+	 */
+	FeatureSink openSink(String dir, String name, String year) throws IOException{
+		String[] outputColumns = year.equals("2013") ? OUTPUT_COLUMNS_2013 : OUTPUT_COLUMNS_2014;
+		FeatureSink sink = null;
+		if(format != null){
+			sink = FeatureSink.open(format, dir+year+"-"+name, outputColumns, FeatureExtractor.FEATURES, META_FEATURES);
+		}
+		if(memorySinks == null){
+			return sink;
+		}
+		FeatureSink.Memory memory = new FeatureSink.Memory(outputColumns, FeatureExtractor.FEATURES, sink);
+		memorySinks.put(dir+name, memory);
+		return memory;
 	}
 	
 	public void writeSlotsTogether(String year,String key_file,String cu_opt) throws IOException{
@@ -236,27 +92,13 @@ public class DataExtractor {
 		
 		
 		
-		BufferedWriter bw = null,bw_unique=null;		
-		bw = new BufferedWriter(new FileWriter("run_out/"+year+"-data.txt"));
-		bw_unique = new BufferedWriter(new FileWriter("run_out/unique/"+year+"-unique-data.txt"));
+		//the sinks write the header
+		FeatureSink bw = null,bw_unique=null;		
+		bw = openSink("run_out/","data",year);
+		bw_unique = openSink("run_out/unique/","unique-data",year);
 		
-		//write header
-		//create dummy extractor
-		FeatureExtractor fe_dumm = new FeatureExtractor();
-		fe_dumm.populateFeatures(this,"A:B:C","per:origin",0.0,0.0);
-		String headerStr = new String("");
-		Set<String> featureSet = new TreeSet<String>(fe_dumm.features.keySet());
-		for(String feature_key : featureSet){
-			headerStr += feature_key+delimiter;
-		}
-		if(year.equals("2013")){			
-			bw.write("queryid"+delimiter+"relationtype"+delimiter+"extractorID"+delimiter+"docID"+delimiter+"slotfill"+delimiter+"prov1"+delimiter+"prov2"+delimiter+"prov3"+delimiter+headerStr.trim()+delimiter+"target"+"\n");
-			bw_unique.write("queryid"+delimiter+"relationtype"+delimiter+"extractorID"+delimiter+"docID"+delimiter+"slotfill"+delimiter+"prov1"+delimiter+"prov2"+delimiter+"prov3"+delimiter+headerStr.trim()+delimiter+"target"+"\n");
-		}
-		else if(year.equals("2014")){
-			bw.write("queryid"+delimiter+"relationtype"+delimiter+"extractorID"+delimiter+"prov1"+delimiter+"slotfill"+delimiter+"prov2"+delimiter+headerStr.trim()+delimiter+"target"+"\n");
-			bw_unique.write("queryid"+delimiter+"relationtype"+delimiter+"extractorID"+delimiter+"prov1"+delimiter+"slotfill"+delimiter+"prov2"+delimiter+headerStr.trim()+delimiter+"target"+"\n");
-		}
+		//one feature extractor, and row, for all slot fills
+		FeatureExtractor fe = new FeatureExtractor();
 		
 		
 		/*
@@ -282,9 +124,8 @@ public class DataExtractor {
 			String[] parts=output1.split(delimiter);
 			
 			//book keeping
-			int count = fillsCount.get(parts[1]);
-			fillsCount.remove(parts[1]);
-			fillsCount.put(parts[1],count+1);
+			SlotSchema slot = SlotSchema.parse(parts[1]);
+			fillsCount[slot.id()]++;
 			
 			if(mp2.containsKey(key)){
 				counter+=1;
@@ -298,27 +139,19 @@ public class DataExtractor {
 			/*
 			 * extract and add features
 			 */
-			//init feature extractor
-			FeatureExtractor fe = new FeatureExtractor();
-			fe.populateFeatures(this,key,parts[1],conf1,conf2);
-			
-			String featureStr = new String("");			
-			for(String feature_key : featureSet){
-				Double featureVal = fe.features.get(feature_key);
-				featureStr += featureVal + delimiter;
-			}
+			double[] row = fe.populateFeatures(key,parts[1],conf1,conf2);
 			
 			
 			if(cu_opt.equals("cusep")){
 				if(isunique){
-					bw_unique.write(output1+delimiter+featureStr.trim()+delimiter+target+"\n");
+					bw_unique.write(output1,row,target);
 				}
 				else{
-					bw.write(output1+delimiter+featureStr.trim()+delimiter+target+"\n");
+					bw.write(output1,row,target);
 				}
 			}
 			else{
-				bw.write(output1+delimiter+featureStr.trim()+delimiter+target+"\n");
+				bw.write(output1,row,target);
 			}
 			
 			//System.out.println(key+delimiter+conf1+delimiter+conf2+delimiter+target);
@@ -345,27 +178,18 @@ public class DataExtractor {
 				String[] parts=output2.split(delimiter);
 				
 				//book keeping
-				int count = fillsCount.get(parts[1]);
-				fillsCount.remove(parts[1]);
-				fillsCount.put(parts[1],count+1);
+				SlotSchema slot = SlotSchema.parse(parts[1]);
+				fillsCount[slot.id()]++;
 				
 				/*
 				 * extract and add features
 				 */
-				//init feature extractor
-				FeatureExtractor fe = new FeatureExtractor();
-				fe.populateFeatures(this,key,parts[1],conf1,conf2);
-				
-				String featureStr = new String("");				
-				for(String feature_key : featureSet){
-					Double featureVal = fe.features.get(feature_key);
-					featureStr += featureVal + delimiter;
-				}
+				double[] row = fe.populateFeatures(key,parts[1],conf1,conf2);
 				if(cu_opt.equals("cusep")){
-					bw_unique.write(output2+delimiter+featureStr.trim()+delimiter+target+"\n");
+					bw_unique.write(output2,row,target);
 				}
 				else{
-					bw.write(output2+delimiter+featureStr.trim()+delimiter+target+"\n");
+					bw.write(output2,row,target);
 				}
 				
 				
@@ -379,7 +203,7 @@ public class DataExtractor {
 	
 	public void writeSlotsSeperate(String year, String key_file,String cu_opt) throws IOException{
 		String delimiter = new String("\t");
-		Integer num_slots = relationIDs.size();
+		int num_slots = SlotSchema.NUM_RELATIONS;
 		Map<String,Double> mp1=null,mp2=null;
 		Map<String,Integer> t1=null,t2=null;
 		Map<String,String> mpOut1=null,mpOut2=null;
@@ -408,36 +232,15 @@ public class DataExtractor {
 		}
 		
 
-		//create bufferedwriter for all slot types and init to output files
-		BufferedWriter[] bw= new BufferedWriter[num_slots];
-		BufferedWriter[] bw_unique= new BufferedWriter[num_slots];
-		Set<String> featureSet = null;
-		for(String slot_name  : relationIDs.keySet()){
-			String outfilename1 = new String("run_out/"+year+"-"+slot_name+".txt");
-			Integer slotid= relationIDs.get(slot_name);
-			bw[slotid] = new BufferedWriter(new FileWriter(outfilename1));
-			
-			String outfilename2 = new String("run_out/unique/"+year+"-"+slot_name+".txt");
-			bw_unique[slotid] = new BufferedWriter(new FileWriter(outfilename2));
-			
-			//write header
-			//create dummy extractor
-			FeatureExtractor fe_dumm = new FeatureExtractor();
-			fe_dumm.populateFeatures(this,"A:B:C","per:origin",0.0,0.0);
-			String headerStr = new String("");
-			featureSet = new TreeSet<String>(fe_dumm.features.keySet());
-			for(String feature_key : featureSet){
-				headerStr += feature_key+delimiter;
-			}
-		
-			if(year.equals("2013")){			
-				bw[slotid].write("queryid"+delimiter+"relationtype"+delimiter+"extractorID"+delimiter+"docID"+delimiter+"slotfill"+delimiter+"prov1"+delimiter+"prov2"+delimiter+"prov3"+delimiter+headerStr.trim()+delimiter+"target"+"\n");
-				bw_unique[slotid].write("queryid"+delimiter+"relationtype"+delimiter+"extractorID"+delimiter+"docID"+delimiter+"slotfill"+delimiter+"prov1"+delimiter+"prov2"+delimiter+"prov3"+delimiter+headerStr.trim()+delimiter+"target"+"\n");
-			}
-			else if(year.equals("2014")){
-				bw[slotid].write("queryid"+delimiter+"relationtype"+delimiter+"extractorID"+delimiter+"prov1"+delimiter+"slotfill"+delimiter+"prov2"+delimiter+headerStr.trim()+delimiter+"target"+"\n");
-				bw_unique[slotid].write("queryid"+delimiter+"relationtype"+delimiter+"extractorID"+delimiter+"prov1"+delimiter+"slotfill"+delimiter+"prov2"+delimiter+headerStr.trim()+delimiter+"target"+"\n");
-			}
+		//create a sink for all slot types and init to output files
+		FeatureSink[] bw= new FeatureSink[num_slots];
+		FeatureSink[] bw_unique= new FeatureSink[num_slots];
+		//one feature extractor, and row, for all slot fills
+		FeatureExtractor fe = new FeatureExtractor();
+		for(int slotid = 0; slotid < num_slots; slotid++){
+			String slot_name = SlotSchema.byId(slotid).slotName;
+			bw[slotid] = openSink("run_out/",slot_name,year);
+			bw_unique[slotid] = openSink("run_out/unique/",slot_name,year);
 		}
 			
 		/*
@@ -463,13 +266,12 @@ public class DataExtractor {
 			String[] parts=output1.split(delimiter);
 			
 			//book keeping
-			int count = fillsCount.get(parts[1]);
-			fillsCount.remove(parts[1]);
-			fillsCount.put(parts[1],count+1);
+			SlotSchema slot = SlotSchema.parse(parts[1]);
+			fillsCount[slot.id()]++;
 			
 			
 			
-			Integer relID = relationIDs.get(parts[1]);
+			int relID = slot.id();
 			if(mp2.containsKey(key)){
 				counter+=1;
 				conf2=mp2.get(key);
@@ -482,26 +284,18 @@ public class DataExtractor {
 			/*
 			 * extract and add features
 			 */
-			//init feature extractor
-			FeatureExtractor fe = new FeatureExtractor();
-			fe.populateFeatures(this,key,parts[1],conf1,conf2);
-			
-			String featureStr = new String("");			
-			for(String feature_key : featureSet){
-				Double featureVal = fe.features.get(feature_key);
-				featureStr += featureVal + delimiter;
-			}
+			double[] row = fe.populateFeatures(key,parts[1],conf1,conf2);
 			
 			if(cu_opt.equals("cusep")){
 				if(isunique){
-					bw_unique[relID].write(output1+delimiter+featureStr.trim()+delimiter+target+"\n");
+					bw_unique[relID].write(output1,row,target);
 				}
 				else{
-					bw[relID].write(output1+delimiter+featureStr.trim()+delimiter+target+"\n");
+					bw[relID].write(output1,row,target);
 				}
 			}
 			else{
-				bw[relID].write(output1+delimiter+featureStr.trim()+delimiter+target+"\n");
+				bw[relID].write(output1,row,target);
 			}
 			
 			//System.out.println(key+delimiter+conf1+delimiter+conf2+delimiter+target);
@@ -526,55 +320,131 @@ public class DataExtractor {
 				conf1=0.0;
 				output2=mpOut2.get(key);
 				String[] parts=output2.split(delimiter);
-				Integer relID = relationIDs.get(parts[1]);
+				SlotSchema slot = SlotSchema.parse(parts[1]);
+				int relID = slot.id();
 				
 				
 				//book keeping
-				int count = fillsCount.get(parts[1]);
-				fillsCount.remove(parts[1]);
-				fillsCount.put(parts[1],count+1);
+				fillsCount[slot.id()]++;
 				
 				
 				
 				/*
 				 * extract and add features
 				 */
-				//init feature extractor
-				FeatureExtractor fe = new FeatureExtractor();
-				fe.populateFeatures(this,key,parts[1],conf1,conf2);
-				
-				String featureStr = new String("");				
-				for(String feature_key : featureSet){
-					Double featureVal = fe.features.get(feature_key);
-					featureStr += featureVal + delimiter;
-				}
+				double[] row = fe.populateFeatures(key,parts[1],conf1,conf2);
 				if(cu_opt.equals("cusep")){
-					bw_unique[relID].write(output2+delimiter+featureStr.trim()+delimiter+target+"\n");
+					bw_unique[relID].write(output2,row,target);
 				}
 				else{
-					bw[relID].write(output2+delimiter+featureStr.trim()+delimiter+target+"\n");
+					bw[relID].write(output2,row,target);
 				}
 				
 			}
 			
 		}
 		
-		for(String slot_name  : relationIDs.keySet()){
-			Integer slotid= relationIDs.get(slot_name);
+		for(int slotid = 0; slotid < num_slots; slotid++){
 			bw[slotid].close();
 			bw_unique[slotid].close();
 		}
 		System.out.println("common count : "+counter);
 	}
 	
+	/*
+	 * scores both extractor outputs against key_file, or takes their
+	 * scorer outputs from cache (may be null); keyIndexDir - directory
+	 * of compiled key indexes (see KeyIndex), null for none. For 2014
+	 * the key is parsed once and both outputs are scored concurrently.
+	 */
+	public void scoreRuns(String fname1, String fname2, String key_file, String year, String keyIndexDir, OutputCache cache) throws IOException{
+		if(year.equals("2013")){
+			String[] nargs=new String[keyIndexDir != null ? 4 : 3];
+			nargs[0]=fname1;
+			nargs[1]=key_file;
+			nargs[2]= new String("anydoc");
+			if(keyIndexDir != null){
+				nargs[3]= "keyindex="+keyIndexDir;
+			}
+			if(!OutputCache.load(cache, fname1, s1_2013)){
+				try {
+					s1_2013.run(nargs);
+					OutputCache.store(cache, fname1, s1_2013);
+				} catch (IOException e) {
+					// TODO Auto-generated catch block
+					e.printStackTrace();
+				}
+			}
+			nargs[0]=fname2;
+			if(!OutputCache.load(cache, fname2, s2_2013)){
+				try {
+					s2_2013.run(nargs);
+					OutputCache.store(cache, fname2, s2_2013);
+				} catch (IOException e) {
+					// TODO Auto-generated catch block
+					e.printStackTrace();
+				}
+			}
+		}
+		else if(year.equals("2014")){
+			//take the outputs found in the cache from there
+			List<scorer2014> misses = new ArrayList<scorer2014>();
+			List<String> files = new ArrayList<String>();
+			if(!OutputCache.load(cache, fname1, s1_2014)){
+				misses.add(s1_2014);
+				files.add(fname1);
+			}
+			if(!OutputCache.load(cache, fname2, s2_2014)){
+				misses.add(s2_2014);
+				files.add(fname2);
+			}
+			if(!misses.isEmpty()){
+				scoreShared(misses, files, key_file, keyIndexDir);
+				for(int i = 0; i < misses.size(); i++){
+					OutputCache.store(cache, files.get(i), misses.get(i));
+				}
+			}
+		}
+	}
+	
+	/*
+	 * parses the key once and scores files.get(i) for scorers.get(i),
+	 * all at the same time; the key is only read by the scorers, so
+	 * they share it, and each file is parsed on a single thread
+	 */
+	static void scoreShared(List<scorer2014> scorers, List<String> files, String key_file, String keyIndexDir) throws IOException{
+		//same modes as the "anydoc" flag of scorer2014
+		KeyModel key = KeyModel.load(key_file, true, true, false, keyIndexDir);
+		List<String> runIds = new ArrayList<String>();
+		for(scorer2014 s : scorers){
+			runIds.add(s.runid);
+		}
+		List<ResponseScorer> rs = BatchScorer.newScorers(key, runIds);
+		List<ScoreResult> results = BatchScorer.scoreAll(rs, files, scorers.size());
+		
+		//report in order, once all are done
+		for(int i = 0; i < scorers.size(); i++){
+			scorer2014 s = scorers.get(i);
+			ResponseScorer r = rs.get(i);
+			for (String warning : r.readWarnings)
+				System.out.println(warning);
+			System.out.println("Read responses for " + r.response.size() + " slots.");
+			new ConsoleReporter().report(results.get(i));
+			s.result = results.get(i);
+			s.mpOutput = r.mpOutput;
+			s.mpConfidence = r.mpConfidence;
+			s.mpTarget = r.mpTarget;
+		}
+	}
+	
 	public void printStats(){
 		//print fills count
 		
 		System.out.println("RUN SUMMARY");
 		
 		System.out.println("Slot type \t Number of fills");
-		for(String key : fillsCount.keySet()){
-			System.out.println(key+"\t"+fillsCount.get(key));
+		for(int slotid = 0; slotid < fillsCount.length; slotid++){
+			System.out.println(SlotSchema.byId(slotid)+"\t"+fillsCount[slotid]);
 		}
 	}
 	
@@ -587,6 +457,9 @@ public class DataExtractor {
 	 * @args[3] year
 	 * @args[4] slots option : "sep" (seperate file for slot fills of each slot type) or "all"
 	 * @args[5] common/unique option : "cusep" (seperate file for common & unique slot fills) or "<anyotherstring> 
+	 * @args[6] (optional) directory of compiled key indexes (see KeyIndex), shared by both scorer runs; "-" for none
+	 * @args[7] (optional) directory of cached scorer outputs (see OutputCache); outputs found there are not scored again; "-" for none
+	 * @args[8] (optional) output format (see FeatureSink) : "tsv" (default), "arff", "sparsearff" or "bin"
 	 *  
 	 */
 	public static void main(String[] args) throws IOException {
@@ -602,42 +475,21 @@ public class DataExtractor {
 		String opt = new String(args[4]);
 		String cu_opt = new String(args[5]);
 				
-		String[] nargs=new String[3];
-		nargs[0]=fname1;
-		nargs[1]=key_file;
-		nargs[2]= new String("anydoc");
-		
-		if(year.equals("2013")){
-			try {
-				de.s1_2013.run(nargs);
-			} catch (IOException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
-			nargs[0]=fname2;
-			try {
-				de.s2_2013.run(nargs);
-			} catch (IOException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
+		String keyIndexDir = args.length > 6 && !args[6].equals("-") ? args[6] : null;
+		OutputCache cache = null;
+		if(args.length > 7 && !args[7].equals("-")){
+			cache = new OutputCache(args[7], key_file, "stackingm2.scorer"+year+"\tanydoc");
 		}
-		else if(year.equals("2014")){
-			try {
-				de.s1_2014.run(nargs);
-			} catch (IOException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
-			nargs[0]=fname2;
-			try {
-				de.s2_2014.run(nargs);
-			} catch (IOException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+		if(args.length > 8){
+			if(!FeatureSink.FORMATS.contains(args[8])){
+				System.out.println("Unknown feature format " + args[8] + ", expected one of " + FeatureSink.FORMATS);
+				System.exit(1);
 			}
+			de.format = args[8];
 		}
 		
+		de.scoreRuns(fname1,fname2,key_file,year,keyIndexDir,cache);
+		
 		if(opt.equals("sep")){
 			de.writeSlotsSeperate(year,key_file,cu_opt);
 		}
@@ -0,0 +1,519 @@
+package stackingm2;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/*
+ * DeltaScorer class:
+ *
+ * Official P/R/F1 of any selection of fills from a pool of candidate
+ * fills, with a fill included or excluded in O(1). The pool is the
+ * union of the non-NIL responses of several runs (see addRun), each
+ * judged once against the key; a fill proposed by more than one run
+ * is one candidate, and the runs proposing it are kept with it, as
+ * is the number of times each run proposes it.
+ *
+ * As in ResponseScorer.scoreQuery, a selection is credited once for
+ * every equivalence class of an entityId:slot pair that one of its
+ * Correct or Redundant (with reference KB) fills falls in, so the
+ * scorer keeps a reference count per class: the correct count moves
+ * only when a class gains its first fill or loses its last one. A
+ * single-valued pair has one answer, so it is credited for one class
+ * at most, however many of its classes the selection has fills in.
+ *
+ * selectRun gives the scores of one run as BatchScorer computes
+ * them: every response counts, repeats included, and recall is over
+ * the answers of the pairs of the run. Any other selection (the
+ * union, a greedy one) has its recall over the answers of all pairs
+ * of the pool (or of the slot file), so that selections can be
+ * compared with each other.
+ *
+ */
+public class DeltaScorer {
+
+	final KeyModel key;
+
+	// entityId:slot pairs to score, null for all pairs of the pool
+	final Set<String> slots;
+
+	// candidate fills: entityId:slot\tprovenance\tresponse_string
+	final List<String> fills = new ArrayList<String>();
+	// candidate fill --> its index
+	final Map<String,Integer> fillIndex = new HashMap<String,Integer>();
+	// runs proposing each fill
+	final List<BitSet> runs = new ArrayList<BitSet>();
+	// per run: fill --> number of responses of the run with it
+	final List<Map<Integer,Integer>> proposals = new ArrayList<Map<Integer,Integer>>();
+	// per run: answers of its entityId:slot pairs, the recall denominator of the run on its own
+	final List<Integer> runAnswers = new ArrayList<Integer>();
+	// equivalence class of each fill, numbered over the pool; -1 for fills that earn no credit
+	private int[] eclass = new int[16];
+	// entityId:slot pair of each fill, numbered over the pool
+	private int[] pair = new int[16];
+
+	// entityId:slot\teclass --> its number
+	final Map<String,Integer> eclassIndex = new HashMap<String,Integer>();
+	// entityId:slot pairs whose answers are counted --> their number
+	final Map<String,Integer> queries = new HashMap<String,Integer>();
+	// answers + kb_answers of each pair
+	private int[] queryAnswers = new int[16];
+	// pairs of single-valued slots
+	private final BitSet singleValued = new BitSet();
+
+	// number of runs added
+	public int numRuns = 0;
+
+	// the selection: included fills, the number of responses each counts for,
+	// the number of them in each equivalence class and the number of classes
+	// with some in each pair
+	private final BitSet included = new BitSet();
+	private int[] copies = new int[16];
+	private int[] refs = new int[16];
+	private int[] queryCredits = new int[16];
+
+	// counts of the selection
+	int responses = 0;
+	int correct = 0;  // correct + kb_redundant of ScoreResult.Counts
+	int answers = 0;  // answers + kb_answers, of the whole pool
+	int selectedRun = -1;  // run of selectRun, whose answers recall is over; -1 for the whole pool
+
+	/*
+	 * slots - the entityId:slot pairs to score; null to score all pairs of the pool
+	 */
+	public DeltaScorer(KeyModel key, Set<String> slots){
+		this.key = key;
+		this.slots = slots;
+		if(slots != null){
+			for(String query : slots)
+				addQuery(query);
+		}
+	}
+
+	/*
+	 * adds the responses rs has read to the pool, as run numRuns;
+	 * returns the number of the run
+	 */
+	public int addRun(ResponseScorer rs){
+		int run = numRuns++;
+		Map<Integer,Integer> proposed = new HashMap<Integer,Integer>();
+		int runAnswered = 0;
+		for(String query : rs.slots){
+			if(slots != null && !slots.contains(query))
+				continue;
+			int q = addQuery(query);
+			if(q < 0)
+				continue;
+			runAnswered += queryAnswers[q];
+			List<String> responseList = rs.response.get(query);
+			if(responseList == null)
+				continue;
+			for(String responseString : responseList){
+				int tab = responseString.indexOf('\t');
+				if((tab < 0 ? responseString : responseString.substring(0, tab)).equals("NIL"))
+					continue;
+				int i = addFill(q, query, responseString);
+				runs.get(i).set(run);
+				Integer n = proposed.get(i);
+				proposed.put(i, n == null ? 1 : n + 1);
+			}
+		}
+		proposals.add(proposed);
+		//with a slot file every run is scored on all of its pairs
+		runAnswers.add(slots != null ? answers : runAnswered);
+		return run;
+	}
+
+	/*
+	 * counts the answers of query, once, and returns its number; -1
+	 * if its slot type is unrecognizable, in which case scoreQuery
+	 * ignores its responses
+	 */
+	private int addQuery(String query){
+		Integer known = queries.get(query);
+		if(known != null)
+			return known;
+		String type = scorer2014.slotType(query);
+		int num_answers_to_query = 0;
+		if(key.eclasses(query) != null){
+			if(type == "list")
+				num_answers_to_query = key.eclasses(query).size();
+			else if(type == "single")
+				num_answers_to_query = 1;
+			else {
+				System.out.println("Warning: unrecognizable slot type " + query);
+				return -1;
+			}
+		}
+		int num_kb_answers_to_query = 0;
+		if(key.kbEclasses(query) != null){
+			if(type == "list")
+				num_kb_answers_to_query = key.kbEclasses(query).size();
+			else if(type == "single")
+				num_kb_answers_to_query = 1;
+			else {
+				System.out.println("Warning: unrecognizable slot type " + query);
+				return -1;
+			}
+		}
+		int q = queries.size();
+		if(q == queryAnswers.length){
+			queryAnswers = Arrays.copyOf(queryAnswers, 2 * q);
+			queryCredits = Arrays.copyOf(queryCredits, 2 * q);
+		}
+		queryAnswers[q] = num_answers_to_query;
+		if(type == "list" || num_answers_to_query == 0)
+			queryAnswers[q] += num_kb_answers_to_query;
+		if(type == "single")
+			singleValued.set(q);
+		answers += queryAnswers[q];
+		queries.put(query, q);
+		return q;
+	}
+
+	/*
+	 * the index of a fill of pair q, judging it if it is new to the pool;
+	 * throws an IllegalStateException naming the fill if its judgement
+	 * is not one of the key codes
+	 */
+	private int addFill(int q, String query, String responseString){
+		String rkey = query + "\t" + responseString;
+		Integer index = fillIndex.get(rkey);
+		if(index != null)
+			return index;
+		String J = key.judgement(rkey);
+		if(J == null){
+			System.out.println("Warning: No judgement for " + rkey);
+			J = KeyModel.WRONG;
+		}
+		//check before the fill is added, so the pool stays consistent
+		boolean credited = J.equals(KeyModel.CORRECT) || J.equals(KeyModel.REDUNDANT);
+		if(!credited && !J.equals(KeyModel.IGNORE) && !J.equals(KeyModel.WRONG) && !J.equals(KeyModel.INEXACT))
+			throw new IllegalStateException("Invalid judgement " + J + " of fill " + rkey);
+		int i = fills.size();
+		fills.add(rkey);
+		fillIndex.put(rkey, i);
+		runs.add(new BitSet());
+		if(i == eclass.length){
+			eclass = Arrays.copyOf(eclass, 2 * i);
+			pair = Arrays.copyOf(pair, 2 * i);
+			copies = Arrays.copyOf(copies, 2 * i);
+		}
+		eclass[i] = -1;
+		pair[i] = q;
+		if(credited){
+			String e = query + "\t" + key.equivalenceClass(rkey);
+			Integer E = eclassIndex.get(e);
+			if(E == null){
+				E = eclassIndex.size();
+				eclassIndex.put(e, E);
+				if(E == refs.length)
+					refs = Arrays.copyOf(refs, 2 * E);
+			}
+			eclass[i] = E;
+		}
+		return i;
+	}
+
+	public int size(){
+		return fills.size();
+	}
+
+	/*
+	 * entityId:slot\tprovenance\tresponse_string of fill i
+	 */
+	public String fill(int i){
+		return fills.get(i);
+	}
+
+	/*
+	 * the runs proposing fill i; not to be changed
+	 */
+	public BitSet runs(int i){
+		return runs.get(i);
+	}
+
+	/*
+	 * true if fill i is Correct or Redundant with reference KB
+	 */
+	public boolean credited(int i){
+		return eclass[i] >= 0;
+	}
+
+	/*
+	 * the equivalence class of fill i numbered over the pool, -1 if it earns no credit
+	 */
+	public int eclass(int i){
+		return eclass[i];
+	}
+
+	public int numEclasses(){
+		return eclassIndex.size();
+	}
+
+	/*
+	 * the entityId:slot pair of fill i, numbered over the pool
+	 */
+	public int pair(int i){
+		return pair[i];
+	}
+
+	/*
+	 * true if pair q is of a single-valued slot, so credited for one class at most
+	 */
+	public boolean isSingleValued(int q){
+		return singleValued.get(q);
+	}
+
+	public boolean isIncluded(int i){
+		return included.get(i);
+	}
+
+	/*
+	 * adds fill i to the selection; false if it was in it
+	 */
+	public boolean include(int i){
+		return include(i, 1);
+	}
+
+	/*
+	 * adds fill i to the selection as n responses, the first of which
+	 * may earn credit; false if it was in it
+	 */
+	public boolean include(int i, int n){
+		if(included.get(i))
+			return false;
+		included.set(i);
+		copies[i] = n;
+		responses += n;
+		int E = eclass[i];
+		if(E >= 0 && refs[E]++ == 0)
+			credit(pair[i], 1);
+		return true;
+	}
+
+	/*
+	 * removes fill i from the selection; false if it was not in it
+	 */
+	public boolean exclude(int i){
+		if(!included.get(i))
+			return false;
+		included.clear(i);
+		responses -= copies[i];
+		int E = eclass[i];
+		if(E >= 0 && --refs[E] == 0)
+			credit(pair[i], -1);
+		return true;
+	}
+
+	/*
+	 * pair q gains (delta 1) or loses (delta -1) a class with fills in
+	 * the selection; a single-valued pair is credited for its first
+	 * such class only
+	 */
+	private void credit(int q, int delta){
+		int before = queryCredits[q];
+		int after = queryCredits[q] += delta;
+		if(!singleValued.get(q) || (before == 0) != (after == 0))
+			correct += delta;
+	}
+
+	public void toggle(int i){
+		if(!exclude(i))
+			include(i);
+	}
+
+	/*
+	 * selects the responses of run, and nothing else, to score it as
+	 * BatchScorer would: each fill counts as many responses as the run
+	 * has with it, and recall is over the answers of the run
+	 */
+	public void selectRun(int run){
+		clear();
+		for(Map.Entry<Integer,Integer> e : proposals.get(run).entrySet())
+			include(e.getKey(), e.getValue());
+		selectedRun = run;
+	}
+
+	public void includeAll(){
+		selectedRun = -1;
+		for(int i = 0; i < fills.size(); i++)
+			include(i);
+	}
+
+	public void clear(){
+		included.clear();
+		Arrays.fill(refs, 0);
+		Arrays.fill(queryCredits, 0);
+		responses = 0;
+		correct = 0;
+		selectedRun = -1;
+	}
+
+	/*
+	 * the selected fills; not to be changed
+	 */
+	public BitSet selection(){
+		return included;
+	}
+
+	/*
+	 * official scores of the selection, as ScoreResult.Counts computes them
+	 */
+	public float precision(){
+		return precision(correct, responses);
+	}
+
+	public float recall(){
+		return recall(correct);
+	}
+
+	public float f1(){
+		return ScoreResult.f1(precision(), recall());
+	}
+
+	/*
+	 * F1 the selection would have with fill i toggled; changes nothing
+	 */
+	public float f1Toggled(int i){
+		int E = eclass[i];
+		int r = responses, c = correct;
+		int q = pair[i];
+		if(included.get(i)){
+			r -= copies[i];
+			if(E >= 0 && refs[E] == 1 && (!singleValued.get(q) || queryCredits[q] == 1))
+				c--;
+		}
+		else{
+			r++;
+			if(E >= 0 && refs[E] == 0 && (!singleValued.get(q) || queryCredits[q] == 0))
+				c++;
+		}
+		return ScoreResult.f1(precision(c, r), recall(c));
+	}
+
+	private float precision(int c, int r){
+		return ((float) c) / r;
+	}
+
+	private float recall(int c){
+		return ((float) c) / (selectedRun < 0 ? answers : runAnswers.get(selectedRun));
+	}
+
+	/*
+	 * greedy selection: starting from the current selection, toggles
+	 * the fill that raises F1 over the whole pool most until none
+	 * does; returns the number of fills toggled
+	 */
+	public int greedy(){
+		selectedRun = -1;
+		int steps = 0;
+		float f1 = f1();
+		while(true){
+			int best = -1;
+			float bestF1 = Float.isNaN(f1) ? Float.NEGATIVE_INFINITY : f1;
+			for(int i = 0; i < fills.size(); i++){
+				float f = f1Toggled(i);
+				if(f > bestF1){
+					best = i;
+					bestF1 = f;
+				}
+			}
+			if(best < 0)
+				return steps;
+			toggle(best);
+			f1 = bestF1;
+			steps++;
+		}
+	}
+
+	/*
+	 * Command line args
+	 *
+	 * @args[0] directory of response files, one per run
+	 * @args[1] key file
+	 * @args[2..] flags : anydoc, ignoreoffsets, nocase, keyindex=<dir>, slots=<slotfile>
+	 *
+	 * prints the official P/R/F1 of each run, of the union of all runs
+	 * and of a greedy selection of fills from the union
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 2){
+			System.out.println("DeltaScorer must be invoked with: <responses dir> <key file> [flag ...]");
+			System.exit(1);
+		}
+		String responseDir = args[0];
+		String keyFile = args[1];
+		boolean anydoc = false, ignoreoffsets = false, nocase = false;
+		String keyIndexDir = null;
+		String slotFile = null;
+		for(int i = 2; i < args.length; i++){
+			String flag = args[i];
+			if(flag.equals("anydoc")){
+				anydoc = true;
+				ignoreoffsets = true;
+			}
+			else if(flag.equals("ignoreoffsets")){
+				ignoreoffsets = true;
+			}
+			else if(flag.equals("nocase")){
+				nocase = true;
+			}
+			else if(flag.startsWith("keyindex=")){
+				keyIndexDir = flag.substring(9);
+			}
+			else if(flag.startsWith("slots=")){
+				slotFile = flag.substring(6);
+			}
+			else{
+				System.out.println("Unknown flag: " + flag);
+				System.exit(1);
+			}
+		}
+
+		File[] listOfFiles = new File(responseDir).listFiles();
+		if(listOfFiles == null){
+			System.out.println("Unable to list response directory " + responseDir);
+			System.exit(1);
+		}
+		Arrays.sort(listOfFiles);
+		KeyModel key = KeyModel.load(keyFile, anydoc, ignoreoffsets, nocase, keyIndexDir);
+		DeltaScorer ds = new DeltaScorer(key, slotFile == null ? null : new TreeSet<String>(scorer2014.readLines(slotFile)));
+		List<String> runNames = new ArrayList<String>();
+		for(File f : listOfFiles){
+			if(f.isFile()){
+				ResponseScorer rs = new ResponseScorer(key, f.getName());
+				rs.keepOutputs = false;
+				rs.readResponses(f.getPath());
+				for(String warning : rs.readWarnings)
+					System.out.println(warning);
+				try {
+					ds.addRun(rs);
+				} catch (IllegalStateException e) {
+					System.out.println("Error: " + e.getMessage());
+					System.exit(1);
+				}
+				runNames.add(f.getName());
+			}
+		}
+		System.out.println("Pool of " + ds.size() + " fills from " + ds.numRuns + " runs");
+		String delimiter = "\t";
+		System.out.println("run"+delimiter+"fills"+delimiter+"precision"+delimiter+"recall"+delimiter+"F1");
+		for(int run = 0; run < ds.numRuns; run++){
+			ds.selectRun(run);
+			System.out.println(runNames.get(run)+delimiter+ds.responses+delimiter+ds.precision()+delimiter+ds.recall()+delimiter+ds.f1());
+		}
+		ds.clear();
+		ds.includeAll();
+		System.out.println("UNION"+delimiter+ds.responses+delimiter+ds.precision()+delimiter+ds.recall()+delimiter+ds.f1());
+		ds.greedy();
+		System.out.println("GREEDY"+delimiter+ds.responses+delimiter+ds.precision()+delimiter+ds.recall()+delimiter+ds.f1());
+	}
+}
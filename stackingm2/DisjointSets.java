@@ -0,0 +1,74 @@
+package stackingm2;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * DisjointSets class:
+ *
+ * Union-find over int equivalence class ids. Ids are mapped to
+ * dense slots on first use; the representative of a set is always
+ * its smallest id, and find() compresses the path it walks.
+ *
+ */
+final class DisjointSets {
+
+	// equivalence class id --> slot
+	private final Map<Integer,Integer> slotOf = new HashMap<Integer,Integer>();
+
+	// slot --> equivalence class id, and slot --> parent slot
+	private int[] id = new int[8];
+	private int[] parent = new int[8];
+	private int size = 0;
+
+	private int slot(int eclass){
+		Integer s = slotOf.get(eclass);
+		if(s != null)
+			return s;
+		if(size == id.length){
+			id = Arrays.copyOf(id, size * 2);
+			parent = Arrays.copyOf(parent, size * 2);
+		}
+		id[size] = eclass;
+		parent[size] = size;
+		slotOf.put(eclass, size);
+		return size++;
+	}
+
+	private int root(int s){
+		int r = s;
+		while(parent[r] != r)
+			r = parent[r];
+		while(parent[s] != r){
+			int next = parent[s];
+			parent[s] = r;
+			s = next;
+		}
+		return r;
+	}
+
+	/*
+	 * merges the sets of a and b
+	 */
+	void union(int a, int b){
+		int ra = root(slot(a));
+		int rb = root(slot(b));
+		if(ra == rb)
+			return;
+		if(id[ra] < id[rb])
+			parent[rb] = ra;
+		else
+			parent[ra] = rb;
+	}
+
+	/*
+	 * smallest id equivalent to eclass (eclass itself if it was never merged)
+	 */
+	int find(int eclass){
+		Integer s = slotOf.get(eclass);
+		if(s == null)
+			return eclass;
+		return id[root(s)];
+	}
+}
@@ -1,173 +1,231 @@
 package stackingm2;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /*
  * FeatureExtractor class
- * 
+ *
  * Invoked for each slotfill by DataExtractor
  * to generate features for training the classifier.
- * Currently some linear features and certain other 
+ * Currently some linear features and certain other
  * basic features are extracted here.
- * 
+ *
+ * The feature names are fixed (FEATURES), and the features of a
+ * slot fill are written into a row of doubles that is reused for
+ * every fill, at the column of their name. Columns are in the order
+ * of the names, which is the order of the header DataExtractor
+ * writes.
+ *
  */
 public class FeatureExtractor {
-	Map<String,Double> features =null;
-
-	
-	
-	public FeatureExtractor(){
-		features = new HashMap<String,Double>();
-		
-		
+
+	// feature names, in column order
+	public static final String[] FEATURES = sorted(
+			"E-relID", "A-conf1", "B-conf2", "F-groupID", "G-slotType", "H-entType",
+			"C-conf1_sq", "C-conf1_cube", "C-conf2_sq", "C-conf2_cube", "C-prod_conf",
+			"C-x2y", "C-xy2", "C-x2y2", "C-x3y", "C-x3y2", "C-x3y3", "C-xy3", "C-x2y3",
+			"D-sum", "D-diff", "D-sum_sq", "D-sum_cube", "D-diff_sq", "D-diff_cube",
+			"D-prod_sd", "D-s2d", "D-sd2", "D-s2d2", "D-sd3", "D-s2d3", "D-s3d", "D-s3d2", "D-s3d3",
+			"D-sx", "D-sy", "D-dx", "D-dy", "D-s2x", "D-s2y", "D-d2x", "D-d2y",
+			"D-s3x", "D-s3y", "D-d3x", "D-d3y", "D-sdx", "D-sdy");
+
+	public static final int NUM_FEATURES = FEATURES.length;
+
+	// column of each feature
+	private static final int REL_ID = column("E-relID");
+	private static final int CONF1 = column("A-conf1");
+	private static final int CONF2 = column("B-conf2");
+	private static final int GROUP_ID = column("F-groupID");
+	private static final int SLOT_TYPE = column("G-slotType");
+	private static final int ENT_TYPE = column("H-entType");
+	private static final int CONF1_SQ = column("C-conf1_sq");
+	private static final int CONF1_CUBE = column("C-conf1_cube");
+	private static final int CONF2_SQ = column("C-conf2_sq");
+	private static final int CONF2_CUBE = column("C-conf2_cube");
+	private static final int PROD_CONF = column("C-prod_conf");
+	private static final int X2Y = column("C-x2y");
+	private static final int XY2 = column("C-xy2");
+	private static final int X2Y2 = column("C-x2y2");
+	private static final int X3Y = column("C-x3y");
+	private static final int X3Y2 = column("C-x3y2");
+	private static final int X3Y3 = column("C-x3y3");
+	private static final int XY3 = column("C-xy3");
+	private static final int X2Y3 = column("C-x2y3");
+	private static final int SUM = column("D-sum");
+	private static final int DIFF = column("D-diff");
+	private static final int SUM_SQ = column("D-sum_sq");
+	private static final int SUM_CUBE = column("D-sum_cube");
+	private static final int DIFF_SQ = column("D-diff_sq");
+	private static final int DIFF_CUBE = column("D-diff_cube");
+	private static final int PROD_SD = column("D-prod_sd");
+	private static final int S2D = column("D-s2d");
+	private static final int SD2 = column("D-sd2");
+	private static final int S2D2 = column("D-s2d2");
+	private static final int SD3 = column("D-sd3");
+	private static final int S2D3 = column("D-s2d3");
+	private static final int S3D = column("D-s3d");
+	private static final int S3D2 = column("D-s3d2");
+	private static final int S3D3 = column("D-s3d3");
+	private static final int SX = column("D-sx");
+	private static final int SY = column("D-sy");
+	private static final int DX = column("D-dx");
+	private static final int DY = column("D-dy");
+	private static final int S2X = column("D-s2x");
+	private static final int S2Y = column("D-s2y");
+	private static final int D2X = column("D-d2x");
+	private static final int D2Y = column("D-d2y");
+	private static final int S3X = column("D-s3x");
+	private static final int S3Y = column("D-s3y");
+	private static final int D3X = column("D-d3x");
+	private static final int D3Y = column("D-d3y");
+	private static final int SDX = column("D-sdx");
+	private static final int SDY = column("D-sdy");
+
+	// features of the last slot fill, one column per name of FEATURES
+	final double[] row = new double[NUM_FEATURES];
+
+	private static String[] sorted(String... names){
+		Arrays.sort(names);
+		return names;
 	}
-	
+
+	/*
+	 * column of the feature name
+	 */
+	public static int column(String name){
+		int i = Arrays.binarySearch(FEATURES, name);
+		if(i < 0)
+			throw new IllegalArgumentException("Unknown feature " + name);
+		return i;
+	}
+
 	/*
+	 * the feature names, separated by delimiter
+	 */
+	public static String header(String delimiter){
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < NUM_FEATURES; i++){
+			if(i > 0)
+				sb.append(delimiter);
+			sb.append(FEATURES[i]);
+		}
+		return sb.toString();
+	}
+
+	/*
+	 * fills in the row for a slot fill; returns the row, which the
+	 * next call overwrites
+	 *
 	 * args:
-	 * 
-	 * 1) de - data extractor instance
-	 * 2) key - key of the slot fill
-	 * 3) relationName - name of the relation of the slot fill being processed
-	 * 4)5) conf1, conf2 - confidence values from two extractors
+	 *
+	 * 1) key - key of the slot fill
+	 * 2) relationName - name of the relation of the slot fill being processed
+	 * 3)4) conf1, conf2 - confidence values from two extractors
 	 */
-	public void populateFeatures(DataExtractor de,String key,String relationName,Double conf1, Double conf2){
-		//features.put("",);
-		
+	public double[] populateFeatures(String key,String relationName,double conf1, double conf2){
+		SlotSchema slot = SlotSchema.parse(relationName);
+		double[] row = this.row;
+
 		//relation ID
-		features.put("E-relID",new Double(de.relationIDs.get(relationName)));
-		
+		row[REL_ID] = slot.id();
+
 		//conf1
-		features.put("A-conf1", conf1);
+		row[CONF1] = conf1;
 		//conf2
-		features.put("B-conf2", conf2);
-		
+		row[CONF2] = conf2;
+
 		//relation group ID
-		features.put("F-groupID", new Double(de.relationGroupIDs.get(relationName)));
+		row[GROUP_ID] = slot.group;
 
 		//slot type
-		if(de.singleValuedSlots.contains(relationName)){
-			features.put("G-slotType",0.0);
-		}
-		else{
-			features.put("G-slotType",1.0);
-		}
+		row[SLOT_TYPE] = slot.single ? 0.0 : 1.0;
 
 		//entity type
-		if(key.contains("per")){
-			features.put("H-entType",0.0);
-		}
-		else{
-			features.put("H-entType",1.0);
-		}
-		
+		row[ENT_TYPE] = key.contains("per") ? 0.0 : 1.0;
+
 		/*
 		 * LINEAR FEATURES
-		 * 
-		 * 
+		 *
+		 *
 		 * x2	y2	x3	y3	xy	x2y	xy2	x2y2	x3y	x3y2	x3y3	xy3	x2y3	s	d	s2	d2	s3	d3	sd	s2d	sd2	s2d2
 		 * 	sd3	s2d3	s3d	s3d2	s3d3	sx	sy	dx	dy	s2x	s2y	d2x	d2y	s3x	s3y	d3x	d3y	sdx	sdy
-		
+
 		 */
-		
-		Double conf1_sq = new Double(conf1*conf1);
-		Double conf1_cube = new Double(conf1_sq*conf1);
-		
-		Double conf2_sq = new Double(conf2*conf2);
-		Double conf2_cube = new Double(conf2_sq*conf2);
-		
-		Double prod_conf = new Double(conf1*conf2);
-		Double x2y = new Double(conf1_sq*conf2);
-		Double xy2 = new Double(conf1*conf2_sq);
-		Double x2y2 = new Double(conf1_sq*conf2_sq);
-		Double x3y = new Double(conf1_cube*conf2);
-		Double x3y2 = new Double(conf1_cube*conf2_sq);
-		Double x3y3 = new Double(conf1_cube*conf2_cube);
-		Double xy3 = new Double(conf1*conf2_cube);
-		Double x2y3 = new Double(conf1_sq*conf2_cube);
-		Double sum = new Double(conf1+conf2);
-		Double diff = new Double(conf1-conf2);
-		Double sum_sq = new Double(sum*sum);
-		Double sum_cube = new Double(sum_sq*sum);
-		Double diff_sq = new Double(diff*diff);
-		Double diff_cube = new Double(diff_sq*diff);
-		
-		Double prod_sd = new Double(sum* diff);
-		Double s2d = new Double(sum_sq*diff);
-		Double sd2 = new Double(sum*diff_sq);
-		Double s2d2 = new Double(sum_sq*diff_sq);
-		
-		Double sd3 = new Double(sum*diff_cube);
-		Double s2d3 =  new Double(sum_sq*diff_cube);
-		Double s3d =  new Double(sum_cube*diff);
-		Double s3d2 =  new Double(sum_cube*diff_sq);
-		Double s3d3 = new Double(sum_cube*diff_cube);
-		
-		Double sx =  new Double(sum*conf1);
-		Double sy =  new Double(sum*conf2);
-		Double dx = new Double(diff*conf1);
-		Double dy = new Double(diff*conf2);
-		Double s2x = new Double(sum_sq*conf1);
-		Double s2y = new Double(sum*conf2);
-		Double d2x = new Double(diff_sq*conf1);
-		Double d2y = new Double(diff_sq*conf2);
-		Double s3x =  new Double(sum_cube*conf1);
-		Double s3y =  new Double(sum_cube*conf2);
-		Double d3x =  new Double(diff_cube*conf1);
-		Double d3y =  new Double(diff_cube*conf2);
-		Double sdx =  new Double(sum*diff*conf1);
-		Double sdy =  new Double(sum*diff*conf2);
-		
-		//target
-		features.put("C-conf1_sq",conf1_sq);
-		features.put("C-conf1_cube",conf1_cube);
-		features.put("C-conf2_sq",conf2_sq);
-		features.put("C-conf2_cube",conf2_cube);
-		features.put("C-prod_conf",prod_conf);
-		features.put("C-x2y",x2y);
-		features.put("C-xy2",xy2);
-		features.put("C-x2y2",x2y2);
-		features.put("C-x3y",x3y);
-		features.put("C-x3y2",x3y2);
-		features.put("C-x3y3",x3y3);
-		
-		features.put("C-xy3",xy3);
-		features.put("C-x2y3",x2y3);
-		features.put("D-sum",sum);
-		features.put("D-diff",diff);
-		features.put("D-sum_sq",sum_sq);
-		features.put("D-sum_cube",sum_cube);
-		features.put("D-diff_sq",diff_sq);
-		features.put("D-diff_cube",diff_cube);
-		features.put("D-prod_sd",prod_sd);
-		features.put("D-s2d",s2d);
-		features.put("D-sd2",s2d);
-		
-		features.put("D-s2d2",s2d2);
-		features.put("D-sd3",sd3);
-		features.put("D-s2d3",s2d3);
-		features.put("D-s3d",s3d);
-		features.put("D-s3d2",s3d2);
-		features.put("D-s3d3",s3d3);
-		features.put("D-sx",sx);
-		features.put("D-sy",sy);
-		features.put("D-dx",dx);
-		features.put("D-dy",dy);
-		
-		features.put("D-s2x",s2x);
-		features.put("D-s2y",s2y);
-		features.put("D-d2x",d2x);
-		features.put("D-d2y",d2y);
-		features.put("D-s3x",s3x);
-		features.put("D-s3y",s3y);
-		features.put("D-d3x",d3x);
-		features.put("D-d3y",d3y);
-		features.put("D-sdx",sdx);
-		features.put("D-sdy",sdy);
-		
-		
+
+		double conf1_sq = conf1*conf1;
+		double conf1_cube = conf1_sq*conf1;
+
+		double conf2_sq = conf2*conf2;
+		double conf2_cube = conf2_sq*conf2;
+
+		double sum = conf1+conf2;
+		double diff = conf1-conf2;
+		double sum_sq = sum*sum;
+		double sum_cube = sum_sq*sum;
+		double diff_sq = diff*diff;
+		double diff_cube = diff_sq*diff;
+
+		row[CONF1_SQ] = conf1_sq;
+		row[CONF1_CUBE] = conf1_cube;
+		row[CONF2_SQ] = conf2_sq;
+		row[CONF2_CUBE] = conf2_cube;
+		row[PROD_CONF] = conf1*conf2;
+		row[X2Y] = conf1_sq*conf2;
+		row[XY2] = conf1*conf2_sq;
+		row[X2Y2] = conf1_sq*conf2_sq;
+		row[X3Y] = conf1_cube*conf2;
+		row[X3Y2] = conf1_cube*conf2_sq;
+		row[X3Y3] = conf1_cube*conf2_cube;
+
+		row[XY3] = conf1*conf2_cube;
+		row[X2Y3] = conf1_sq*conf2_cube;
+		row[SUM] = sum;
+		row[DIFF] = diff;
+		row[SUM_SQ] = sum_sq;
+		row[SUM_CUBE] = sum_cube;
+		row[DIFF_SQ] = diff_sq;
+		row[DIFF_CUBE] = diff_cube;
+		row[PROD_SD] = sum*diff;
+		row[S2D] = sum_sq*diff;
+		// D-sd2 has always held s2d; kept so that models trained on earlier data still apply
+		row[SD2] = sum_sq*diff;
+
+		row[S2D2] = sum_sq*diff_sq;
+		row[SD3] = sum*diff_cube;
+		row[S2D3] = sum_sq*diff_cube;
+		row[S3D] = sum_cube*diff;
+		row[S3D2] = sum_cube*diff_sq;
+		row[S3D3] = sum_cube*diff_cube;
+		row[SX] = sum*conf1;
+		row[SY] = sum*conf2;
+		row[DX] = diff*conf1;
+		row[DY] = diff*conf2;
+
+		row[S2X] = sum_sq*conf1;
+		// D-s2y has always held sum*conf2, as D-sy; kept for the same reason
+		row[S2Y] = sum*conf2;
+		row[D2X] = diff_sq*conf1;
+		row[D2Y] = diff_sq*conf2;
+		row[S3X] = sum_cube*conf1;
+		row[S3Y] = sum_cube*conf2;
+		row[D3X] = diff_cube*conf1;
+		row[D3Y] = diff_cube*conf2;
+		row[SDX] = sum*diff*conf1;
+		row[SDY] = sum*diff*conf2;
+
+		return row;
+	}
+
+	/*
+	 * appends the row, its values separated by delimiter, to sb
+	 */
+	public void appendRow(StringBuilder sb, String delimiter){
+		for(int i = 0; i < NUM_FEATURES; i++){
+			if(i > 0)
+				sb.append(delimiter);
+			sb.append(row[i]);
+		}
 	}
-	
 
 
 }
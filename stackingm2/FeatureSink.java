@@ -0,0 +1,358 @@
+package stackingm2;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * FeatureSink class:
+ *
+ * Where DataExtractor writes its rows: the output columns of a slot
+ * fill (query id, relation, run id, provenance, fill), its features
+ * and its target. The formats are
+ *
+ * 1) tsv - one tab separated file with all columns (base.txt); the
+ *    classifier has to parse it and remove the output columns first
+ * 2) arff, sparsearff - the features and the target as a dense or
+ *    sparse ARFF file (base.arff), which weka loads as it is
+ * 3) bin - the features and the target as a binary matrix (base.bin):
+ *    MAGIC, VERSION, the number of columns, their names, then per row
+ *    one double per column (the target last, NaN if there is none)
+ *
+ * ARFF and binary sinks write the output columns to a side file
+ * (base.meta), tab separated, with the confidences and the target
+ * after them: the columns that the predictions file of the
+ * classifier repeats.
+ *
+ * A Memory sink keeps the rows for a classifier in the same process
+ * (see Pipeline) and writes no file of its own.
+ *
+ */
+public abstract class FeatureSink implements Closeable {
+
+	static final int MAGIC = 0x464d4154; // "FMAT"
+	static final int VERSION = 1;
+
+	public static final String TSV_EXT = ".txt";
+	public static final String ARFF_EXT = ".arff";
+	public static final String BINARY_EXT = ".bin";
+	public static final String META_EXT = ".meta";
+
+	// formats open accepts
+	public static final List<String> FORMATS = Arrays.asList("tsv", "arff", "sparsearff", "bin");
+
+	static final String delimiter = "\t";
+
+	final String[] outputColumns;
+	final String[] featureNames;
+
+	FeatureSink(String[] outputColumns, String[] featureNames){
+		this.outputColumns = outputColumns;
+		this.featureNames = featureNames;
+	}
+
+	/*
+	 * opens a sink of format (tsv, arff, sparsearff or bin) on base,
+	 * the file name without extension; metaFeatures are the features
+	 * that the side file repeats
+	 */
+	public static FeatureSink open(String format, String base, String[] outputColumns, String[] featureNames,
+			int[] metaFeatures) throws IOException{
+		if(format.equals("tsv"))
+			return new Tsv(base + TSV_EXT, outputColumns, featureNames);
+		if(format.equals("arff"))
+			return new Arff(base, outputColumns, featureNames, metaFeatures, false);
+		if(format.equals("sparsearff"))
+			return new Arff(base, outputColumns, featureNames, metaFeatures, true);
+		if(format.equals("bin"))
+			return new Binary(base, outputColumns, featureNames, metaFeatures);
+		throw new IllegalArgumentException("Unknown feature format " + format);
+	}
+
+	/*
+	 * writes a row: output - the output columns, tab separated;
+	 * features - one value per feature name; target - null if there is none
+	 */
+	public abstract void write(String output, double[] features, Integer target) throws IOException;
+
+	/*
+	 * true if file was written by an ARFF or binary sink, so it holds
+	 * the features and the target only
+	 */
+	public static boolean isDirect(String file){
+		return file.endsWith(ARFF_EXT) || file.endsWith(BINARY_EXT);
+	}
+
+	/*
+	 * the side file of an ARFF or binary file
+	 */
+	public static String metaFile(String file){
+		return file.substring(0, file.lastIndexOf('.')) + META_EXT;
+	}
+
+	/*
+	 * Tsv class:
+	 *
+	 * all columns in one tab separated file, with a header
+	 */
+	static class Tsv extends FeatureSink {
+		private final BufferedWriter bw;
+		private final StringBuilder sb = new StringBuilder();
+
+		Tsv(String file, String[] outputColumns, String[] featureNames) throws IOException{
+			super(outputColumns, featureNames);
+			bw = new BufferedWriter(new FileWriter(file));
+			bw.write(join(outputColumns) + delimiter + join(featureNames) + delimiter + "target" + "\n");
+		}
+
+		public void write(String output, double[] features, Integer target) throws IOException{
+			sb.setLength(0);
+			sb.append(output).append(delimiter);
+			for(int i = 0; i < featureNames.length; i++)
+				sb.append(features[i]).append(delimiter);
+			sb.append(target).append('\n');
+			bw.write(sb.toString());
+		}
+
+		public void close() throws IOException{
+			bw.close();
+		}
+	}
+
+	/*
+	 * Meta class:
+	 *
+	 * the side file: output columns, the repeated features and the target
+	 */
+	static class Meta implements Closeable {
+		private final BufferedWriter bw;
+		private final int[] metaFeatures;
+		private final StringBuilder sb = new StringBuilder();
+
+		Meta(String file, String[] outputColumns, String[] featureNames, int[] metaFeatures) throws IOException{
+			this.metaFeatures = metaFeatures;
+			bw = new BufferedWriter(new FileWriter(file));
+			sb.append(join(outputColumns));
+			for(int f : metaFeatures)
+				sb.append(delimiter).append(featureNames[f]);
+			bw.write(sb + delimiter + "target" + "\n");
+		}
+
+		void write(String output, double[] features, Integer target) throws IOException{
+			sb.setLength(0);
+			sb.append(output);
+			for(int f : metaFeatures)
+				sb.append(delimiter).append(features[f]);
+			sb.append(delimiter).append(target).append('\n');
+			bw.write(sb.toString());
+		}
+
+		public void close() throws IOException{
+			bw.close();
+		}
+	}
+
+	/*
+	 * Arff class:
+	 *
+	 * numeric attributes for the features and the target, as weka's
+	 * CSVLoader would have typed them; sparse rows leave out zeros
+	 */
+	static class Arff extends FeatureSink {
+		private final BufferedWriter bw;
+		private final Meta meta;
+		private final boolean sparse;
+		private final StringBuilder sb = new StringBuilder();
+
+		Arff(String base, String[] outputColumns, String[] featureNames, int[] metaFeatures, boolean sparse) throws IOException{
+			super(outputColumns, featureNames);
+			this.sparse = sparse;
+			meta = new Meta(base + META_EXT, outputColumns, featureNames, metaFeatures);
+			bw = new BufferedWriter(new FileWriter(base + ARFF_EXT));
+			bw.write("@relation " + quote(new File(base).getName()) + "\n\n");
+			for(String name : featureNames)
+				bw.write("@attribute " + quote(name) + " numeric\n");
+			bw.write("@attribute target numeric\n\n@data\n");
+		}
+
+		public void write(String output, double[] features, Integer target) throws IOException{
+			meta.write(output, features, target);
+			sb.setLength(0);
+			if(sparse){
+				sb.append('{');
+				for(int i = 0; i < featureNames.length; i++){
+					if(features[i] != 0)
+						sb.append(sb.length() > 1 ? "," : "").append(i).append(' ').append(features[i]);
+				}
+				if(target == null || target != 0)
+					sb.append(sb.length() > 1 ? "," : "").append(featureNames.length).append(' ').append(target == null ? "?" : target);
+				sb.append("}\n");
+			}
+			else{
+				for(int i = 0; i < featureNames.length; i++)
+					sb.append(features[i]).append(',');
+				sb.append(target == null ? "?" : target).append('\n');
+			}
+			bw.write(sb.toString());
+		}
+
+		public void close() throws IOException{
+			try {
+				bw.close();
+			} finally {
+				meta.close();
+			}
+		}
+
+		private static String quote(String name){
+			for(int i = 0; i < name.length(); i++){
+				char c = name.charAt(i);
+				if(c <= ' ' || c == ',' || c == '{' || c == '}' || c == '%' || c == '\'' || c == '"' || c == '\\')
+					return "'" + name.replace("\\", "\\\\").replace("'", "\\'") + "'";
+			}
+			return name;
+		}
+	}
+
+	/*
+	 * Binary class:
+	 *
+	 * the rows as a matrix of doubles, see readMatrix
+	 */
+	static class Binary extends FeatureSink {
+		private final DataOutputStream out;
+		private final Meta meta;
+
+		Binary(String base, String[] outputColumns, String[] featureNames, int[] metaFeatures) throws IOException{
+			super(outputColumns, featureNames);
+			meta = new Meta(base + META_EXT, outputColumns, featureNames, metaFeatures);
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(base + BINARY_EXT), 1 << 16));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(featureNames.length + 1);
+			for(String name : featureNames)
+				out.writeUTF(name);
+			out.writeUTF("target");
+		}
+
+		public void write(String output, double[] features, Integer target) throws IOException{
+			meta.write(output, features, target);
+			for(int i = 0; i < featureNames.length; i++)
+				out.writeDouble(features[i]);
+			out.writeDouble(target == null ? Double.NaN : target);
+		}
+
+		public void close() throws IOException{
+			try {
+				out.close();
+			} finally {
+				meta.close();
+			}
+		}
+	}
+
+	/*
+	 * Memory class:
+	 *
+	 * the rows as a Matrix, with their output columns beside it; rows
+	 * are passed on to dump too if there is one
+	 */
+	public static class Memory extends FeatureSink {
+		public final Matrix matrix;
+		public final List<String> outputs = new ArrayList<String>();
+		private final FeatureSink dump;
+
+		public Memory(String[] outputColumns, String[] featureNames, FeatureSink dump){
+			super(outputColumns, featureNames);
+			this.dump = dump;
+			String[] columns = Arrays.copyOf(featureNames, featureNames.length + 1);
+			columns[featureNames.length] = "target";
+			matrix = new Matrix(columns);
+		}
+
+		public void write(String output, double[] features, Integer target) throws IOException{
+			double[] row = Arrays.copyOf(features, featureNames.length + 1);
+			row[featureNames.length] = target == null ? Double.NaN : target;
+			matrix.rows.add(row);
+			outputs.add(output);
+			if(dump != null)
+				dump.write(output, features, target);
+		}
+
+		public int size(){
+			return outputs.size();
+		}
+
+		public void close() throws IOException{
+			if(dump != null)
+				dump.close();
+		}
+	}
+
+	/*
+	 * Matrix class:
+	 *
+	 * the contents of a binary file or a Memory sink: column names and
+	 * rows, the target in the last column
+	 */
+	public static class Matrix {
+		public final String[] columns;
+		public final List<double[]> rows = new ArrayList<double[]>();
+
+		Matrix(String[] columns){
+			this.columns = columns;
+		}
+	}
+
+	/*
+	 * reads a file written by a binary sink
+	 */
+	public static Matrix readMatrix(String file) throws IOException{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+		try {
+			if(in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException("Not a feature matrix: " + file);
+			String[] columns = new String[in.readInt()];
+			for(int i = 0; i < columns.length; i++)
+				columns[i] = in.readUTF();
+			Matrix matrix = new Matrix(columns);
+			while(true){
+				double first;
+				try {
+					first = in.readDouble();
+				} catch (EOFException e) {
+					return matrix;
+				}
+				double[] row = new double[columns.length];
+				row[0] = first;
+				for(int i = 1; i < row.length; i++)
+					row[i] = in.readDouble();
+				matrix.rows.add(row);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	static String join(String[] names){
+		StringBuilder sb = new StringBuilder();
+		for(String name : names){
+			if(sb.length() > 0)
+				sb.append(delimiter);
+			sb.append(name);
+		}
+		return sb.toString();
+	}
+}
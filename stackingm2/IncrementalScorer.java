@@ -0,0 +1,264 @@
+package stackingm2;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/*
+ * IncrementalScorer class:
+ *
+ * Scores the responses read by a ResponseScorer like its score()
+ * does, but keeps the outcome of every entityId:slot pair in a
+ * cache file: the pair's counts, NIL judgements, warnings and trace
+ * lines and targets, together with the MD5 of its block of
+ * (normalized) responses. On the next run only the pairs whose
+ * block changed are scored again; the others are taken from the
+ * cache, and the totals are summed up from both. The cache is tagged
+ * with a context string (hash of the key file, lenient mode and
+ * whatever else changes the judgements), and a cache built under
+ * another context is ignored.
+ *
+ */
+public class IncrementalScorer {
+
+	static final int MAGIC = 0x49534352; // "ISCR"
+	static final int VERSION = 1;
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/*
+	 * Entry class:
+	 *
+	 * outcome of scoring one entityId:slot pair
+	 */
+	static class Entry {
+		final byte[] blockHash;
+		final ScoreResult.Counts counts;
+		final int nilc, nilw;
+		final List<String> messages;
+		final Map<String,Integer> targets;
+
+		Entry(byte[] blockHash, ScoreResult.Counts counts, int nilc, int nilw,
+				List<String> messages, Map<String,Integer> targets){
+			this.blockHash = blockHash;
+			this.counts = counts;
+			this.nilc = nilc;
+			this.nilw = nilw;
+			this.messages = messages;
+			this.targets = targets;
+		}
+	}
+
+	final File cacheFile;
+	final String context;
+
+	// number of pairs scored again, and taken from the cache, by the last score()
+	public int rescored = 0;
+	public int reused = 0;
+
+	public IncrementalScorer(String cacheFile, String context){
+		this.cacheFile = new File(cacheFile);
+		this.context = context;
+	}
+
+	/*
+	 * context of a scorer run: hash of the key file (see KeyIndex.hash)
+	 * and everything else that decides how a block of responses is judged
+	 */
+	public static String context(String keyHash, KeyModel key, ResponseScorer rs){
+		return keyHash + "\t" + KeyIndex.mode(key.anydoc, key.ignoreoffsets, key.nocase)
+				+ "\t" + rs.trace + "\t" + rs.correctTarget + "\t" + rs.redundantTarget;
+	}
+
+	/*
+	 * scores the responses rs has read, rewriting the cache file
+	 */
+	public ScoreResult score(ResponseScorer rs) throws IOException{
+		Map<String,Entry> cached = read();
+		Map<String,Entry> entries = new HashMap<String,Entry>();
+		rescored = 0;
+		reused = 0;
+
+		ScoreResult r = new ScoreResult();
+		r.countsNils = true;
+		Set<String> slots = rs.slots;
+		if(rs.slotFile != null){
+			slots = new TreeSet<String>(rs.slotFileSlots());
+			r.slotFile = rs.slotFile;
+		}
+		for(String slot : slots)
+			rs.countSlot(r, slot);
+
+		MessageDigest md5 = md5();
+		for(String query : slots){
+			List<String> responseList = rs.response.get(query);
+			byte[] blockHash = blockHash(md5, responseList);
+			Entry e = cached.get(query);
+			if(e == null || !Arrays.equals(e.blockHash, blockHash)){
+				ScoreResult qr = new ScoreResult();
+				Map<String,Integer> targets = new LinkedHashMap<String,Integer>();
+				rs.scoreQuery(qr, query, responseList, targets);
+				e = new Entry(blockHash, qr.query(query), qr.nilc, qr.nilw, qr.messages, targets);
+				rescored++;
+			}
+			else
+				reused++;
+			entries.put(query, e);
+			r.query(query).add(e.counts);
+			r.nilc += e.nilc;
+			r.nilw += e.nilw;
+			r.messages.addAll(e.messages);
+			if(rs.keepOutputs)
+				rs.mpTarget.putAll(e.targets);
+		}
+		r.finish();
+		write(entries);
+		return r;
+	}
+
+	/*
+	 * MD5 of a block of responses; null (no responses) hashes to no bytes
+	 */
+	static byte[] blockHash(MessageDigest md5, List<String> responseList){
+		if(responseList == null)
+			return new byte[0];
+		md5.reset();
+		for(String response : responseList){
+			md5.update(response.getBytes(UTF8));
+			md5.update((byte) '\n');
+		}
+		return md5.digest();
+	}
+
+	static MessageDigest md5(){
+		try {
+			return MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/*
+	 * entries of the cache file; empty if it does not exist or was
+	 * written under another context
+	 */
+	Map<String,Entry> read() throws IOException{
+		Map<String,Entry> entries = new HashMap<String,Entry>();
+		if(!cacheFile.isFile())
+			return entries;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile), 1 << 16));
+		try {
+			if(in.readInt() != MAGIC || in.readInt() != VERSION){
+				System.out.println("Warning: ignoring unreadable score cache " + cacheFile);
+				return entries;
+			}
+			if(!context.equals(in.readUTF())){
+				System.out.println("Key or flags changed since " + cacheFile + " was written");
+				return entries;
+			}
+			int n = in.readInt();
+			for(int i = 0; i < n; i++){
+				String query = in.readUTF();
+				byte[] blockHash = new byte[in.readUnsignedByte()];
+				in.readFully(blockHash);
+				ScoreResult.Counts c = new ScoreResult.Counts();
+				c.responses = in.readInt();
+				c.correct = in.readInt();
+				c.redundant = in.readInt();
+				c.kb_redundant = in.readInt();
+				c.inexact = in.readInt();
+				c.wrong = in.readInt();
+				c.answers = in.readInt();
+				c.kb_answers = in.readInt();
+				int nilc = in.readInt();
+				int nilw = in.readInt();
+				int m = in.readInt();
+				List<String> messages = new ArrayList<String>(m);
+				for(int j = 0; j < m; j++)
+					messages.add(readString(in));
+				int t = in.readInt();
+				Map<String,Integer> targets = new LinkedHashMap<String,Integer>();
+				for(int j = 0; j < t; j++)
+					targets.put(readString(in), in.readInt());
+				entries.put(query, new Entry(blockHash, c, nilc, nilw, messages, targets));
+			}
+		} finally {
+			in.close();
+		}
+		return entries;
+	}
+
+	void write(Map<String,Entry> entries) throws IOException{
+		File dir = cacheFile.getAbsoluteFile().getParentFile();
+		if(dir != null && !dir.exists())
+			dir.mkdirs();
+		//write to a temporary file first so an interrupted run leaves the old cache intact
+		File tmp = new File(cacheFile.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(context);
+			out.writeInt(entries.size());
+			for(Map.Entry<String,Entry> me : entries.entrySet()){
+				Entry e = me.getValue();
+				out.writeUTF(me.getKey());
+				out.writeByte(e.blockHash.length);
+				out.write(e.blockHash);
+				ScoreResult.Counts c = e.counts;
+				out.writeInt(c.responses);
+				out.writeInt(c.correct);
+				out.writeInt(c.redundant);
+				out.writeInt(c.kb_redundant);
+				out.writeInt(c.inexact);
+				out.writeInt(c.wrong);
+				out.writeInt(c.answers);
+				out.writeInt(c.kb_answers);
+				out.writeInt(e.nilc);
+				out.writeInt(e.nilw);
+				out.writeInt(e.messages.size());
+				for(String message : e.messages)
+					writeString(out, message);
+				out.writeInt(e.targets.size());
+				for(Map.Entry<String,Integer> t : e.targets.entrySet()){
+					writeString(out, t.getKey());
+					out.writeInt(t.getValue());
+				}
+			}
+		} finally {
+			out.close();
+		}
+		if(cacheFile.exists())
+			cacheFile.delete();
+		if(!tmp.renameTo(cacheFile))
+			throw new IOException("Unable to write score cache " + cacheFile);
+	}
+
+	// writeUTF is limited to 64K bytes, which a response line may exceed
+	private static void writeString(DataOutputStream out, String s) throws IOException{
+		byte[] bytes = s.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException{
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+}
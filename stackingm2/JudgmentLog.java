@@ -0,0 +1,191 @@
+package stackingm2;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * JudgmentLog class:
+ *
+ * Binary form of the scorer trace: one record per scored response
+ * with the entityId:slot it answers, its index among the responses
+ * to that pair (in responses file order), the trace symbol it was
+ * judged with (C, R, r, X, W, I, or M, m, c for NIL responses), the
+ * equivalence class it was matched to (-1 if none) and its
+ * confidence. Tools that need the judgements of a run can read them
+ * back with a JudgmentLog.Reader instead of scoring it again.
+ *
+ * The records of an entityId:slot pair are written as one block:
+ * the pair once, the number of records, then per record an int
+ * index, a byte symbol, an int eclass and a double confidence.
+ *
+ */
+public class JudgmentLog implements Closeable {
+
+	static final int MAGIC = 0x4a4c4f47; // "JLOG"
+	static final int VERSION = 1;
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final DataOutputStream out;
+
+	// records of the pair being written, flushed as a block when the pair changes
+	private String query = null;
+	private List<Integer> indexes = new ArrayList<Integer>();
+	private StringBuilder symbols = new StringBuilder();
+	private List<Integer> eclasses = new ArrayList<Integer>();
+	private List<Double> confidences = new ArrayList<Double>();
+
+	// number of records written
+	public int size = 0;
+
+	public JudgmentLog(String fileName) throws IOException{
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+	}
+
+	/*
+	 * records the judgement of response index of query
+	 */
+	public void write(String query, int index, char symbol, int eclass, double confidence) throws IOException{
+		if(!query.equals(this.query)){
+			flush();
+			this.query = query;
+		}
+		indexes.add(index);
+		symbols.append(symbol);
+		eclasses.add(eclass);
+		confidences.add(confidence);
+		size++;
+	}
+
+	private void flush() throws IOException{
+		if(query == null || indexes.isEmpty())
+			return;
+		byte[] bytes = query.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+		out.writeInt(indexes.size());
+		for(int i = 0; i < indexes.size(); i++){
+			out.writeInt(indexes.get(i));
+			out.writeByte(symbols.charAt(i));
+			out.writeInt(eclasses.get(i));
+			out.writeDouble(confidences.get(i));
+		}
+		indexes.clear();
+		symbols.setLength(0);
+		eclasses.clear();
+		confidences.clear();
+	}
+
+	public void close() throws IOException{
+		try {
+			flush();
+		} finally {
+			out.close();
+		}
+	}
+
+	/*
+	 * Reader class:
+	 *
+	 * reads the records of a judgment log back in the order written
+	 */
+	public static class Reader implements Closeable {
+
+		private final DataInputStream in;
+		private String query;
+		private int left = 0;
+		private int index;
+		private char symbol;
+		private int eclass;
+		private double confidence;
+
+		public Reader(String fileName) throws IOException{
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName), 1 << 16));
+			if(in.readInt() != MAGIC || in.readInt() != VERSION){
+				in.close();
+				throw new IOException("Not a judgment log: " + fileName);
+			}
+		}
+
+		/*
+		 * advances to the next record; false at the end of the log
+		 */
+		public boolean next() throws IOException{
+			while(left == 0){
+				int len;
+				try {
+					len = in.readInt();
+				} catch (EOFException e) {
+					return false;
+				}
+				byte[] bytes = new byte[len];
+				in.readFully(bytes);
+				query = new String(bytes, UTF8);
+				left = in.readInt();
+			}
+			index = in.readInt();
+			symbol = (char) in.readUnsignedByte();
+			eclass = in.readInt();
+			confidence = in.readDouble();
+			left--;
+			return true;
+		}
+
+		public String query(){
+			return query;
+		}
+
+		public int index(){
+			return index;
+		}
+
+		public char symbol(){
+			return symbol;
+		}
+
+		public int eclass(){
+			return eclass;
+		}
+
+		public double confidence(){
+			return confidence;
+		}
+
+		public void close() throws IOException{
+			in.close();
+		}
+	}
+
+	/*
+	 * Command line args
+	 *
+	 * @args[0] judgment log
+	 *
+	 * prints the log as text: symbol, entityId:slot, index, eclass and confidence
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 1){
+			System.out.println("JudgmentLog must be invoked with: <judgment log>");
+			System.exit(1);
+		}
+		Reader reader = new Reader(args[0]);
+		try {
+			while(reader.next()){
+				System.out.println(reader.symbol() + " " + reader.query() + " " + reader.index() + " " + reader.eclass() + " " + reader.confidence());
+			}
+		} finally {
+			reader.close();
+		}
+	}
+}
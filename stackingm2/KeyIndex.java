@@ -0,0 +1,312 @@
+package stackingm2;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * KeyIndex class:
+ *
+ * Compiled, binary form of the judgement tables a scorer
+ * builds from an LDC key file. One index is written per
+ * lenient mode (strict, ignoreoffsets, anydoc, with or
+ * without nocase) and is tagged with the MD5 of the key
+ * file, so a changed key file invalidates it. The name of an
+ * index holds the key format and a short hash of the path of
+ * the key file, so keys of the same name in different
+ * directories, or read as 2013 and as 2014 keys, never share
+ * an index. Indexes are
+ * memory-mapped when read back, which makes opening the key
+ * much cheaper than re-parsing it for every scorer run.
+ *
+ */
+public class KeyIndex {
+
+	static final int MAGIC = 0x4b494458; // "KIDX"
+	static final int VERSION = 2;  // 2: eclasses merged transitively
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/*
+	 * name of the lenient mode for a combination of scorer flags
+	 */
+	public static String mode(boolean anydoc, boolean ignoreoffsets, boolean nocase){
+		String mode;
+		if(anydoc){
+			mode = "anydoc";
+		}
+		else if(ignoreoffsets){
+			mode = "ignoreoffsets";
+		}
+		else{
+			mode = "strict";
+		}
+		if(nocase){
+			mode += "-nocase";
+		}
+		return mode;
+	}
+
+	/*
+	 * index of keyFile read in format ("2013" or "2014") for mode
+	 */
+	public static File indexFile(String indexDir, String keyFile, String format, String mode) throws IOException{
+		MessageDigest md5 = md5();
+		md5.update(new File(keyFile).getCanonicalPath().getBytes(UTF8));
+		String pathHash = hex(md5.digest()).substring(0, 8);
+		return new File(indexDir, new File(keyFile).getName() + "." + pathHash + "." + format + "." + mode + ".idx");
+	}
+
+	/*
+	 * hex MD5 of the key file content
+	 */
+	public static String hash(String keyFile) throws IOException{
+		MessageDigest md5 = md5();
+		InputStream in = new FileInputStream(keyFile);
+		try {
+			byte[] buf = new byte[1 << 16];
+			int n;
+			while((n = in.read(buf)) > 0){
+				md5.update(buf, 0, n);
+			}
+		} finally {
+			in.close();
+		}
+		return hex(md5.digest());
+	}
+
+	private static MessageDigest md5(){
+		try {
+			return MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static String hex(byte[] digest){
+		StringBuilder sb = new StringBuilder();
+		for(byte b : digest){
+			sb.append(String.format("%02x", b & 0xff));
+		}
+		return sb.toString();
+	}
+
+	/*
+	 * writes the judgement tables of a scorer to indexFile
+	 *
+	 * args:
+	 *
+	 * 1) indexFile - file to write
+	 * 2) keyHash - hash of the key file the tables were built from
+	 * 3) tables - judgement tables keyed by response key; the first one defines the key set
+	 * 4) equivalenceClass - response key -> normalized equivalence class
+	 * 5)6) query_eclasses, query_kb_eclasses - query -> equivalence classes of Correct / Redundant answers
+	 */
+	public static void write(File indexFile, String keyHash, List<Map<String,String>> tables,
+			Map<String,Integer> equivalenceClass, Map<String,Set<Integer>> query_eclasses,
+			Map<String,Set<Integer>> query_kb_eclasses) throws IOException{
+		File dir = indexFile.getParentFile();
+		if(dir != null && !dir.exists()){
+			dir.mkdirs();
+		}
+		//write to a temporary file first so a concurrent reader never sees a partial index
+		File tmp = new File(indexFile.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			writeString(out, keyHash);
+			out.writeInt(tables.size());
+
+			Map<String,String> primary = tables.get(0);
+			out.writeInt(primary.size());
+			for(String key : primary.keySet()){
+				writeString(out, key);
+				for(Map<String,String> table : tables){
+					writeString(out, table.get(key));
+				}
+				out.writeInt(equivalenceClass.get(key));
+			}
+			writeEclasses(out, query_eclasses);
+			writeEclasses(out, query_kb_eclasses);
+		} finally {
+			out.close();
+		}
+		if(indexFile.exists()){
+			indexFile.delete();
+		}
+		if(!tmp.renameTo(indexFile)){
+			throw new IOException("Unable to write key index " + indexFile);
+		}
+		System.out.println("Wrote key index " + indexFile);
+	}
+
+	/*
+	 * fills the given (empty) tables from indexFile
+	 *
+	 * returns false, leaving the tables untouched, if the index
+	 * does not exist or was built from a different key file
+	 */
+	public static boolean read(File indexFile, String keyHash, List<Map<String,String>> tables,
+			Map<String,Integer> equivalenceClass, Map<String,Set<Integer>> query_eclasses,
+			Map<String,Set<Integer>> query_kb_eclasses) throws IOException{
+		if(!indexFile.isFile()){
+			return false;
+		}
+		RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if(buf.remaining() < 8 || buf.getInt() != MAGIC || buf.getInt() != VERSION){
+				System.out.println("Warning: ignoring unreadable key index " + indexFile);
+				return false;
+			}
+			StringReader strings = new StringReader(buf);
+			if(!keyHash.equals(strings.read())){
+				System.out.println("Key file changed since " + indexFile + " was built");
+				return false;
+			}
+			if(buf.getInt() != tables.size()){
+				System.out.println("Warning: ignoring key index with different judgement tables " + indexFile);
+				return false;
+			}
+
+			int n = buf.getInt();
+			for(int i = 0; i < n; i++){
+				String key = strings.read();
+				for(Map<String,String> table : tables){
+					table.put(key, intern(strings.read()));
+				}
+				equivalenceClass.put(key, buf.getInt());
+			}
+			readEclasses(buf, strings, query_eclasses);
+			readEclasses(buf, strings, query_kb_eclasses);
+		} finally {
+			raf.close();
+		}
+		return true;
+	}
+
+	private static void writeEclasses(DataOutputStream out, Map<String,Set<Integer>> eclasses) throws IOException{
+		out.writeInt(eclasses.size());
+		for(Map.Entry<String,Set<Integer>> e : eclasses.entrySet()){
+			writeString(out, e.getKey());
+			out.writeInt(e.getValue().size());
+			for(Integer eclass : e.getValue()){
+				out.writeInt(eclass);
+			}
+		}
+	}
+
+	private static void readEclasses(MappedByteBuffer buf, StringReader strings, Map<String,Set<Integer>> eclasses){
+		int n = buf.getInt();
+		for(int i = 0; i < n; i++){
+			String query = strings.read();
+			int size = buf.getInt();
+			Set<Integer> set = new HashSet<Integer>();
+			for(int j = 0; j < size; j++){
+				set.add(buf.getInt());
+			}
+			eclasses.put(query, set);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException{
+		byte[] bytes = s.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/*
+	 * StringReader class:
+	 *
+	 * reads the strings of an index, decoding each in a buffer that is
+	 * kept and grown to the longest string met
+	 */
+	private static class StringReader {
+		private final MappedByteBuffer buf;
+		private byte[] scratch = new byte[256];
+
+		StringReader(MappedByteBuffer buf){
+			this.buf = buf;
+		}
+
+		String read(){
+			int len = buf.getInt();
+			if(len > scratch.length){
+				scratch = new byte[len];
+			}
+			buf.get(scratch, 0, len);
+			return new String(scratch, 0, len, UTF8);
+		}
+	}
+
+	/*
+	 * judgement codes are single letters; share one instance per code
+	 */
+	private static String intern(String judgement){
+		return judgement.length() == 1 ? judgement.intern() : judgement;
+	}
+
+	/*
+	 * Command line args
+	 *
+	 * @args[0] key file
+	 * @args[1] directory to write the indexes to
+	 * @args[2] key format : "2014" (default) or "2013"
+	 *
+	 * compiles the key for every lenient mode
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 2){
+			System.out.println("KeyIndex must be invoked with: <key file> <index dir> [2013|2014]");
+			System.exit(1);
+		}
+		String keyFile = args[0];
+		String indexDir = args[1];
+		String year = args.length > 2 ? args[2] : "2014";
+		String keyHash = hash(keyFile);
+
+		List<boolean[]> modes = new ArrayList<boolean[]>();
+		for(boolean nocase : new boolean[]{false, true}){
+			modes.add(new boolean[]{false, false, nocase}); //strict
+			modes.add(new boolean[]{false, true, nocase});  //ignoreoffsets
+			modes.add(new boolean[]{true, true, nocase});   //anydoc
+		}
+		if(year.equals("2013")){
+			for(boolean[] m : modes){
+				File indexFile = indexFile(indexDir, keyFile, "2013", mode(m[0], m[1], m[2]));
+				scorer2013 s = new scorer2013();
+				s.anydoc = m[0];
+				s.ignoreoffsets = m[1];
+				s.nocase = m[2];
+				s.readKey(keyFile);
+				write(indexFile, keyHash, s.judgementTables(), s.equivalenceClass, s.query_eclasses, s.query_kb_eclasses);
+			}
+		}
+		else{
+			// one pass over the key for all modes
+			List<KeyModel> models = KeyModel.read(keyFile, modes);
+			for(int i = 0; i < modes.size(); i++){
+				boolean[] m = modes.get(i);
+				KeyModel model = models.get(i);
+				write(indexFile(indexDir, keyFile, "2014", mode(m[0], m[1], m[2])), keyHash, model.judgementTables(),
+						model.equivalenceClasses(), model.queryEclasses(), model.queryKbEclasses());
+			}
+		}
+	}
+}
@@ -0,0 +1,484 @@
+package stackingm2;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * KeyModel class:
+ *
+ * Judgement tables built from an LDC key file for one lenient
+ * mode. A KeyModel is immutable once built, so a single instance
+ * can be shared by any number of ResponseScorers, including
+ * ones running on different threads.
+ *
+ * Keys are entity_id:slot_name\trelationProv\tfillerProv\tresponse_string,
+ * normalized for the lenient mode the model was built with.
+ *
+ */
+public final class KeyModel {
+
+	// codes in judgement file
+	static final String CORRECT = "C";
+	static final String REDUNDANT = "R";
+	static final String INEXACT = "X";
+	static final String WRONG = "W";
+	static final String IGNORE = "I";
+	static final String NORESPONSE = "0";
+	static final String INEXACT_LONG = "L";
+	static final String INEXACT_SHORT = "S";
+
+	final boolean anydoc;
+	final boolean ignoreoffsets;
+	final boolean nocase;
+
+	// mapping from response key --> judgement for filler (response_string and provenance)
+	private final Map<String,String> judgement;
+
+	// mapping from response key --> judgement for relation provenance
+	private final Map<String,String> relationProvjudgement;
+
+	// mapping from response key --> equivalence class of Correct or Redundant answers
+	private final Map<String,Integer> equivalenceClass;
+
+	// mapping from entity_id:slot_name --> set of equivalence classes for Correct answers not in the reference KB
+	private final Map<String,Set<Integer>> query_eclasses;
+
+	// mapping from entity_id:slot_name --> set of equivalence classes for Correct answers already in the reference KB
+	private final Map<String,Set<Integer>> query_kb_eclasses;
+
+	KeyModel(boolean anydoc, boolean ignoreoffsets, boolean nocase,
+			Map<String,String> judgement, Map<String,String> relationProvjudgement,
+			Map<String,Integer> equivalenceClass, Map<String,Set<Integer>> query_eclasses,
+			Map<String,Set<Integer>> query_kb_eclasses){
+		this.anydoc = anydoc;
+		this.ignoreoffsets = ignoreoffsets;
+		this.nocase = nocase;
+		this.judgement = Collections.unmodifiableMap(judgement);
+		this.relationProvjudgement = Collections.unmodifiableMap(relationProvjudgement);
+		this.equivalenceClass = Collections.unmodifiableMap(equivalenceClass);
+		this.query_eclasses = freeze(query_eclasses);
+		this.query_kb_eclasses = freeze(query_kb_eclasses);
+	}
+
+	private static Map<String,Set<Integer>> freeze(Map<String,Set<Integer>> eclasses){
+		Map<String,Set<Integer>> frozen = new HashMap<String,Set<Integer>>();
+		for(Map.Entry<String,Set<Integer>> e : eclasses.entrySet()){
+			frozen.put(e.getKey(), Collections.unmodifiableSet(e.getValue()));
+		}
+		return Collections.unmodifiableMap(frozen);
+	}
+
+	public String judgement(String key){
+		return judgement.get(key);
+	}
+
+	public String relationProvJudgement(String key){
+		return relationProvjudgement.get(key);
+	}
+
+	public Integer equivalenceClass(String key){
+		return equivalenceClass.get(key);
+	}
+
+	/*
+	 * equivalence classes of Correct answers not in the reference KB, or null
+	 */
+	public Set<Integer> eclasses(String query){
+		return query_eclasses.get(query);
+	}
+
+	/*
+	 * equivalence classes of Correct answers already in the reference KB, or null
+	 */
+	public Set<Integer> kbEclasses(String query){
+		return query_kb_eclasses.get(query);
+	}
+
+	public int size(){
+		return judgement.size();
+	}
+
+	/*
+	 * judgement tables in the order stored in a KeyIndex
+	 */
+	List<Map<String,String>> judgementTables(){
+		List<Map<String,String>> tables = new ArrayList<Map<String,String>>();
+		tables.add(judgement);
+		tables.add(relationProvjudgement);
+		return tables;
+	}
+
+	Map<String,Integer> equivalenceClasses(){
+		return equivalenceClass;
+	}
+
+	Map<String,Set<Integer>> queryEclasses(){
+		return query_eclasses;
+	}
+
+	Map<String,Set<Integer>> queryKbEclasses(){
+		return query_kb_eclasses;
+	}
+
+	/*
+	 * builds the model for keyFile under the given lenient mode
+	 *
+	 * if keyIndexDir is not null the model is read from a compiled
+	 * KeyIndex there, which is (re)built from the key file when
+	 * missing or stale
+	 */
+	public static KeyModel load(String keyFile, boolean anydoc, boolean ignoreoffsets, boolean nocase,
+			String keyIndexDir) throws IOException{
+		return load(keyFile, anydoc, ignoreoffsets, nocase, keyIndexDir, null);
+	}
+
+	/*
+	 * as load() above, but if queries is not null the model only holds
+	 * the judgements of those entity_id:slot_name pairs, and only their
+	 * lines of the key file are parsed
+	 *
+	 * with a keyIndexDir the lines are found through the KeyOffsets of
+	 * the key file (built on first use) and the rest of the file is not
+	 * read at all; the compiled KeyIndex is not used
+	 */
+	public static KeyModel load(String keyFile, boolean anydoc, boolean ignoreoffsets, boolean nocase,
+			String keyIndexDir, Set<String> queries) throws IOException{
+		if(queries != null){
+			List<boolean[]> modes = new ArrayList<boolean[]>();
+			modes.add(new boolean[]{anydoc, ignoreoffsets, nocase});
+			if(keyIndexDir == null)
+				return read(keyFile, modes, queries).get(0);
+			long[] ranges = null;
+			try {
+				ranges = KeyOffsets.load(keyIndexDir, keyFile).ranges(queries);
+			} catch (FileNotFoundException e) {
+				System.out.println("Unable to open judgement file " + keyFile);
+				System.exit(1);
+			}
+			return read(keyFile, modes, ranges, queries).get(0);
+		}
+		if(keyIndexDir == null){
+			return read(keyFile, anydoc, ignoreoffsets, nocase);
+		}
+		// reuse the compiled key for this lenient mode unless the key file has changed
+		File indexFile = KeyIndex.indexFile(keyIndexDir, keyFile, "2014", KeyIndex.mode(anydoc, ignoreoffsets, nocase));
+		String keyHash = KeyIndex.hash(keyFile);
+		Map<String,String> judgement = new HashMap<String,String>();
+		Map<String,String> relationProvjudgement = new HashMap<String,String>();
+		List<Map<String,String>> tables = new ArrayList<Map<String,String>>();
+		tables.add(judgement);
+		tables.add(relationProvjudgement);
+		Map<String,Integer> equivalenceClass = new HashMap<String,Integer>();
+		Map<String,Set<Integer>> query_eclasses = new HashMap<String,Set<Integer>>();
+		Map<String,Set<Integer>> query_kb_eclasses = new HashMap<String,Set<Integer>>();
+		if(KeyIndex.read(indexFile, keyHash, tables, equivalenceClass, query_eclasses, query_kb_eclasses)){
+			System.out.println("Read " + judgement.size() + " judgements from key index " + indexFile);
+			return new KeyModel(anydoc, ignoreoffsets, nocase, judgement, relationProvjudgement,
+					equivalenceClass, query_eclasses, query_kb_eclasses);
+		}
+		KeyModel model = read(keyFile, anydoc, ignoreoffsets, nocase);
+		KeyIndex.write(indexFile, keyHash, model.judgementTables(), model.equivalenceClasses(),
+				model.queryEclasses(), model.queryKbEclasses());
+		return model;
+	}
+
+	/*
+	 * parses keyFile line by line
+	 */
+	static KeyModel read(String keyFile, boolean anydoc, boolean ignoreoffsets, boolean nocase) throws IOException{
+		List<boolean[]> modes = new ArrayList<boolean[]>();
+		modes.add(new boolean[]{anydoc, ignoreoffsets, nocase});
+		return read(keyFile, modes).get(0);
+	}
+
+	/*
+	 * parses keyFile once into one model per lenient mode
+	 *
+	 * each mode is {anydoc, ignoreoffsets, nocase}; the mode
+	 * independent part of a line is parsed only once and then
+	 * added to the builder of every mode
+	 *
+	 * lines are parsed in parallel (see ParallelTsv) but added to
+	 * the builders in file order, so the models do not depend on
+	 * the number of threads
+	 */
+	static List<KeyModel> read(String keyFile, List<boolean[]> modes) throws IOException{
+		return read(keyFile, modes, null);
+	}
+
+	/*
+	 * as read() above, keeping only the lines of queries (all lines if null)
+	 */
+	static List<KeyModel> read(String keyFile, List<boolean[]> modes, final Set<String> queries) throws IOException{
+		final List<Builder> builders = builders(modes);
+		try {
+			ParallelTsv.parse(keyFile, new ParallelTsv.LineParser<KeyLine>() {
+				public KeyLine parse(TsvReader reader, List<String> warnings) {
+					return KeyLine.parse(reader, warnings, queries);
+				}
+			}, new ParallelTsv.ChunkHandler<KeyLine>() {
+				public void handle(List<KeyLine> keyLines, List<String> warnings) {
+					for(String warning : warnings){
+						System.out.println(warning);
+					}
+					for(KeyLine keyLine : keyLines){
+						for(Builder builder : builders){
+							builder.add(keyLine);
+						}
+					}
+				}
+			}, ParallelTsv.THREADS);
+		} catch (FileNotFoundException e) {
+			System.out.println("Unable to open judgement file " + keyFile);
+			System.exit(1);
+		}
+		return build(builders);
+	}
+
+	/*
+	 * parses the lines of keyFile in ranges (pairs of start and end
+	 * offsets, see KeyOffsets), keeping only the lines of queries
+	 */
+	static List<KeyModel> read(String keyFile, List<boolean[]> modes, long[] ranges, Set<String> queries) throws IOException{
+		List<Builder> builders = builders(modes);
+		List<String> warnings = new ArrayList<String>();
+		for(int i = 0; i < ranges.length; i += 2){
+			TsvReader keyReader = new TsvReader(keyFile, ranges[i], ranges[i + 1], TsvReader.WINDOW);
+			try {
+				while(keyReader.next()){
+					KeyLine keyLine = KeyLine.parse(keyReader, warnings, queries);
+					for(String warning : warnings){
+						System.out.println(warning);
+					}
+					warnings.clear();
+					if(keyLine == null)
+						continue;
+					for(Builder builder : builders){
+						builder.add(keyLine);
+					}
+				}
+			} finally {
+				keyReader.close();
+			}
+		}
+		return build(builders);
+	}
+
+	private static List<Builder> builders(List<boolean[]> modes){
+		List<Builder> builders = new ArrayList<Builder>();
+		for(boolean[] m : modes){
+			builders.add(new Builder(m[0], m[1], m[2]));
+		}
+		return builders;
+	}
+
+	private static List<KeyModel> build(List<Builder> builders){
+		List<KeyModel> models = new ArrayList<KeyModel>();
+		for(Builder builder : builders){
+			KeyModel model = builder.build();
+			System.out.println("Read " + model.size() + " judgements.");
+			models.add(model);
+		}
+		return models;
+	}
+
+	/*
+	 * KeyLine class:
+	 *
+	 * one line of the key file with the spans sorted, before
+	 * any normalization for a lenient mode
+	 */
+	static class KeyLine {
+		String query_id;
+		String relationProv;
+		String answerString;
+		String fillerProv;
+		String jment;
+		String relationProvjment;
+		int eclass;
+
+		/*
+		 * parses the current line of reader; returns null for lines
+		 * that are invalid (adding a warning), need not be recorded or
+		 * are not of one of queries (if not null)
+		 */
+		static KeyLine parse(TsvReader reader, List<String> warnings, Set<String> queries){
+			if(reader.splitTrimmed(8) != 8){
+				warnings.add("Warning: Invalid line in judgement file:");
+				warnings.add(reader.line());
+				return null;
+			}
+			String query_id = reader.field(1).replace(",", "/");  //  entity_id + ":" + slot_name
+			if(queries != null && !queries.contains(query_id))
+				return null;
+			// 2010 participant annotations may include NILs, but these need not be recorded
+			if(reader.fieldEquals(2, "NIL"))
+				return null;
+
+			KeyLine k = new KeyLine();
+			k.query_id = query_id;
+			k.relationProv = scorer2014.sortSpans(reader.field(2));
+			k.answerString = reader.field(3).trim();
+			k.fillerProv = scorer2014.sortSpans(reader.field(4).trim());
+			k.jment = reader.field(5); // overall judgment for the response
+			k.relationProvjment = reader.field(6);
+			try {
+				k.eclass = Integer.parseInt(reader.field(7));
+			} catch (NumberFormatException e) {
+				warnings.add("Warning: Invalid line in judgement file -- invalid equivalence class:");
+				warnings.add(reader.line());
+				return null;
+			}
+			return k;
+		}
+	}
+
+	/*
+	 * Builder class:
+	 *
+	 * accumulates key file lines; lines must be added in
+	 * file order, since later judgements can override or
+	 * merge with earlier ones under lenient matching.
+	 */
+	static class Builder {
+		final boolean anydoc;
+		final boolean ignoreoffsets;
+		final boolean nocase;
+
+		Map<String,String> judgement = new HashMap<String,String>();
+		Map<String,String> relationProvjudgement = new HashMap<String,String>();
+		Map<String,Integer> equivalenceClass = new HashMap<String,Integer>();
+		Map<String,Set<Integer>> query_eclasses = new HashMap<String,Set<Integer>>();
+		Map<String,Set<Integer>> query_kb_eclasses = new HashMap<String,Set<Integer>>();
+
+		// keeps track of equivalent eclasses of each query (necessary due to lenient matching)
+		Map<String,DisjointSets> equivEclassesByQuery = new HashMap<String,DisjointSets>();
+
+		// next unique equivalence class
+		int eclass_generator = 1000000;
+
+		Builder(boolean anydoc, boolean ignoreoffsets, boolean nocase){
+			this.anydoc = anydoc;
+			this.ignoreoffsets = ignoreoffsets;
+			this.nocase = nocase;
+		}
+
+		void add(KeyLine k){
+			String query_id = k.query_id;
+			String relationProv = k.relationProv;
+			String answerString = k.answerString;
+			if(nocase)
+				answerString = answerString.toLowerCase();
+			String fillerProv = k.fillerProv;
+
+			if(anydoc){ // ignore both relation provenance and filler provenance
+				relationProv = "*";
+				fillerProv = "*";
+			}
+			if(ignoreoffsets){ // remove offsets from spans, keep just the docs, remove duplicate docs
+				fillerProv = scorer2014.removeOffsets(fillerProv);
+				relationProv = scorer2014.removeOffsets(relationProv);
+			}
+
+			String jment = k.jment;
+			String relationProvjment = k.relationProvjment;
+			int eclass = k.eclass;
+			if(eclass == 0)
+				eclass = eclass_generator++;
+
+			String key = query_id + "\t" + relationProv + "\t" + fillerProv + "\t" + answerString;
+			String J = judgement.get(key);
+			if(J != null){  // this may happen under lenient matching: nocase, ignoreoffsets, or anydoc
+
+				// manage different judgments: keep the strongest
+				if(!jment.equals(J)){
+					String strongerJ = scorer2014.solveDisagreement(J, jment); // pick the stronger judgment, e.g., C is preferred over W
+					if(!strongerJ.equals(J)){
+						// update judgment
+						judgement.put(key, strongerJ);
+						// we might need to move the old eclass in query_eclasses and query_kb_eclasses because of new jment
+						// remove old eclass from query_eclasses and query_kb_eclasses, if necessary
+						int oldEclass = equivalenceClass.get(key);
+						if(J.equals(CORRECT)) query_eclasses.get(query_id).remove(oldEclass);  // should never true, because CORRECT is strongest judgment
+						else if(J.equals(REDUNDANT)) query_kb_eclasses.get(query_id).remove(oldEclass);  // if, e.g., "Harvard President" is in KB and "Yale President" is not in KB.... remove "Harvard President"
+						// add it to query_eclasses and query_kb_eclasses, if necessary
+						if(strongerJ.equals(CORRECT)){
+							if(query_eclasses.get(query_id) == null)
+								query_eclasses.put(query_id, new HashSet<Integer>());
+							query_eclasses.get(query_id).add(oldEclass); // we'll end up collapsing oldEclass and eclass later
+						}
+						else if(strongerJ.equals(REDUNDANT)){
+							if(query_kb_eclasses.get(query_id) == null)
+								query_kb_eclasses.put(query_id, new HashSet<Integer>());
+							query_kb_eclasses.get(query_id).add(oldEclass); // we'll end up collapsing oldEclass and eclass later
+						}
+					}
+				}
+
+				// we do NOT update equivalenceClass, query_eclasses, and query_kb_eclasses here
+				// for now, we just keep track of equivalent eclasses
+				// after reading all keys, we replace all equivalent eclasses with a single value
+				DisjointSets equivs = equivEclassesByQuery.get(query_id);
+				if(equivs == null){
+					equivs = new DisjointSets();
+					equivEclassesByQuery.put(query_id, equivs);
+				}
+				equivs.union(eclass, equivalenceClass.get(key));
+
+			}
+			else{ // new key, this is easy: we shouldn't have any conflicts
+				judgement.put(key, jment);
+				equivalenceClass.put(key, eclass);
+				relationProvjudgement.put(key, relationProvjment);
+				if(jment.equals(CORRECT)){
+					if(query_eclasses.get(query_id) == null)
+						query_eclasses.put(query_id, new HashSet<Integer>());
+					query_eclasses.get(query_id).add(eclass);
+				}
+				if(jment.equals(REDUNDANT)){
+					if(query_kb_eclasses.get(query_id) == null)
+						query_kb_eclasses.put(query_id, new HashSet<Integer>());
+					query_kb_eclasses.get(query_id).add(eclass);
+				}
+			}
+		}
+
+		KeyModel build(){
+			// normalize eclasses; necessary for the lenient scoring
+			// every eclass is replaced by the smallest one it was (transitively) merged with
+			if(!equivEclassesByQuery.isEmpty()){
+				for(Map.Entry<String,Integer> e : equivalenceClass.entrySet()){
+					String key = e.getKey();
+					DisjointSets equivs = equivEclassesByQuery.get(key.substring(0, key.indexOf('\t')));
+					if(equivs != null)
+						e.setValue(equivs.find(e.getValue()));
+				}
+				for(Map.Entry<String,DisjointSets> e : equivEclassesByQuery.entrySet()){
+					normalize(query_eclasses, e.getKey(), e.getValue());
+					normalize(query_kb_eclasses, e.getKey(), e.getValue());
+				}
+			}
+			return new KeyModel(anydoc, ignoreoffsets, nocase, judgement, relationProvjudgement,
+					equivalenceClass, query_eclasses, query_kb_eclasses);
+		}
+
+		private static void normalize(Map<String,Set<Integer>> eclasses, String query, DisjointSets equivs){
+			Set<Integer> set = eclasses.get(query);
+			if(set == null)
+				return;
+			Set<Integer> normalized = new HashSet<Integer>();
+			for(Integer eclass : set){
+				normalized.add(equivs.find(eclass));
+			}
+			eclasses.put(query, normalized);
+		}
+	}
+}
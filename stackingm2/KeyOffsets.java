@@ -0,0 +1,231 @@
+package stackingm2;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * KeyOffsets class:
+ *
+ * Index of a key file by query: for every entity_id:slot_name the
+ * byte ranges of the file holding its lines (a key file lists the
+ * lines of a query together, so that is usually a single range).
+ * Lines that do not have the 8 fields of a key line are filed under
+ * the empty query and always read, so that they are warned about as
+ * in a full read. With the index, a scorer that needs only a few
+ * queries reads just their lines instead of the whole key.
+ *
+ * The index is kept next to the compiled key indexes (see KeyIndex)
+ * and is tagged with the length and modification time of the key
+ * file rather than its MD5, since hashing the key would cost as much
+ * as the read it saves.
+ *
+ */
+public class KeyOffsets {
+
+	static final int MAGIC = 0x4b4f4646; // "KOFF"
+	static final int VERSION = 1;
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	// query --> start and end offsets of its ranges, in file order
+	final Map<String,long[]> ranges;
+
+	KeyOffsets(Map<String,long[]> ranges){
+		this.ranges = ranges;
+	}
+
+	public static File offsetsFile(String indexDir, String keyFile) throws IOException{
+		return KeyIndex.indexFile(indexDir, keyFile, "2014", "offsets");
+	}
+
+	/*
+	 * the index of keyFile in indexDir, built (and written) first if it
+	 * is missing or out of date
+	 */
+	public static KeyOffsets load(String indexDir, String keyFile) throws IOException{
+		File key = new File(keyFile);
+		File offsetsFile = offsetsFile(indexDir, keyFile);
+		KeyOffsets offsets = read(offsetsFile, key.length(), key.lastModified());
+		if(offsets == null){
+			offsets = build(keyFile);
+			offsets.write(offsetsFile, key.length(), key.lastModified());
+		}
+		return offsets;
+	}
+
+	/*
+	 * scans keyFile for the ranges of every query
+	 */
+	static KeyOffsets build(String keyFile) throws IOException{
+		Map<String,List<Long>> lists = new HashMap<String,List<Long>>();
+		TsvReader reader = new TsvReader(keyFile);
+		String current = null;
+		List<Long> currentList = null;
+		try {
+			while(reader.next()){
+				String query = reader.splitTrimmed(8) == 8 ? reader.field(1).replace(",", "/") : "";
+				if(query.equals(current))
+					continue;
+				long offset = reader.offset();
+				if(currentList != null)
+					currentList.add(offset);
+				currentList = lists.get(query);
+				if(currentList == null){
+					currentList = new ArrayList<Long>();
+					lists.put(query, currentList);
+				}
+				currentList.add(offset);
+				current = query;
+			}
+		} finally {
+			reader.close();
+		}
+		if(currentList != null)
+			currentList.add(new File(keyFile).length());
+
+		Map<String,long[]> ranges = new HashMap<String,long[]>();
+		for(Map.Entry<String,List<Long>> e : lists.entrySet()){
+			List<Long> list = e.getValue();
+			long[] r = new long[list.size()];
+			for(int i = 0; i < r.length; i++)
+				r[i] = list.get(i);
+			ranges.put(e.getKey(), r);
+		}
+		return new KeyOffsets(ranges);
+	}
+
+	/*
+	 * ranges holding the lines of queries (and the lines that are not
+	 * key lines), merged and in file order
+	 */
+	long[] ranges(Set<String> queries){
+		List<long[]> found = new ArrayList<long[]>();
+		int n = 0;
+		for(String query : queries){
+			long[] r = ranges.get(query);
+			if(r != null){
+				found.add(r);
+				n += r.length;
+			}
+		}
+		long[] invalid = ranges.get("");
+		if(invalid != null){
+			found.add(invalid);
+			n += invalid.length;
+		}
+		// sort the ranges by start, keeping start and end together
+		long[][] pairs = new long[n / 2][];
+		int k = 0;
+		for(long[] r : found){
+			for(int i = 0; i < r.length; i += 2)
+				pairs[k++] = new long[]{r[i], r[i + 1]};
+		}
+		Arrays.sort(pairs, new Comparator<long[]>() {
+			public int compare(long[] a, long[] b) {
+				return a[0] < b[0] ? -1 : (a[0] == b[0] ? 0 : 1);
+			}
+		});
+		long[] merged = new long[2 * pairs.length];
+		int m = 0;
+		for(long[] pair : pairs){
+			if(m > 0 && merged[m - 1] == pair[0]){
+				merged[m - 1] = pair[1];
+			}
+			else{
+				merged[m++] = pair[0];
+				merged[m++] = pair[1];
+			}
+		}
+		return Arrays.copyOf(merged, m);
+	}
+
+	void write(File offsetsFile, long keyLength, long keyModified) throws IOException{
+		File dir = offsetsFile.getParentFile();
+		if(dir != null && !dir.exists()){
+			dir.mkdirs();
+		}
+		//write to a temporary file first so a concurrent reader never sees a partial index
+		File tmp = new File(offsetsFile.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(keyLength);
+			out.writeLong(keyModified);
+			out.writeInt(ranges.size());
+			for(Map.Entry<String,long[]> e : ranges.entrySet()){
+				byte[] bytes = e.getKey().getBytes(UTF8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+				out.writeInt(e.getValue().length);
+				for(long offset : e.getValue()){
+					out.writeLong(offset);
+				}
+			}
+		} finally {
+			out.close();
+		}
+		if(offsetsFile.exists()){
+			offsetsFile.delete();
+		}
+		if(!tmp.renameTo(offsetsFile)){
+			throw new IOException("Unable to write key offsets " + offsetsFile);
+		}
+		System.out.println("Wrote key offsets " + offsetsFile);
+	}
+
+	/*
+	 * the index in offsetsFile, or null if there is none for a key
+	 * file of this length and modification time
+	 */
+	static KeyOffsets read(File offsetsFile, long keyLength, long keyModified) throws IOException{
+		if(!offsetsFile.isFile()){
+			return null;
+		}
+		RandomAccessFile raf = new RandomAccessFile(offsetsFile, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if(buf.remaining() < 8 || buf.getInt() != MAGIC || buf.getInt() != VERSION){
+				System.out.println("Warning: ignoring unreadable key offsets " + offsetsFile);
+				return null;
+			}
+			if(buf.getLong() != keyLength || buf.getLong() != keyModified){
+				System.out.println("Key file changed since " + offsetsFile + " was built");
+				return null;
+			}
+			int n = buf.getInt();
+			Map<String,long[]> ranges = new HashMap<String,long[]>();
+			byte[] scratch = new byte[256];
+			for(int i = 0; i < n; i++){
+				int len = buf.getInt();
+				if(len > scratch.length){
+					scratch = new byte[len];
+				}
+				buf.get(scratch, 0, len);
+				String query = new String(scratch, 0, len, UTF8);
+				long[] r = new long[buf.getInt()];
+				for(int j = 0; j < r.length; j++){
+					r[j] = buf.getLong();
+				}
+				ranges.put(query, r);
+			}
+			return new KeyOffsets(ranges);
+		} finally {
+			raf.close();
+		}
+	}
+}
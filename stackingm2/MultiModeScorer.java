@@ -0,0 +1,144 @@
+package stackingm2;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/*
+ * MultiModeScorer class:
+ *
+ * Scores a response file under several lenient modes at once
+ * (by default strict, ignoreoffsets, anydoc and nocase). The key
+ * file and the response file are each read once; every line is
+ * parsed once (KeyModel.KeyLine, ResponseScorer.RawResponse) and
+ * handed to one KeyModel builder / ResponseScorer per mode, and a
+ * scorecard is printed for each mode, followed by a one line
+ * per mode comparison of the official and diagnostic scores.
+ *
+ */
+public class MultiModeScorer {
+
+	// {anydoc, ignoreoffsets, nocase} of each mode scored
+	List<boolean[]> modes = new ArrayList<boolean[]>();
+
+	List<KeyModel> keys;
+
+	public MultiModeScorer(){
+		modes.add(new boolean[]{false, false, false}); //strict
+		modes.add(new boolean[]{false, true, false});  //ignoreoffsets
+		modes.add(new boolean[]{true, true, false});   //anydoc
+		modes.add(new boolean[]{false, false, true});  //nocase
+	}
+
+	/*
+	 * reads keyFile once into the key of every mode
+	 */
+	public void readKey(String keyFile) throws IOException{
+		keys = KeyModel.read(keyFile, modes);
+	}
+
+	/*
+	 * reads responseFile once and scores it under every mode,
+	 * printing and returning the results in the order of the modes
+	 */
+	public List<ScoreResult> score(String responseFile, String runid, String slotFile, boolean trace) throws IOException{
+		// the slot file is read once too, for all the modes
+		Set<String> listed = null;
+		if(slotFile != null)
+			listed = ResponseScorer.readSlotFile(slotFile);
+		List<ResponseScorer> scorers = new ArrayList<ResponseScorer>();
+		for(KeyModel key : keys){
+			ResponseScorer rs = new ResponseScorer(key, runid);
+			rs.slotFile = slotFile;
+			rs.slotFileSlots = listed;
+			rs.trace = trace;
+			scorers.add(rs);
+		}
+		TsvReader responseReader = null;
+		try {
+			responseReader = new TsvReader(responseFile);
+		} catch (FileNotFoundException e) {
+			System.out.println("Unable to open responses file " + responseFile);
+			System.exit(1);
+		}
+		List<String> warnings = new ArrayList<String>();
+		try {
+			while(responseReader.next()){
+				ResponseScorer.RawResponse raw = ResponseScorer.RawResponse.parse(responseReader, warnings);
+				if(raw == null)
+					continue;
+				for(ResponseScorer rs : scorers){
+					rs.addResponse(rs.normalize(raw));
+				}
+			}
+		} finally {
+			responseReader.close();
+		}
+		for(String warning : warnings){
+			System.out.println(warning);
+		}
+		System.out.println("Read responses for " + scorers.get(0).response.size() + " slots.");
+		ConsoleReporter reporter = new ConsoleReporter();
+		List<ScoreResult> results = new ArrayList<ScoreResult>();
+		for(int i = 0; i < scorers.size(); i++){
+			boolean[] m = modes.get(i);
+			System.out.println("\n######## Mode: " + KeyIndex.mode(m[0], m[1], m[2]) + " ########");
+			ScoreResult result = scorers.get(i).score();
+			reporter.report(result);
+			results.add(result);
+		}
+		return results;
+	}
+
+	public void printComparison(List<ScoreResult> results){
+		System.out.println("\n======== Scores by Mode ===========");
+		System.out.println("mode\tprecision\trecall\tF1\tdiagnostic precision\tdiagnostic recall\tdiagnostic F1");
+		for(int i = 0; i < results.size(); i++){
+			boolean[] m = modes.get(i);
+			ScoreResult.Counts c = results.get(i).total;
+			System.out.println(KeyIndex.mode(m[0], m[1], m[2]) + "\t" + c.precision() + "\t" + c.recall() + "\t" + c.f1()
+					+ "\t" + c.diagnosticPrecision() + "\t" + c.diagnosticRecall() + "\t" + c.diagnosticF1());
+		}
+	}
+
+	/*
+	 * Command line args
+	 *
+	 * @args[0] responses file
+	 * @args[1] key file
+	 * @args[2..] flags : trace, slots=<slotfile>
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 2){
+			System.out.println("MultiModeScorer must be invoked with: <responses file> <key file> [trace] [slots=<slotfile>]");
+			System.exit(1);
+		}
+		boolean trace = false;
+		String slotFile = null;
+		for(int i = 2; i < args.length; i++){
+			String flag = args[i];
+			if(flag.equals("trace")){
+				trace = true;
+			}
+			else if(flag.startsWith("slots=")){
+				slotFile = flag.substring(6);
+			}
+			else{
+				System.out.println("Unknown flag: " + flag);
+				System.exit(1);
+			}
+		}
+		MultiModeScorer scorer = new MultiModeScorer();
+		scorer.readKey(args[1]);
+		List<ScoreResult> results = null;
+		try {
+			results = scorer.score(args[0], "stackingm2", slotFile, trace);
+		} catch (IllegalStateException e) {
+			System.out.println("Error: " + e.getMessage());
+			System.exit(1);
+		}
+		scorer.printComparison(results);
+	}
+}
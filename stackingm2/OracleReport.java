@@ -0,0 +1,229 @@
+package stackingm2;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.TreeSet;
+
+/*
+ * OracleReport class:
+ *
+ * Upper bounds for ensembles of N runs, from the pool of a
+ * DeltaScorer. Every equivalence class of an entityId:slot pair that
+ * some run has a Correct or Redundant (with reference KB) fill in
+ * gets the set of those runs as a BitSet; an oracle that keeps one
+ * correct fill per class from a set of runs S then has precision 1
+ * and recall (classes whose BitSet meets S) / answers, a single-valued
+ * pair counting for one class at most. From these BitSets alone,
+ * without scoring again, the report gives for each run:
+ *
+ * 1) its official F1, as BatchScorer scored it, and the F1 of its oracle alone
+ * 2) unique - classes no other run finds
+ * 3) the oracle F1 of the union without it, and the drop from the full union
+ * 4) its rank in a greedy forward selection of runs by oracle F1, and its gain there
+ *
+ */
+public class OracleReport {
+
+	final DeltaScorer ds;
+
+	// equivalence class --> runs with a credited fill in it
+	final BitSet[] covers;
+	// equivalence class --> its entityId:slot pair
+	final int[] pairs;
+
+	public OracleReport(DeltaScorer ds){
+		this.ds = ds;
+		covers = new BitSet[ds.numEclasses()];
+		pairs = new int[covers.length];
+		for(int E = 0; E < covers.length; E++)
+			covers[E] = new BitSet();
+		for(int i = 0; i < ds.size(); i++){
+			if(ds.credited(i)){
+				covers[ds.eclass(i)].or(ds.runs(i));
+				pairs[ds.eclass(i)] = ds.pair(i);
+			}
+		}
+	}
+
+	/*
+	 * number of classes found by some run of runs, one at most per
+	 * single-valued pair
+	 */
+	public int covered(BitSet runs){
+		int n = 0;
+		BitSet singles = new BitSet();
+		for(int E = 0; E < covers.length; E++){
+			if(!covers[E].intersects(runs))
+				continue;
+			if(ds.isSingleValued(pairs[E])){
+				if(singles.get(pairs[E]))
+					continue;
+				singles.set(pairs[E]);
+			}
+			n++;
+		}
+		return n;
+	}
+
+	/*
+	 * F1 of an oracle that keeps one correct fill for each of covered
+	 * classes; 0 if there are none
+	 */
+	public float oracleF1(int covered){
+		if(covered == 0)
+			return 0;
+		float recall = ((float) covered) / ds.answers;
+		return ScoreResult.f1(1, recall);
+	}
+
+	public float oracleF1(BitSet runs){
+		return oracleF1(covered(runs));
+	}
+
+	/*
+	 * writes the report, one row per run and a row for the union of all
+	 * runs; results - the BatchScorer result of each run, for its official F1
+	 */
+	public void write(String reportFile, List<String> runNames, List<ScoreResult> results) throws IOException{
+		int n = ds.numRuns;
+		BitSet all = new BitSet();
+		all.set(0, n);
+		int coveredAll = covered(all);
+		float oracleAll = oracleF1(coveredAll);
+
+		// classes found by one run only
+		int[] unique = new int[n];
+		for(BitSet cover : covers){
+			if(cover.cardinality() == 1)
+				unique[cover.nextSetBit(0)]++;
+		}
+
+		// greedy forward selection: rank of each run and the oracle F1 it adds
+		int[] rank = new int[n];
+		float[] gain = new float[n];
+		Arrays.fill(rank, -1);
+		BitSet selected = new BitSet();
+		float selectedF1 = 0;
+		for(int step = 0; step < n; step++){
+			int best = -1;
+			float bestF1 = -1;
+			for(int run = 0; run < n; run++){
+				if(selected.get(run))
+					continue;
+				selected.set(run);
+				float f = oracleF1(selected);
+				selected.clear(run);
+				if(f > bestF1){
+					best = run;
+					bestF1 = f;
+				}
+			}
+			selected.set(best);
+			rank[best] = step + 1;
+			gain[best] = bestF1 - selectedF1;
+			selectedF1 = bestF1;
+		}
+
+		String delimiter = "\t";
+		BufferedWriter bw = new BufferedWriter(new FileWriter(reportFile));
+		try {
+			bw.write("run"+delimiter+"F1"+delimiter+"oracleF1"+delimiter+"unique"+delimiter+"leaveOneOutF1"+delimiter+"leaveOneOutDelta"+delimiter+"greedyRank"+delimiter+"greedyGain\n");
+			for(int run = 0; run < n; run++){
+				BitSet one = new BitSet();
+				one.set(run);
+				BitSet others = (BitSet) all.clone();
+				others.clear(run);
+				float loo = oracleF1(others);
+				bw.write(runNames.get(run)+delimiter+results.get(run).f1()+delimiter+oracleF1(one)+delimiter+unique[run]
+						+delimiter+loo+delimiter+(oracleAll - loo)+delimiter+rank[run]+delimiter+gain[run]+"\n");
+			}
+			ds.clear();
+			ds.includeAll();
+			bw.write("UNION"+delimiter+ds.f1()+delimiter+oracleAll+delimiter+delimiter+delimiter+delimiter+delimiter+"\n");
+		} finally {
+			bw.close();
+			ds.clear();
+		}
+	}
+
+	/*
+	 * Command line args
+	 *
+	 * @args[0] directory of response files, one per run
+	 * @args[1] key file
+	 * @args[2] report file
+	 * @args[3..] flags : anydoc, ignoreoffsets, nocase, keyindex=<dir>, slots=<slotfile>
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 3){
+			System.out.println("OracleReport must be invoked with: <responses dir> <key file> <report file> [flag ...]");
+			System.exit(1);
+		}
+		String responseDir = args[0];
+		String keyFile = args[1];
+		String reportFile = args[2];
+		boolean anydoc = false, ignoreoffsets = false, nocase = false;
+		String keyIndexDir = null;
+		String slotFile = null;
+		for(int i = 3; i < args.length; i++){
+			String flag = args[i];
+			if(flag.equals("anydoc")){
+				anydoc = true;
+				ignoreoffsets = true;
+			}
+			else if(flag.equals("ignoreoffsets")){
+				ignoreoffsets = true;
+			}
+			else if(flag.equals("nocase")){
+				nocase = true;
+			}
+			else if(flag.startsWith("keyindex=")){
+				keyIndexDir = flag.substring(9);
+			}
+			else if(flag.startsWith("slots=")){
+				slotFile = flag.substring(6);
+			}
+			else{
+				System.out.println("Unknown flag: " + flag);
+				System.exit(1);
+			}
+		}
+
+		File[] listOfFiles = new File(responseDir).listFiles();
+		if(listOfFiles == null){
+			System.out.println("Unable to list response directory " + responseDir);
+			System.exit(1);
+		}
+		Arrays.sort(listOfFiles);
+		KeyModel key = KeyModel.load(keyFile, anydoc, ignoreoffsets, nocase, keyIndexDir);
+		List<String> runNames = new ArrayList<String>();
+		List<String> files = new ArrayList<String>();
+		for(File f : listOfFiles){
+			if(f.isFile()){
+				runNames.add(f.getName());
+				files.add(f.getPath());
+			}
+		}
+		//score all runs in parallel for the official column, then pool the responses they have read
+		List<ResponseScorer> scorers = BatchScorer.newScorers(key, runNames);
+		for(ResponseScorer rs : scorers){
+			rs.keepOutputs = false;
+			rs.slotFile = slotFile;
+		}
+		List<ScoreResult> results = BatchScorer.scoreAll(scorers, files, Runtime.getRuntime().availableProcessors());
+		DeltaScorer ds = new DeltaScorer(key, slotFile == null ? null : new TreeSet<String>(scorer2014.readLines(slotFile)));
+		for(ResponseScorer rs : scorers){
+			for(String warning : rs.readWarnings)
+				System.out.println(warning);
+			ds.addRun(rs);
+		}
+		new OracleReport(ds).write(reportFile, runNames, results);
+		System.out.println("Wrote oracle report for " + ds.numRuns + " runs to " + reportFile);
+	}
+}
@@ -0,0 +1,200 @@
+package stackingm2;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * OutputCache class:
+ *
+ * Directory of the mpConfidence, mpTarget and mpOutput tables a
+ * scorer fills in for a responses file, so that a DataExtractor run
+ * on the same inputs again can take them from here instead of
+ * scoring. Entries are addressed by content: the file name of an
+ * entry is the hash of the responses file, the key file and a flags
+ * string naming the scorer and everything else that changes its
+ * tables (lenient mode, target coding), so a changed input simply
+ * misses and old entries can be deleted at any time.
+ *
+ * The tables are written in their iteration order and read back into
+ * plain HashMaps of the same size, which keeps that order, so the
+ * training data written from cached tables is the same file as
+ * after scoring.
+ *
+ */
+public class OutputCache {
+
+	static final int MAGIC = 0x4f434143; // "OCAC"
+	static final int VERSION = 1;
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/*
+	 * Outputs class:
+	 *
+	 * the tables of one scored responses file
+	 */
+	public static class Outputs {
+		public final Map<String,Double> mpConfidence;
+		public final Map<String,Integer> mpTarget;
+		public final Map<String,String> mpOutput;
+
+		public Outputs(Map<String,Double> mpConfidence, Map<String,Integer> mpTarget, Map<String,String> mpOutput){
+			this.mpConfidence = mpConfidence;
+			this.mpTarget = mpTarget;
+			this.mpOutput = mpOutput;
+		}
+	}
+
+	/*
+	 * Tables interface:
+	 *
+	 * a scorer whose mpConfidence, mpTarget and mpOutput can be taken
+	 * from the cache instead of scoring, and stored in it after
+	 */
+	public interface Tables {
+		Outputs outputs();
+		void setOutputs(Outputs outputs);
+	}
+
+	final File dir;
+	final String keyHash;
+	final String flags;
+
+	// responses file --> its hash, so a miss followed by put() reads the file once
+	private final Map<String,String> responseHashes = new HashMap<String,String>();
+
+	/*
+	 * cache in dir for responses scored against keyFile by the scorer
+	 * described by flags
+	 */
+	public OutputCache(String dir, String keyFile, String flags) throws IOException{
+		this.dir = new File(dir);
+		this.keyHash = KeyIndex.hash(keyFile);
+		this.flags = flags;
+	}
+
+	File entryFile(String responseFile) throws IOException{
+		String responseHash = responseHashes.get(responseFile);
+		if(responseHash == null){
+			responseHash = KeyIndex.hash(responseFile);
+			responseHashes.put(responseFile, responseHash);
+		}
+		MessageDigest md5 = IncrementalScorer.md5();
+		md5.update((responseHash + "\t" + keyHash + "\t" + flags).getBytes(UTF8));
+		StringBuilder sb = new StringBuilder();
+		for(byte b : md5.digest()){
+			sb.append(String.format("%02x", b & 0xff));
+		}
+		return new File(dir, sb + ".out");
+	}
+
+	/*
+	 * the cached tables of responseFile, or null if there are none
+	 */
+	public Outputs get(String responseFile) throws IOException{
+		File entry = entryFile(responseFile);
+		if(!entry.isFile())
+			return null;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(entry), 1 << 16));
+		try {
+			if(in.readInt() != MAGIC || in.readInt() != VERSION){
+				System.out.println("Warning: ignoring unreadable scorer outputs " + entry);
+				return null;
+			}
+			int n = in.readInt();
+			Map<String,Double> mpConfidence = new HashMap<String,Double>();
+			for(int i = 0; i < n; i++)
+				mpConfidence.put(readString(in), in.readDouble());
+			n = in.readInt();
+			Map<String,Integer> mpTarget = new HashMap<String,Integer>();
+			for(int i = 0; i < n; i++)
+				mpTarget.put(readString(in), in.readInt());
+			n = in.readInt();
+			Map<String,String> mpOutput = new HashMap<String,String>();
+			for(int i = 0; i < n; i++)
+				mpOutput.put(readString(in), readString(in));
+			System.out.println("Took scorer outputs for " + responseFile + " from " + entry);
+			return new Outputs(mpConfidence, mpTarget, mpOutput);
+		} finally {
+			in.close();
+		}
+	}
+
+	/*
+	 * stores the tables of responseFile
+	 */
+	public void put(String responseFile, Outputs outputs) throws IOException{
+		File entry = entryFile(responseFile);
+		if(!dir.exists())
+			dir.mkdirs();
+		//write to a temporary file first so a concurrent reader never sees a partial entry
+		File tmp = new File(entry.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(outputs.mpConfidence.size());
+			for(Map.Entry<String,Double> e : outputs.mpConfidence.entrySet()){
+				writeString(out, e.getKey());
+				out.writeDouble(e.getValue());
+			}
+			out.writeInt(outputs.mpTarget.size());
+			for(Map.Entry<String,Integer> e : outputs.mpTarget.entrySet()){
+				writeString(out, e.getKey());
+				out.writeInt(e.getValue());
+			}
+			out.writeInt(outputs.mpOutput.size());
+			for(Map.Entry<String,String> e : outputs.mpOutput.entrySet()){
+				writeString(out, e.getKey());
+				writeString(out, e.getValue());
+			}
+		} finally {
+			out.close();
+		}
+		if(entry.exists())
+			entry.delete();
+		if(!tmp.renameTo(entry))
+			throw new IOException("Unable to write scorer outputs " + entry);
+	}
+
+	/*
+	 * fills in the tables of scorer from cache (may be null); false if
+	 * there is no cache or responseFile is not in it
+	 */
+	public static boolean load(OutputCache cache, String responseFile, Tables scorer) throws IOException{
+		Outputs outputs = cache != null ? cache.get(responseFile) : null;
+		if(outputs == null)
+			return false;
+		scorer.setOutputs(outputs);
+		return true;
+	}
+
+	/*
+	 * stores the tables of scorer for responseFile, unless cache is null
+	 */
+	public static void store(OutputCache cache, String responseFile, Tables scorer) throws IOException{
+		if(cache != null)
+			cache.put(responseFile, scorer.outputs());
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException{
+		byte[] bytes = s.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException{
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+}
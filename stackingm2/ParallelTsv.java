@@ -0,0 +1,135 @@
+package stackingm2;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+ * ParallelTsv class:
+ *
+ * Parses a large tab separated file on several threads. The file is
+ * cut into chunks at line starts (see TsvReader.chunks), every chunk
+ * is parsed line by line into records by its own worker, and the
+ * parsed chunks are handed back on the calling thread in file order.
+ * A caller that applies the records of each chunk in that order gets
+ * exactly what a single pass over the file would give, even if
+ * applying a record depends on the ones before it; only the parsing
+ * of a line must depend on nothing but the line itself.
+ *
+ * Files too small for two chunks of MIN_CHUNK bytes, or read with
+ * one thread, are parsed on the calling thread.
+ *
+ */
+public final class ParallelTsv {
+
+	// a chunk is at least this many bytes
+	static final long MIN_CHUNK = 1 << 22;
+
+	// default number of threads parsing a file
+	public static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+	/*
+	 * LineParser interface:
+	 *
+	 * parses the current line of a reader; called from many threads
+	 * at once, so it must not change any shared state
+	 */
+	public interface LineParser<T> {
+		/*
+		 * returns the record of the current line of reader, or null for a
+		 * line that adds nothing; warnings about the line go to warnings
+		 */
+		T parse(TsvReader reader, List<String> warnings);
+	}
+
+	/*
+	 * ChunkHandler interface:
+	 *
+	 * receives the parsed chunks, one at a time and in file order
+	 */
+	public interface ChunkHandler<T> {
+		void handle(List<T> records, List<String> warnings);
+	}
+
+	private ParallelTsv(){
+	}
+
+	/*
+	 * parses fileName with parser on up to threads threads, passing
+	 * the chunks to handler in file order
+	 */
+	public static <T> void parse(final String fileName, final LineParser<T> parser, ChunkHandler<T> handler, int threads) throws IOException{
+		if(threads <= 1 || new File(fileName).length() < 2 * MIN_CHUNK){
+			List<String> warnings = new ArrayList<String>();
+			handler.handle(parseChunk(fileName, 0, -1, parser, warnings), warnings);
+			return;
+		}
+		long[] offsets = TsvReader.chunks(fileName, threads * 4);
+		// merge neighbouring chunks smaller than MIN_CHUNK
+		List<long[]> chunks = new ArrayList<long[]>();
+		long start = 0;
+		for(int i = 1; i < offsets.length; i++){
+			if(offsets[i] - start >= MIN_CHUNK || i == offsets.length - 1){
+				chunks.add(new long[]{start, offsets[i]});
+				start = offsets[i];
+			}
+		}
+
+		List<RecursiveTask<Chunk<T>>> tasks = new ArrayList<RecursiveTask<Chunk<T>>>();
+		for(final long[] chunk : chunks){
+			tasks.add(new RecursiveTask<Chunk<T>>() {
+				protected Chunk<T> compute() {
+					Chunk<T> c = new Chunk<T>();
+					try {
+						c.records = parseChunk(fileName, chunk[0], chunk[1], parser, c.warnings);
+					} catch (IOException e) {
+						throw new RuntimeException("Unable to read " + fileName, e);
+					}
+					return c;
+				}
+			});
+		}
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			for(RecursiveTask<Chunk<T>> task : tasks){
+				pool.execute(task);
+			}
+			for(int i = 0; i < tasks.size(); i++){
+				Chunk<T> c = tasks.get(i).join();
+				// let go of the chunk once it is handled
+				tasks.set(i, null);
+				handler.handle(c.records, c.warnings);
+			}
+		} catch (RuntimeException e) {
+			if(e.getCause() instanceof IOException){
+				throw (IOException) e.getCause();
+			}
+			throw e;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private static <T> List<T> parseChunk(String fileName, long start, long end, LineParser<T> parser, List<String> warnings) throws IOException{
+		List<T> records = new ArrayList<T>();
+		TsvReader reader = new TsvReader(fileName, start, end, TsvReader.WINDOW);
+		try {
+			while(reader.next()){
+				T record = parser.parse(reader, warnings);
+				if(record != null)
+					records.add(record);
+			}
+		} finally {
+			reader.close();
+		}
+		return records;
+	}
+
+	private static class Chunk<T> {
+		List<T> records;
+		List<String> warnings = new ArrayList<String>();
+	}
+}
@@ -0,0 +1,192 @@
+package stackingm2;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * Pipeline class:
+ *
+ * The flow of the README (DataExtractor -> WEKA -> postProcessor) in
+ * one process, without files in between. DataExtractor keeps the rows
+ * of each of its output files in memory (see FeatureSink.Memory); a
+ * StackedClassifier is trained on every file of the training year and
+ * predicts the file of the same name of the test year, one per slot
+ * and per common/unique group; the predictions go straight to
+ * postProcessor, or to RuleEnsembler when extractor stats are given,
+ * which writes the KBP output file.
+ *
+ * The feature files and the predictions are written only if asked
+ * for (dump= and predictions= flags), in the formats the file based
+ * flow uses.
+ *
+ */
+public class Pipeline {
+
+	String trainYear = "2013";
+	String testYear = "2014";
+
+	// directory of compiled key indexes (see KeyIndex), null for none
+	String keyIndexDir = null;
+	// format of the feature files to write as well (see FeatureSink), null for none
+	String dumpFormat = null;
+	// file to write the predictions to as well, null for none
+	String predictionsFile = null;
+	// extractor stats for RuleEnsembler, null to use postProcessor
+	String statsFile = null;
+
+	/*
+	 * scores both outputs of a year and keeps its rows in memory, by
+	 * output file
+	 */
+	DataExtractor extract(String run1, String run2, String keyFile, String year) throws IOException{
+		DataExtractor de = new DataExtractor();
+		de.format = dumpFormat;
+		de.memorySinks = new TreeMap<String,FeatureSink.Memory>();
+		de.scoreRuns(run1, run2, keyFile, year, keyIndexDir, null);
+		de.writeSlotsSeperate(year, keyFile, "cusep");
+		return de;
+	}
+
+	/*
+	 * trains a classifier on each output file of train and returns its
+	 * predictions on the file of the same name of test, as rows of the
+	 * predictions file
+	 */
+	List<String[]> classify(DataExtractor train, DataExtractor test) throws Exception{
+		List<String[]> predictions = new ArrayList<String[]>();
+		int num_succ = 0;
+		for(Map.Entry<String,FeatureSink.Memory> e : test.memorySinks.entrySet()){
+			FeatureSink.Memory trainRows = train.memorySinks.get(e.getKey());
+			FeatureSink.Memory testRows = e.getValue();
+			StackedClassifier sc = new StackedClassifier(null, null, null, null, null);
+			sc.preprocessData(trainRows, testRows);
+			if(sc.isTrainingDataEmpty || sc.isTestingDataEmpty || sc.isTrainingTargetSingleClass){
+				System.out.println("No data or same target for " + e.getKey());
+				continue;
+			}
+			sc.buildClassifier();
+			num_succ++;
+			for(int i = 0; i < testRows.size(); i++)
+				predictions.add(predictionRow(testRows.outputs.get(i), testRows.matrix.rows.get(i), sc.predictedTarget(i)));
+		}
+		System.out.println("Number of models built : " + num_succ);
+		return predictions;
+	}
+
+	/*
+	 * a row as StackedClassifier.savePredictions writes it: the output
+	 * columns, the confidences, the predicted target and the target
+	 */
+	static String[] predictionRow(String output, double[] row, String predicted){
+		String[] columns = output.split("\t", -1);
+		int k = columns.length;
+		String[] data = Arrays.copyOf(columns, k + DataExtractor.META_FEATURES.length + 2);
+		for(int f : DataExtractor.META_FEATURES)
+			data[k++] = Double.toString(row[f]);
+		data[k++] = predicted;
+		double target = row[row.length - 1];
+		data[k] = Double.isNaN(target) ? "?" : Integer.toString((int) target);
+		return data;
+	}
+
+	void writePredictions(List<String[]> predictions) throws IOException{
+		String delimiter = "\t";
+		String[] outputColumns = testYear.equals("2013") ? DataExtractor.OUTPUT_COLUMNS_2013 : DataExtractor.OUTPUT_COLUMNS_2014;
+		BufferedWriter bw = new BufferedWriter(new FileWriter(predictionsFile));
+		try {
+			StringBuilder sb = new StringBuilder(FeatureSink.join(outputColumns));
+			for(int f : DataExtractor.META_FEATURES)
+				sb.append(delimiter).append(FeatureExtractor.FEATURES[f]);
+			bw.write(sb + delimiter + "PredictedTarget" + delimiter + "target" + "\n");
+			for(String[] data : predictions){
+				sb.setLength(0);
+				for(String field : data){
+					if(sb.length() > 0)
+						sb.append(delimiter);
+					sb.append(field);
+				}
+				bw.write(sb.append('\n').toString());
+			}
+		} finally {
+			bw.close();
+		}
+	}
+
+	/*
+	 * runs the whole flow and writes the KBP output file
+	 */
+	public void run(String trainRun1, String trainRun2, String trainKey, String testRun1, String testRun2,
+			String testKey, String outFile) throws Exception{
+		DataExtractor train = extract(trainRun1, trainRun2, trainKey, trainYear);
+		DataExtractor test = extract(testRun1, testRun2, testKey, testYear);
+		List<String[]> predictions = classify(train, test);
+		if(predictionsFile != null)
+			writePredictions(predictions);
+		if(statsFile != null){
+			RuleEnsembler re = new RuleEnsembler();
+			re.loadExtStats(statsFile);
+			re.populateSlotFills();
+			re.processClassifierOutput(predictions);
+			re.writeOutputFile(outFile);
+		}
+		else{
+			postProcessor pp = new postProcessor();
+			pp.populateSlotFills();
+			pp.processClassifierOutput(predictions, testYear);
+			pp.writeOutputFile(outFile);
+		}
+	}
+
+	/*
+	 * Command line args
+	 *
+	 * @args[0] Relation extractor output 1 of the training year (2013)
+	 * @args[1] Relation extractor output 2 of the training year
+	 * @args[2] key file of the training year
+	 * @args[3] Relation extractor output 1 of the test year (2014)
+	 * @args[4] Relation extractor output 2 of the test year
+	 * @args[5] key file of the test year
+	 * @args[6] output file to write slot fills in KBP format
+	 * @args[7..] flags : stats=<file> (combine with RuleEnsembler), keyindex=<dir>,
+	 *            dump=<format> (also write the feature files under run_out/), predictions=<file>
+	 */
+	public static void main(String[] args) throws Exception {
+		if(args.length < 7){
+			System.out.println("Pipeline must be invoked with: <train run1> <train run2> <train key> <test run1> <test run2> <test key> <output file> [flag ...]");
+			System.exit(1);
+		}
+		Pipeline p = new Pipeline();
+		for(int i = 7; i < args.length; i++){
+			String flag = args[i];
+			if(flag.startsWith("stats=")){
+				p.statsFile = flag.substring(6);
+			}
+			else if(flag.startsWith("keyindex=")){
+				p.keyIndexDir = flag.substring(9);
+			}
+			else if(flag.startsWith("dump=")){
+				p.dumpFormat = flag.substring(5);
+				if(!FeatureSink.FORMATS.contains(p.dumpFormat)){
+					System.out.println("Unknown feature format " + p.dumpFormat + ", expected one of " + FeatureSink.FORMATS);
+					System.exit(1);
+				}
+			}
+			else if(flag.startsWith("predictions=")){
+				p.predictionsFile = flag.substring(12);
+			}
+			else{
+				System.out.println("Unknown flag: " + flag);
+				System.exit(1);
+			}
+		}
+		long start = System.currentTimeMillis();
+		p.run(args[0], args[1], args[2], args[3], args[4], args[5], args[6]);
+		System.out.println("Pipeline took " + (System.currentTimeMillis() - start) + " ms");
+	}
+}
@@ -0,0 +1,370 @@
+package stackingm2;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/*
+ * PolyFeatures class:
+ *
+ * Polynomial features over the confidences x1..xN of N extractors,
+ * given by a spec instead of written out by hand as FeatureExtractor
+ * does for two. A spec is a list of terms separated by white space
+ * (# starts a comment). A term is a product of factors, a factor an
+ * atom with an optional power:
+ *
+ *   xK       confidence of extractor K (1..N)
+ *   s        sum of all confidences
+ *   d(J,K)   xJ - xK
+ *
+ * e.g. x1^2*x2, s^3*x2 or d(1,2)^2*s. An index may be i or j
+ * instead of a number: a term with i stands for one term for every
+ * extractor i, a term with i and j for one term for every pair i < j
+ * (xi^2, xi*xj, d(i,j)^3*s). poly(n) stands for all monomials of
+ * degree 2 to n in x1..xN.
+ *
+ * The spec is compiled into a flat plan of register operations: the
+ * confidences are the first N registers and every sum, difference,
+ * power and partial product is computed once, into its own register,
+ * however many terms use it (x1^3 reuses x1^2, x1^2*x2*x3 reuses
+ * x1^2*x2). Evaluating a row of features is one pass over the plan.
+ *
+ */
+public class PolyFeatures {
+
+	// operations of the plan
+	static final int SUM = 0;  // sum of all inputs
+	static final int SUB = 1;  // a - b
+	static final int MUL = 2;  // a * b
+
+	final int numInputs;
+
+	// the plan: operation i writes register numInputs + i
+	private int[] ops = new int[16];
+	private int[] as = new int[16];
+	private int[] bs = new int[16];
+	private int numOps = 0;
+
+	// register name --> register
+	private final Map<String,Integer> registerOf = new HashMap<String,Integer>();
+
+	// feature names and the register holding each feature
+	final List<String> names = new ArrayList<String>();
+	private int[] columns = new int[16];
+
+	private double[] registers;
+	private double[] row;
+
+	PolyFeatures(int numInputs){
+		this.numInputs = numInputs;
+		for(int k = 0; k < numInputs; k++)
+			registerOf.put("x" + (k + 1), k);
+	}
+
+	/*
+	 * compiles spec for n confidences
+	 */
+	public static PolyFeatures parse(String spec, int n){
+		PolyFeatures pf = new PolyFeatures(n);
+		Set<String> seen = new HashSet<String>();
+		for(String line : spec.split("\n")){
+			int hash = line.indexOf('#');
+			if(hash >= 0)
+				line = line.substring(0, hash);
+			for(String term : line.trim().split("\\s+")){
+				if(term.length() == 0)
+					continue;
+				for(TreeMap<Integer,Factor> factors : pf.expand(term)){
+					String name = name(factors);
+					if(seen.add(name))
+						pf.addFeature(name, factors);
+				}
+			}
+		}
+		pf.registers = new double[n + pf.numOps];
+		pf.row = new double[pf.names.size()];
+		return pf;
+	}
+
+	/*
+	 * compiles the spec in specFile for n confidences
+	 */
+	public static PolyFeatures load(String specFile, int n) throws IOException{
+		StringBuilder spec = new StringBuilder();
+		BufferedReader reader = new BufferedReader(new FileReader(specFile));
+		try {
+			String line;
+			while((line = reader.readLine()) != null)
+				spec.append(line).append('\n');
+		} finally {
+			reader.close();
+		}
+		return parse(spec.toString(), n);
+	}
+
+	public int size(){
+		return names.size();
+	}
+
+	public String name(int i){
+		return names.get(i);
+	}
+
+	/*
+	 * the features of confidences x; returns the row, which the next
+	 * call overwrites
+	 */
+	public double[] evaluate(double[] x){
+		double[] r = registers;
+		System.arraycopy(x, 0, r, 0, numInputs);
+		for(int i = 0, dst = numInputs; i < numOps; i++, dst++){
+			switch(ops[i]){
+			case SUM:
+				double sum = 0;
+				for(int k = 0; k < numInputs; k++)
+					sum += r[k];
+				r[dst] = sum;
+				break;
+			case SUB:
+				r[dst] = r[as[i]] - r[bs[i]];
+				break;
+			default:
+				r[dst] = r[as[i]] * r[bs[i]];
+			}
+		}
+		for(int c = 0; c < row.length; c++)
+			row[c] = r[columns[c]];
+		return row;
+	}
+
+	/*
+	 * Factor class:
+	 *
+	 * an atom of a term and its power
+	 */
+	static class Factor {
+		final String atom;
+		int power;
+
+		Factor(String atom, int power){
+			this.atom = atom;
+			this.power = power;
+		}
+	}
+
+	/*
+	 * the terms term stands for, each as its factors in canonical order
+	 */
+	List<TreeMap<Integer,Factor>> expand(String term){
+		List<TreeMap<Integer,Factor>> terms = new ArrayList<TreeMap<Integer,Factor>>();
+		if(term.startsWith("poly(") && term.endsWith(")")){
+			int degree = parseInt(term, term.substring(5, term.length() - 1));
+			for(int d = 2; d <= degree; d++)
+				monomials(new int[d], 0, 0, terms);
+			return terms;
+		}
+		boolean hasI = term.indexOf('i') >= 0;
+		boolean hasJ = term.indexOf('j') >= 0;
+		if(hasJ && !hasI)
+			throw new IllegalArgumentException("Invalid feature term " + term + ": j without i");
+		if(!hasI){
+			terms.add(parseTerm(term, 0, 0));
+			return terms;
+		}
+		for(int i = 1; i <= numInputs; i++){
+			if(!hasJ){
+				terms.add(parseTerm(term, i, 0));
+				continue;
+			}
+			for(int j = i + 1; j <= numInputs; j++)
+				terms.add(parseTerm(term, i, j));
+		}
+		return terms;
+	}
+
+	/*
+	 * monomials of degree k.length in x1..xN, with indexes from first on
+	 */
+	private void monomials(int[] k, int pos, int first, List<TreeMap<Integer,Factor>> terms){
+		if(pos == k.length){
+			TreeMap<Integer,Factor> factors = new TreeMap<Integer,Factor>();
+			for(int index : k)
+				multiply(factors, index, "x" + (index + 1), 1);
+			terms.add(factors);
+			return;
+		}
+		for(int index = first; index < numInputs; index++){
+			k[pos] = index;
+			monomials(k, pos + 1, index, terms);
+		}
+	}
+
+	/*
+	 * parses a term, with i and j standing for the given indexes
+	 */
+	private TreeMap<Integer,Factor> parseTerm(String term, int i, int j){
+		TreeMap<Integer,Factor> factors = new TreeMap<Integer,Factor>();
+		for(String factor : term.split("\\*")){
+			int power = 1;
+			int caret = factor.indexOf('^');
+			String atom = factor;
+			if(caret >= 0){
+				atom = factor.substring(0, caret);
+				power = parseInt(term, factor.substring(caret + 1));
+				if(power < 1)
+					throw new IllegalArgumentException("Invalid feature term " + term + ": power " + power);
+			}
+			if(atom.equals("s")){
+				multiply(factors, numInputs, "s", power);
+			}
+			else if(atom.startsWith("x")){
+				int k = index(term, atom.substring(1), i, j);
+				multiply(factors, k - 1, "x" + k, power);
+			}
+			else if(atom.startsWith("d(") && atom.endsWith(")") && atom.indexOf(',') > 0){
+				int comma = atom.indexOf(',');
+				int k1 = index(term, atom.substring(2, comma), i, j);
+				int k2 = index(term, atom.substring(comma + 1, atom.length() - 1), i, j);
+				if(k1 == k2)
+					throw new IllegalArgumentException("Invalid feature term " + term + ": d of one confidence");
+				multiply(factors, numInputs + k1 * (numInputs + 1) + k2, "d(" + k1 + "," + k2 + ")", power);
+			}
+			else
+				throw new IllegalArgumentException("Invalid feature term " + term + ": unknown factor " + factor);
+		}
+		return factors;
+	}
+
+	private static void multiply(TreeMap<Integer,Factor> factors, int order, String atom, int power){
+		Factor f = factors.get(order);
+		if(f == null)
+			factors.put(order, new Factor(atom, power));
+		else
+			f.power += power;
+	}
+
+	private int index(String term, String s, int i, int j){
+		int k;
+		if(s.equals("i"))
+			k = i;
+		else if(s.equals("j"))
+			k = j;
+		else
+			k = parseInt(term, s);
+		if(k < 1 || k > numInputs)
+			throw new IllegalArgumentException("Invalid feature term " + term + ": no confidence " + s + " of " + numInputs);
+		return k;
+	}
+
+	private static int parseInt(String term, String s){
+		try {
+			return Integer.parseInt(s);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid feature term " + term + ": " + s + " is not a number");
+		}
+	}
+
+	private static String name(TreeMap<Integer,Factor> factors){
+		StringBuilder sb = new StringBuilder();
+		for(Factor f : factors.values()){
+			if(sb.length() > 0)
+				sb.append('*');
+			sb.append(f.atom);
+			if(f.power > 1)
+				sb.append('^').append(f.power);
+		}
+		return sb.toString();
+	}
+
+	private void addFeature(String name, TreeMap<Integer,Factor> factors){
+		int reg = -1;
+		String prefix = null;
+		for(Factor f : factors.values()){
+			int p = power(f.atom, f.power);
+			String fname = f.power > 1 ? f.atom + "^" + f.power : f.atom;
+			if(reg < 0){
+				reg = p;
+				prefix = fname;
+			}
+			else{
+				prefix = prefix + "*" + fname;
+				reg = register(prefix, MUL, reg, p);
+			}
+		}
+		if(names.size() == columns.length)
+			columns = Arrays.copyOf(columns, 2 * columns.length);
+		columns[names.size()] = reg;
+		names.add(name);
+	}
+
+	/*
+	 * register of atom^power, planning it (and the lower powers) if needed
+	 */
+	private int power(String atom, int power){
+		if(power == 1)
+			return atom(atom);
+		String name = atom + "^" + power;
+		Integer reg = registerOf.get(name);
+		if(reg != null)
+			return reg;
+		int lower = power(atom, power - 1);
+		return register(name, MUL, lower, atom(atom));
+	}
+
+	private int atom(String atom){
+		Integer reg = registerOf.get(atom);
+		if(reg != null)
+			return reg;
+		if(atom.equals("s"))
+			return register(atom, SUM, 0, 0);
+		// d(k1,k2)
+		int comma = atom.indexOf(',');
+		int k1 = Integer.parseInt(atom.substring(2, comma));
+		int k2 = Integer.parseInt(atom.substring(comma + 1, atom.length() - 1));
+		return register(atom, SUB, k1 - 1, k2 - 1);
+	}
+
+	private int register(String name, int op, int a, int b){
+		Integer reg = registerOf.get(name);
+		if(reg != null)
+			return reg;
+		if(numOps == ops.length){
+			ops = Arrays.copyOf(ops, 2 * numOps);
+			as = Arrays.copyOf(as, 2 * numOps);
+			bs = Arrays.copyOf(bs, 2 * numOps);
+		}
+		ops[numOps] = op;
+		as[numOps] = a;
+		bs[numOps] = b;
+		int r = numInputs + numOps++;
+		registerOf.put(name, r);
+		return r;
+	}
+
+	/*
+	 * Command line args
+	 *
+	 * @args[0] spec file
+	 * @args[1] number of confidences
+	 *
+	 * prints the features the spec compiles to and the size of the plan
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 2){
+			System.out.println("PolyFeatures must be invoked with: <spec file> <number of confidences>");
+			System.exit(1);
+		}
+		PolyFeatures pf = load(args[0], Integer.parseInt(args[1]));
+		for(String name : pf.names)
+			System.out.println(name);
+		System.out.println(pf.size() + " features, " + pf.numOps + " operations");
+	}
+}
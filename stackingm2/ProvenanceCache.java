@@ -0,0 +1,54 @@
+package stackingm2;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * ProvenanceCache class:
+ *
+ * Canonical provenance strings keyed by the raw provenance they
+ * were made from. The same spans recur across key lines and across
+ * the response files of different systems, so a repeat skips
+ * SpanCanonicalizer and returns the instance already made. The
+ * caches are static, hence shared by every scorer (and thread) in
+ * the JVM. A cache stops admitting new strings once it holds
+ * CAPACITY of them; strings not admitted are still canonicalized,
+ * just not remembered.
+ *
+ */
+final class ProvenanceCache {
+
+	static final int CAPACITY = 1 << 18;
+
+	// raw spans --> sortSpans() and removeOffsets() of them
+	private static final ProvenanceCache SORTED = new ProvenanceCache(false);
+	private static final ProvenanceCache DOCIDS = new ProvenanceCache(true);
+
+	private final ConcurrentHashMap<String,String> canonical = new ConcurrentHashMap<String,String>();
+	private final boolean docidsOnly;
+
+	private ProvenanceCache(boolean docidsOnly){
+		this.docidsOnly = docidsOnly;
+	}
+
+	static String sortSpans(String spans){
+		return SORTED.get(spans);
+	}
+
+	static String removeOffsets(String spans){
+		return DOCIDS.get(spans);
+	}
+
+	private String get(String spans){
+		String c = canonical.get(spans);
+		if(c != null)
+			return c;
+		SpanCanonicalizer sc = SpanCanonicalizer.get();
+		c = docidsOnly ? sc.removeOffsets(spans) : sc.sortSpans(spans);
+		if(canonical.size() < CAPACITY){
+			String previous = canonical.putIfAbsent(spans, c);
+			if(previous != null)
+				return previous;
+		}
+		return c;
+	}
+}
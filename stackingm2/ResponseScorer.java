@@ -0,0 +1,592 @@
+package stackingm2;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/*
+ * ResponseScorer class:
+ *
+ * Scores one response file against a shared, read-only KeyModel
+ * and keeps track of the judgement of each slot fill (mpTarget)
+ * together with its confidence (mpConfidence) and KBP output line
+ * (mpOutput) for DataExtractor. Holds only per-run state, so many
+ * of them can reference the same KeyModel.
+ *
+ */
+public class ResponseScorer implements OutputCache.Tables {
+
+	final KeyModel key;
+
+	// run id written into mpOutput lines
+	public String runid;
+
+	// true to print out judgement for each line of response
+	public boolean trace = false;
+
+	// take list of entityId:slot pairs from this file instead of the responses
+	public String slotFile = null;
+
+	// entityId:slot pairs of slotFile, once read; scorers of the same slot file may share them
+	Set<String> slotFileSlots = null;
+
+	// target recorded for a Correct response that is the first of its equivalence class
+	public int correctTarget = 2;
+
+	// target recorded for Redundant responses (with reference KB or with another response)
+	public int redundantTarget = 2;
+
+	// false to score without filling in mpOutput, mpConfidence and mpTarget
+	public boolean keepOutputs = true;
+
+	// if not null, the judgement of every response is also written here
+	public JudgmentLog judgmentLog = null;
+
+	// threads parsing the responses file in readResponses()
+	public int readThreads = ParallelTsv.THREADS;
+
+	// mapping from entity_id:slot_name --> list[provenance\tresponse_string]
+	Map<String,List<String>> response = new HashMap<String,List<String>>();
+
+	// parallel to response: confidence of each response, in the same order
+	Map<String,List<Double>> responseConfidence = new HashMap<String,List<Double>>();
+
+	//book keep confidence values for each query,slot
+	public Map<String,String> mpOutput = new HashMap<String,String>();
+	public Map<String,Double> mpConfidence = new HashMap<String,Double>();
+	public Map<String,Integer> mpTarget = new HashMap<String,Integer>();
+
+	Set<String> slots = new TreeSet<String>();
+
+	// warnings about invalid lines met by readResponses()
+	public List<String> readWarnings = new ArrayList<String>();
+
+	// number of entityId:slot pairs with responses seen by scoreGrouped()
+	public int queriesRead = 0;
+
+	public ResponseScorer(KeyModel key, String runid){
+		this.key = key;
+		this.runid = runid;
+	}
+
+	public OutputCache.Outputs outputs(){
+		return new OutputCache.Outputs(mpConfidence, mpTarget, mpOutput);
+	}
+
+	public void setOutputs(OutputCache.Outputs outputs){
+		mpConfidence = outputs.mpConfidence;
+		mpTarget = outputs.mpTarget;
+		mpOutput = outputs.mpOutput;
+	}
+
+	/*
+	 * ResponseLine class:
+	 *
+	 * one line of the responses file, normalized for the lenient
+	 * mode of the key
+	 */
+	static class ResponseLine {
+		String query_id;
+		String tkey;
+		String output_string;
+		String response;
+		Double confidence;
+	}
+
+	/*
+	 * reads the responses file, normalizing each response for the
+	 * lenient mode of the key
+	 *
+	 * lines are parsed on readThreads threads (see ParallelTsv) and
+	 * added in file order
+	 */
+	public void readResponses(String responseFile) throws IOException{
+		try {
+			ParallelTsv.parse(responseFile, new ParallelTsv.LineParser<ResponseLine>() {
+				public ResponseLine parse(TsvReader reader, List<String> warnings) {
+					return parseResponse(reader, warnings);
+				}
+			}, new ParallelTsv.ChunkHandler<ResponseLine>() {
+				public void handle(List<ResponseLine> lines, List<String> warnings) {
+					readWarnings.addAll(warnings);
+					for(ResponseLine line : lines){
+						addResponse(line);
+					}
+				}
+			}, readThreads);
+		} catch (FileNotFoundException e) {
+			System.out.println("Unable to open responses file " + responseFile);
+			System.exit(1);
+		}
+	}
+
+	/*
+	 * entityId:slot pairs of the valid lines of a responses file, to
+	 * load the key for (see KeyModel.load)
+	 */
+	public static Set<String> readQueries(String responseFile) throws IOException{
+		Set<String> queries = new HashSet<String>();
+		TsvReader responseReader = null;
+		try {
+			responseReader = new TsvReader(responseFile);
+		} catch (FileNotFoundException e) {
+			System.out.println("Unable to open responses file " + responseFile);
+			System.exit(1);
+		}
+		try {
+			while(responseReader.next()){
+				int numFields = responseReader.splitTrimmed(7);
+				if(numFields >= 4 && numFields <= 7)
+					queries.add(responseReader.field(0) + ":" + responseReader.field(1));
+			}
+		} finally {
+			responseReader.close();
+		}
+		return queries;
+	}
+
+	/*
+	 * adds the current line of a responses file; returns its
+	 * entityId:slot, or null if the line is invalid
+	 */
+	String addResponse(TsvReader reader){
+		ResponseLine line = parseResponse(reader, readWarnings);
+		if(line == null)
+			return null;
+		addResponse(line);
+		return line.query_id;
+	}
+
+	/*
+	 * parses the current line of a responses file; returns null for an
+	 * invalid line, adding a warning. Changes no state of the scorer.
+	 */
+	ResponseLine parseResponse(TsvReader reader, List<String> warnings){
+		RawResponse raw = RawResponse.parse(reader, warnings);
+		if(raw == null)
+			return null;
+		return normalize(raw);
+	}
+
+	/*
+	 * RawResponse class:
+	 *
+	 * one line of the responses file with the relation spans sorted,
+	 * before any normalization for a lenient mode, so that a line can
+	 * be parsed once for several modes (see MultiModeScorer)
+	 */
+	static class RawResponse {
+		String entity;
+		String slot;
+		String query_id;
+		String relationProv;
+		String answerString;
+		String fillerProv;
+		double confidence = 1.0;
+
+		// fillerProv with the spans sorted, once a mode has asked for it
+		private String sortedFillerProv = null;
+
+		/*
+		 * parses the current line of reader; returns null for an
+		 * invalid line, adding a warning
+		 */
+		static RawResponse parse(TsvReader reader, List<String> warnings){
+			int numFields = reader.splitTrimmed(7);
+			if(numFields < 4 | numFields > 7){
+				warnings.add("Warning: Invalid line in responses file:  " + numFields + " fields");
+				warnings.add(reader.line());
+				return null;
+			}
+			RawResponse raw = new RawResponse();
+			raw.entity = reader.field(0);
+			raw.slot = reader.field(1);
+			raw.query_id = raw.entity + ":" + raw.slot;
+			raw.relationProv = scorer2014.sortSpans(reader.field(3));
+			if(!raw.isNil()){
+				raw.answerString = reader.field(4).trim();
+				raw.fillerProv = reader.field(5).trim();
+				raw.confidence = Double.parseDouble(reader.field(6).trim());
+			}
+			return raw;
+		}
+
+		boolean isNil(){
+			return relationProv.equals("NIL");
+		}
+
+		String sortedFillerProv(){
+			if(sortedFillerProv == null)
+				sortedFillerProv = scorer2014.sortSpans(fillerProv);
+			return sortedFillerProv;
+		}
+	}
+
+	/*
+	 * normalizes a parsed response for the lenient mode of the key.
+	 * Changes no state of the scorer.
+	 */
+	ResponseLine normalize(RawResponse raw){
+		String entity = raw.entity;
+		String slot = raw.slot;
+		ResponseLine line = new ResponseLine();
+		line.query_id = raw.query_id;
+		line.confidence = raw.confidence;
+		if(raw.isNil()){
+			line.tkey = entity + "~" + slot + "~" + "NIL";
+			line.output_string = entity + "\t" + slot + "\t" + runid + "\t" + "DUMMY" + "\t" + "NIL" + "\t" + "DUMMY";
+			line.response = raw.relationProv;
+			return line;
+		}
+		String relationProv = key.anydoc ? "*" : raw.relationProv;
+		String fillerProv = "*";
+		if(!key.ignoreoffsets){
+			fillerProv = raw.sortedFillerProv();
+		}
+		else if(!key.anydoc){
+			// remove offsets from spans, keep just the docs, remove duplicate docs
+			fillerProv = scorer2014.removeOffsets(raw.fillerProv);
+			relationProv = scorer2014.removeOffsets(relationProv);
+		}
+		String answer_string = "\t" + raw.answerString;
+		if(key.nocase)
+			answer_string = answer_string.toLowerCase();
+		line.tkey = entity + "~" + slot + "~" + raw.answerString;
+		line.output_string = entity + "\t" + slot + "\t" + runid + "\t" + relationProv + answer_string + "\t" + fillerProv;
+		line.response = relationProv + "\t" + fillerProv + answer_string;
+		return line;
+	}
+
+	void addResponse(ResponseLine line){
+		if(keepOutputs){
+			mpConfidence.put(line.tkey, line.confidence);
+			mpOutput.put(line.tkey, line.output_string);
+		}
+		String query_id = line.query_id;
+		if(response.get(query_id) == null){
+			response.put(query_id, new ArrayList<String>());
+			responseConfidence.put(query_id, new ArrayList<Double>());
+		}
+		response.get(query_id).add(line.response);
+		responseConfidence.get(query_id).add(line.confidence);
+		slots.add(query_id);
+	}
+
+	/*
+	 * scores the responses read so far and records mpTarget;
+	 * prints nothing, warnings and trace lines go to the result.
+	 * Throws an IllegalStateException where the official scorer
+	 * exits (see scoreQuery)
+	 */
+	public ScoreResult score() throws IOException{
+		ScoreResult r = new ScoreResult();
+		r.countsNils = true;
+
+		// -------------- read list of slots ----------
+		//   separate into single and list valued slots
+
+		if(slotFile != null){
+			slots = new TreeSet<String>(slotFileSlots());
+			r.slotFile = slotFile;
+		}
+		for(String slot : slots)
+			countSlot(r, slot);
+
+		// ------------- score responses ------------
+		//          for both single-valued and list-valued slots
+
+		for(String query : slots)
+			scoreQuery(r, query, response.get(query));
+		r.finish();
+		return r;
+	}
+
+	/*
+	 * the entityId:slot pairs listed in slotFile, read on first use
+	 */
+	Set<String> slotFileSlots() throws IOException{
+		if(slotFileSlots == null)
+			slotFileSlots = readSlotFile(slotFile);
+		return slotFileSlots;
+	}
+
+	/*
+	 * the trimmed lines of slotFile, as scorer2014.readLines reads
+	 * them but without printing
+	 */
+	public static Set<String> readSlotFile(String slotFile) throws IOException{
+		Set<String> slots = new TreeSet<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(slotFile));
+		try {
+			String line;
+			while((line = reader.readLine()) != null)
+				slots.add(line.trim());
+		} finally {
+			reader.close();
+		}
+		return slots;
+	}
+
+	/*
+	 * streaming alternative to readResponses() and score(): reads a
+	 * responses file in which all the lines of an entityId:slot pair
+	 * are adjacent, scoring each pair as soon as its last line is read
+	 * and then dropping its responses, so that only one pair is held
+	 * at a time. Warnings and trace lines come in file order rather
+	 * than sorted by pair; the counts are those of score(). Throws a
+	 * RuntimeException on a pair that reappears after other pairs.
+	 */
+	public ScoreResult scoreGrouped(String responseFile) throws IOException{
+		ScoreResult r = new ScoreResult();
+		r.countsNils = true;
+		Set<String> listed = null;
+		if(slotFile != null){
+			listed = slotFileSlots();
+			r.slotFile = slotFile;
+			for(String slot : listed)
+				countSlot(r, slot);
+		}
+		TsvReader responseReader = null;
+		try {
+			responseReader = new TsvReader(responseFile);
+		} catch (FileNotFoundException e) {
+			System.out.println("Unable to open responses file " + responseFile);
+			System.exit(1);
+		}
+		Set<String> done = new HashSet<String>();
+		String current = null;
+		try {
+			while(responseReader.next()){
+				String query = addResponse(responseReader);
+				if(query == null || query.equals(current))
+					continue;
+				if(!done.add(query))
+					throw new RuntimeException("Responses in " + responseFile + " are not grouped by query: " + query + " reappears after " + current);
+				if(current != null)
+					scoreGroup(r, current, listed);
+				current = query;
+			}
+		} finally {
+			responseReader.close();
+		}
+		if(current != null)
+			scoreGroup(r, current, listed);
+		queriesRead = done.size();
+		if(listed != null){
+			for(String query : listed){
+				if(!done.contains(query))
+					scoreQuery(r, query, null);
+			}
+		}
+		r.finish();
+		return r;
+	}
+
+	/*
+	 * scores the complete group of responses to query, unless a slot
+	 * file is used and query is not in it, and forgets them
+	 */
+	private void scoreGroup(ScoreResult r, String query, Set<String> listed){
+		List<String> responseList = response.remove(query);
+		slots.remove(query);
+		if(listed == null){
+			countSlot(r, query);
+			scoreQuery(r, query, responseList);
+		}
+		else if(listed.contains(query))
+			scoreQuery(r, query, responseList);
+		responseConfidence.remove(query);
+	}
+
+	/*
+	 * counts query as a single or list valued slot of the run
+	 */
+	void countSlot(ScoreResult r, String query){
+		SlotSchema slot = slotSchema(query);
+		if(slot == null)
+			r.message("Invalid slot " + query);
+		else if(slot.single)
+			r.num_sv_slots++;
+		else
+			r.num_list_slots++;
+	}
+
+	/*
+	 * the slot of query (entityId:slot), or null if it is invalid
+	 */
+	static SlotSchema slotSchema(String query){
+		int colon = query.indexOf(':');
+		if(colon < 0)
+			return null;
+		return SlotSchema.parse(query, colon + 1, query.length());
+	}
+
+	/*
+	 * scores the responses to one entityId:slot pair (null if there
+	 * are none) into r, recording their targets in mpTarget. Throws
+	 * an IllegalStateException on an invalid judgement and on several
+	 * responses to a single-valued slot, on which the official scorer
+	 * exits
+	 */
+	void scoreQuery(ScoreResult r, String query, List<String> responseList){
+		scoreQuery(r, query, responseList, keepOutputs ? mpTarget : null);
+	}
+
+	/*
+	 * as above, recording the targets in targets instead (or nowhere
+	 * if null)
+	 */
+	void scoreQuery(ScoreResult r, String query, List<String> responseList, Map<String,Integer> targets){
+		String[] qfields = query.split(":");
+		String targetKey = qfields[0] + "~" + qfields[1] + ":" + qfields[2];
+		SlotSchema slot = slotSchema(query);
+		ScoreResult.Counts q = r.query(query);
+		int num_answers_to_query = 0;
+		if(key.eclasses(query) != null){
+			if(slot == null){
+				r.message("Warning: unrecognizable slot type " + query);
+				return;
+			}
+			num_answers_to_query = slot.single ? 1 : key.eclasses(query).size();
+		}
+		q.answers += num_answers_to_query;
+
+		int num_kb_answers_to_query = 0;
+		if(key.kbEclasses(query) != null){
+			if(slot == null){
+				r.message("Warning: unrecognizable slot type " + query);
+				return;
+			}
+			// a single-valued slot shouldn't happen if SF query entities enumerate single-valued slots to ignore because they're already filled in the reference KB
+			num_kb_answers_to_query = slot.single ? 1 : key.kbEclasses(query).size();
+		}
+		// for single-valued slots, increment num_kb_answers only if there isn't an answer that's not already in the reference KB.
+		if((slot != null && !slot.single) || num_answers_to_query == 0)
+			q.kb_answers += num_kb_answers_to_query;
+
+		if(responseList == null){
+			r.message("Warning: No system response for slot " + query);
+			return;
+		}
+		int num_responses_to_query = responseList.size();  // used only for issuing warnings, not for computing scores
+		if(slot != null && slot.single){
+			if(num_responses_to_query > 1){
+				r.message("Warning: Ignoring all but first response among multiple responses for single-valued slot " + query);
+				responseList = responseList.subList(0, 0);
+				num_responses_to_query = responseList.size();
+				// where the official scorer prints the messages so far and exits
+				if(num_responses_to_query != 1)
+					throw new IllegalStateException("unable to take first of multiple responses for single-valued slot for query " + query);
+			}
+		}
+		Set<Integer> distincts = new HashSet<Integer>();
+		List<Double> confidences = judgmentLog != null ? responseConfidence.get(query) : null;
+		for(int i = 0; i < responseList.size(); i++){
+			String responseString = responseList.get(i);
+			String fields[] = responseString.split("\t");
+			String prov = fields[0];
+			String tkey = targetKey;
+
+			String symbol = "?";
+			Integer eclass = null;
+			if(prov.equals("NIL")){
+				if(num_responses_to_query > 1)
+					r.message("Warning: More than one response, including NIL, for " + query);
+				num_responses_to_query = 0; //issue warning only once for query; don't warn again when we encounter other, possibly non-NIL, responses to query
+				if(num_answers_to_query > 0){
+					// missing filler in system response
+					symbol = "M";
+				}
+				else if(num_kb_answers_to_query > 0){
+					symbol = "m"; // missing a filler that is already in the reference KB
+				}
+				else {
+					symbol = "c"; // "correctly" discovers that there are no known fillers in the corpus
+				}
+				tkey += "~NIL";
+				if(symbol.equals("c")){
+					r.nilc++;
+					target(targets, tkey, 1);
+				}
+				else{
+					r.nilw++;
+					target(targets, tkey, 0);
+				}
+			}
+			else /* non-NIL system response */ {
+				q.responses++;
+				String rkey = query + "\t" + responseString;
+				tkey += "~" + fields[2];
+				String J = key.judgement(rkey);
+				if(J == null){
+					r.message("Warning: No judgement for " + rkey);
+					J = KeyModel.WRONG;
+				}
+				symbol = J;
+				if(J.equals(KeyModel.IGNORE) || J.equals(KeyModel.WRONG)){
+					q.wrong++;
+					target(targets, tkey, 0);
+				}
+				else if(J.equals(KeyModel.INEXACT)){
+					q.inexact++;
+					target(targets, tkey, 0);
+				}
+				else if(J.equals(KeyModel.REDUNDANT)){
+					Integer E = key.equivalenceClass(rkey);
+					eclass = E;
+					if(distincts.contains(E)){
+						q.redundant++;
+						symbol = "r";   // redundant with other returned response
+					}
+					else {
+						q.kb_redundant++;
+						distincts.add(E);
+					}
+					target(targets, tkey, redundantTarget);
+				}
+				else if(J.equals(KeyModel.CORRECT)){
+					Integer E = key.equivalenceClass(rkey);
+					eclass = E;
+					if(distincts.contains(E)){
+						q.redundant++;
+						symbol = "r";   // redundant with other returned response
+						target(targets, tkey, redundantTarget);
+					}
+					else {
+						q.correct++;
+						distincts.add(E);
+						target(targets, tkey, correctTarget);
+					}
+				}
+				else {
+					throw new IllegalStateException("Invalid judgement " + J + " for " + rkey);
+				}
+			}
+			if(trace)
+				r.message(symbol + " " + query + " " + responseString);
+			if(judgmentLog != null)
+				judgment(query, i, symbol, eclass, confidences == null ? 1.0 : confidences.get(i));
+		}
+	}
+
+	private void judgment(String query, int index, String symbol, Integer eclass, double confidence){
+		try {
+			judgmentLog.write(query, index, symbol.charAt(0), eclass == null ? -1 : eclass, confidence);
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to write judgment log", e);
+		}
+	}
+
+	private static void target(Map<String,Integer> targets, String tkey, int target){
+		if(targets != null)
+			targets.put(tkey, target);
+	}
+}
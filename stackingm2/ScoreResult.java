@@ -0,0 +1,149 @@
+package stackingm2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * ScoreResult class:
+ *
+ * Outcome of scoring one response file: response and answer counts
+ * for the whole run, for each slot name and for each query
+ * (entity_id:slot_name), plus the warnings and trace lines scoring
+ * produced, in order. Nothing is printed while scoring; see
+ * ConsoleReporter for the usual scorer printout.
+ *
+ */
+public class ScoreResult {
+
+	/*
+	 * Counts class:
+	 *
+	 * response judgements and key answers of a run, slot or query
+	 */
+	public static class Counts {
+		// number of non-NIL responses, including those Redundant with reference KB
+		public int responses = 0;
+		// number of correct non-NIL responses, excluding those Redundant with reference KB
+		public int correct = 0;
+		public int redundant = 0;  // redundant with another returned response
+		public int kb_redundant = 0;  // redundant with reference KB
+		public int inexact = 0;
+		public int wrong = 0;  // includes spurious and incorrect
+		// number of Correct answers in key (that aren't in reference KB)
+		public int answers = 0;
+		// number of Redundant answers in key (that are in reference KB)
+		public int kb_answers = 0;
+
+		void add(Counts c){
+			responses += c.responses;
+			correct += c.correct;
+			redundant += c.redundant;
+			kb_redundant += c.kb_redundant;
+			inexact += c.inexact;
+			wrong += c.wrong;
+			answers += c.answers;
+			kb_answers += c.kb_answers;
+		}
+
+		/*
+		 * official scores (requiring slot fillers that are already in reference KB)
+		 */
+		public float precision(){
+			return ((float) (correct + kb_redundant)) / responses;
+		}
+
+		public float recall(){
+			return ((float) (correct + kb_redundant)) / (answers + kb_answers);
+		}
+
+		public float f1(){
+			return ScoreResult.f1(precision(), recall());
+		}
+
+		/*
+		 * diagnostic scores (ignoring slot fillers in key and responses that are already in reference KB)
+		 */
+		public float diagnosticPrecision(){
+			return ((float) correct) / (responses - kb_redundant);  // don't penalize for fillers already in reference KB
+		}
+
+		public float diagnosticRecall(){
+			return ((float) correct) / answers;
+		}
+
+		public float diagnosticF1(){
+			return ScoreResult.f1(diagnosticPrecision(), diagnosticRecall());
+		}
+	}
+
+	// file the slot list was taken from, null if it was taken from the responses
+	public String slotFile = null;
+
+	// number of single and list valued slots scored
+	public int num_sv_slots = 0;
+	public int num_list_slots = 0;
+
+	public final Counts total = new Counts();
+
+	// slot name --> counts, and entity_id:slot_name --> counts
+	public final Map<String,Counts> slots = new TreeMap<String,Counts>();
+	public final Map<String,Counts> queries = new TreeMap<String,Counts>();
+
+	// NIL responses judged correct / wrong, when the scorer judges them
+	public boolean countsNils = false;
+	public int nilc = 0, nilw = 0;
+
+	// warnings and trace lines, in the order they were produced
+	public final List<String> messages = new ArrayList<String>();
+
+	/*
+	 * counts of query, created empty on first use
+	 */
+	Counts query(String query){
+		Counts c = queries.get(query);
+		if(c == null){
+			c = new Counts();
+			queries.put(query, c);
+		}
+		return c;
+	}
+
+	/*
+	 * sums the query counts into the slot counts and the total
+	 */
+	void finish(){
+		for(Map.Entry<String,Counts> e : queries.entrySet()){
+			String query = e.getKey();
+			String slot = query.substring(query.indexOf(':') + 1);
+			Counts c = slots.get(slot);
+			if(c == null){
+				c = new Counts();
+				slots.put(slot, c);
+			}
+			c.add(e.getValue());
+			total.add(e.getValue());
+		}
+	}
+
+	void message(String message){
+		messages.add(message);
+	}
+
+	public float precision(){
+		return total.precision();
+	}
+
+	public float recall(){
+		return total.recall();
+	}
+
+	public float f1(){
+		return total.f1();
+	}
+
+	static float f1(float precision, float recall){
+		return (2 * recall * precision) / (recall + precision);
+	}
+}
@@ -0,0 +1,198 @@
+package stackingm2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * SlotSchema class:
+ *
+ * The slot types of the slot filling task, with everything the
+ * extractors, ensemblers and scorers need to know about each: a
+ * dense id (the relation ID used as a classifier feature), whether
+ * the slot is single or list valued, the manually created group of
+ * slots it belongs to and the type of entity it is a slot of.
+ *
+ * Slots 0 .. NUM_RELATIONS-1 are the relations the ensemble
+ * classifies. The slots after them are only known to the scorers
+ * (2009 and sentiment slots) and belong to no group.
+ *
+ * parse() maps a slot name to its SlotSchema with a perfect hash of
+ * String.hashCode(): a table lookup and a single comparison, with no
+ * substring needed when the name is part of a larger string.
+ *
+ */
+public enum SlotSchema {
+
+	PER_ALTERNATE_NAMES("per:alternate_names", false, 3),
+	PER_DATE_OF_BIRTH("per:date_of_birth", true, 1),
+	PER_AGE("per:age", true, 5),
+	PER_COUNTRY_OF_BIRTH("per:country_of_birth", true, 2),
+	PER_STATEORPROVINCE_OF_BIRTH("per:stateorprovince_of_birth", true, 2),
+	PER_CITY_OF_BIRTH("per:city_of_birth", true, 2),
+	PER_ORIGIN("per:origin", false, 5),
+	PER_DATE_OF_DEATH("per:date_of_death", true, 1),
+	PER_COUNTRY_OF_DEATH("per:country_of_death", true, 2),
+	PER_STATEORPROVINCE_OF_DEATH("per:stateorprovince_of_death", true, 2),
+	PER_CITY_OF_DEATH("per:city_of_death", true, 2),
+	PER_CAUSE_OF_DEATH("per:cause_of_death", true, 5),
+	PER_COUNTRIES_OF_RESIDENCE("per:countries_of_residence", false, 2),
+	PER_STATESORPROVINCES_OF_RESIDENCE("per:statesorprovinces_of_residence", false, 2),
+	PER_CITIES_OF_RESIDENCE("per:cities_of_residence", false, 2),
+	PER_SCHOOLS_ATTENDED("per:schools_attended", false, 5),
+	PER_TITLE("per:title", false, 6),
+	PER_EMPLOYEE_OR_MEMBER_OF("per:employee_or_member_of", false, 7),
+	PER_RELIGION("per:religion", true, 5),
+	PER_SPOUSE("per:spouse", false, 4),
+	PER_CHILDREN("per:children", false, 4),
+	PER_PARENTS("per:parents", false, 4),
+	PER_SIBLINGS("per:siblings", false, 4),
+	PER_OTHER_FAMILY("per:other_family", false, 4),
+	PER_CHARGES("per:charges", false, 5),
+	ORG_ALTERNATE_NAMES("org:alternate_names", false, 3),
+	ORG_POLITICAL_RELIGIOUS_AFFILIATION("org:political_religious_affiliation", false, 9),
+	ORG_TOP_MEMBERS_EMPLOYEES("org:top_members_employees", false, 8),
+	ORG_NUMBER_OF_EMPLOYEES_MEMBERS("org:number_of_employees_members", true, 9),
+	ORG_MEMBERS("org:members", false, 9),
+	ORG_MEMBER_OF("org:member_of", false, 9),
+	ORG_SUBSIDIARIES("org:subsidiaries", false, 9),
+	ORG_PARENTS("org:parents", false, 9),
+	ORG_FOUNDED_BY("org:founded_by", false, 9),
+	ORG_DATE_FOUNDED("org:date_founded", true, 1),
+	ORG_DATE_DISSOLVED("org:date_dissolved", true, 1),
+	ORG_COUNTRY_OF_HEADQUARTERS("org:country_of_headquarters", true, 2),
+	ORG_STATEORPROVINCE_OF_HEADQUARTERS("org:stateorprovince_of_headquarters", true, 2),
+	ORG_CITY_OF_HEADQUARTERS("org:city_of_headquarters", true, 2),
+	ORG_SHAREHOLDERS("org:shareholders", false, 9),
+	ORG_WEBSITE("org:website", true, 9),
+
+	//slots only the scorers know about
+	PER_AWARDS_WON("per:awards_won", false, 0),
+	PER_CHARITIES_SUPPORTED("per:charities_supported", false, 0),
+	PER_DISEASES("per:diseases", false, 0),
+	ORG_PRODUCTS("org:products", false, 0),
+	PER_POS_FROM("per:pos-from", false, 0),
+	PER_NEG_FROM("per:neg-from", false, 0),
+	PER_POS_TOWARDS("per:pos-towards", false, 0),
+	PER_NEG_TOWARDS("per:neg-towards", false, 0),
+	ORG_POS_FROM("org:pos-from", false, 0),
+	ORG_NEG_FROM("org:neg-from", false, 0),
+	ORG_POS_TOWARDS("org:pos-towards", false, 0),
+	ORG_NEG_TOWARDS("org:neg-towards", false, 0),
+	GPE_POS_FROM("gpe:pos-from", false, 0),
+	GPE_NEG_FROM("gpe:neg-from", false, 0),
+	GPE_POS_TOWARDS("gpe:pos-towards", false, 0),
+	GPE_NEG_TOWARDS("gpe:neg-towards", false, 0);
+
+	public enum EntityType { PER, ORG, GPE }
+
+	// number of relations classified by the ensemble, i.e. ids 0 .. NUM_RELATIONS-1
+	public static final int NUM_RELATIONS = 41;
+
+	private static final SlotSchema[] VALUES = values();
+
+	// number of slots, i.e. ids 0 .. NUM_SLOTS-1
+	public static final int NUM_SLOTS = VALUES.length;
+
+	// perfect hash: (hashCode * multiplier) >>> (32 - TABLE_BITS) --> slot
+	private static final int TABLE_BITS = 9;
+	private static final SlotSchema[] TABLE = new SlotSchema[1 << TABLE_BITS];
+	private static final int MULTIPLIER = findMultiplier();
+
+	static {
+		for(SlotSchema s : VALUES)
+			TABLE[index(s.slotName.hashCode())] = s;
+	}
+
+	public final String slotName;
+	public final boolean single;
+	public final int group;
+	public final EntityType entityType;
+
+	SlotSchema(String slotName, boolean single, int group){
+		this.slotName = slotName;
+		this.single = single;
+		this.group = group;
+		this.entityType = EntityType.valueOf(slotName.substring(0, 3).toUpperCase());
+	}
+
+	public int id(){
+		return ordinal();
+	}
+
+	public boolean isRelation(){
+		return ordinal() < NUM_RELATIONS;
+	}
+
+	public String toString(){
+		return slotName;
+	}
+
+	public static SlotSchema byId(int id){
+		return VALUES[id];
+	}
+
+	/*
+	 * the slot named slot, or null if there is no such slot
+	 */
+	public static SlotSchema parse(String slot){
+		return parse(slot, 0, slot.length());
+	}
+
+	/*
+	 * the slot named by str[from, to), or null if there is no such slot
+	 */
+	public static SlotSchema parse(String str, int from, int to){
+		int h = 0;
+		for(int i = from; i < to; i++)
+			h = 31 * h + str.charAt(i);
+		SlotSchema s = TABLE[index(h)];
+		if(s != null && s.slotName.length() == to - from && str.regionMatches(from, s.slotName, 0, to - from))
+			return s;
+		return null;
+	}
+
+	public static boolean isSingleValued(String slot){
+		SlotSchema s = parse(slot);
+		return s != null && s.single;
+	}
+
+	/*
+	 * names of the relations of entity type, in id order
+	 */
+	public static List<String> relationNames(EntityType type){
+		List<String> names = new ArrayList<String>();
+		for(int i = 0; i < NUM_RELATIONS; i++){
+			if(VALUES[i].entityType == type)
+				names.add(VALUES[i].slotName);
+		}
+		return Collections.unmodifiableList(names);
+	}
+
+	private static int index(int hash){
+		return (hash * MULTIPLIER) >>> (32 - TABLE_BITS);
+	}
+
+	/*
+	 * first odd multiplier that sends every slot name to its own table entry
+	 */
+	private static int findMultiplier(){
+		boolean[] used = new boolean[1 << TABLE_BITS];
+		for(int m = 0x9E3779B9, tries = 0; tries < (1 << 20); m += 2, tries++){
+			Arrays.fill(used, false);
+			boolean collision = false;
+			for(SlotSchema s : VALUES){
+				int i = (s.slotName.hashCode() * m) >>> (32 - TABLE_BITS);
+				if(used[i]){
+					collision = true;
+					break;
+				}
+				used[i] = true;
+			}
+			if(!collision)
+				return m;
+		}
+		throw new IllegalStateException("No perfect hash for the slot names");
+	}
+}
@@ -0,0 +1,208 @@
+package stackingm2;
+
+import java.util.Arrays;
+
+/*
+ * SpanCanonicalizer class:
+ *
+ * Canonical form of a provenance string, i.e. comma separated
+ * 'docid:startoffset-endoffset' spans. Spans are located in the
+ * string in place: a docid is kept as its character range and the
+ * offsets are packed into one long per span, (start << 32) followed
+ * by the length of the span biased to sort as a signed int. Spans
+ * are ordered by docid (compared character by character, as
+ * String.compareTo does), then start offset, then length, which is
+ * the order scorer2014 always used.
+ *
+ * All buffers are reused from one call to the next, so the only
+ * allocation is the returned string, and none at all when the
+ * input is already canonical. An instance is not thread safe;
+ * get() returns the one belonging to the calling thread.
+ *
+ */
+final class SpanCanonicalizer {
+
+	private static final ThreadLocal<SpanCanonicalizer> LOCAL = new ThreadLocal<SpanCanonicalizer>() {
+		protected SpanCanonicalizer initialValue() {
+			return new SpanCanonicalizer();
+		}
+	};
+
+	static SpanCanonicalizer get(){
+		return LOCAL.get();
+	}
+
+	private String s;
+	private int n = 0;
+
+	// per span: docid range [docFrom, docTo), end offset, packed start and length
+	private int[] docFrom = new int[8];
+	private int[] docTo = new int[8];
+	private int[] end = new int[8];
+	private long[] position = new long[8];
+
+	// span indexes in sorted order
+	private int[] order = new int[8];
+
+	private final StringBuilder out = new StringBuilder();
+
+	/*
+	 * spans sorted by docid, then start offset, then length
+	 */
+	String sortSpans(String spans){
+		if(spans.equals("*") || spans.equals("NIL")) return spans;
+		parse(spans);
+		out.setLength(0);
+		for(int i = 0; i < n; i++){
+			int k = order[i];
+			if(i > 0) out.append(',');
+			out.append(s, docFrom[k], docTo[k]);
+			out.append(':');
+			out.append((int) (position[k] >> 32));
+			out.append('-');
+			out.append(end[k]);
+		}
+		return result();
+	}
+
+	/*
+	 * the distinct docids of the spans, sorted
+	 */
+	String removeOffsets(String spans){
+		if(spans.equals("*") || spans.equals("NIL")) return spans;
+		parse(spans);
+		out.setLength(0);
+		for(int i = 0; i < n; i++){
+			int k = order[i];
+			if(i > 0){
+				if(compareDocids(order[i - 1], k) == 0)
+					continue;
+				out.append(',');
+			}
+			out.append(s, docFrom[k], docTo[k]);
+		}
+		return result();
+	}
+
+	private String result(){
+		String r = s.contentEquals(out) ? s : out.toString();
+		s = null;
+		return r;
+	}
+
+	/*
+	 * splits spans as split(",") and split(":") would (trailing empty
+	 * spans are dropped, text after a second colon is ignored) and
+	 * sorts them
+	 */
+	private void parse(String spans){
+		s = spans;
+		n = 0;
+		int last = spans.length();
+		while(last > 0 && spans.charAt(last - 1) == ',')
+			last--;
+		if(last == 0 && spans.length() > 0)
+			return;  // nothing but commas: no spans
+		int from = 0;
+		do {
+			int to = spans.indexOf(',', from);
+			if(to < 0 || to > last)
+				to = last;
+			int colon = spans.indexOf(':', from);
+			if(colon < 0 || colon >= to)
+				throw new IllegalArgumentException("Invalid span in " + spans);
+			int offsetsTo = spans.indexOf(':', colon + 1);
+			if(offsetsTo < 0 || offsetsTo > to)
+				offsetsTo = to;
+			int hyphen = spans.indexOf('-', colon + 1);
+			if(hyphen < 0 || hyphen >= offsetsTo)
+				throw new IllegalArgumentException("Invalid span in " + spans);
+			int start = parseInt(spans, colon + 1, hyphen);
+			int e = parseInt(spans, hyphen + 1, offsetsTo);
+			add(from, colon, start, e);
+			from = to + 1;
+		} while(from <= last);
+		sort();
+	}
+
+	private void add(int from, int to, int start, int e){
+		if(n == docFrom.length){
+			docFrom = Arrays.copyOf(docFrom, n * 2);
+			docTo = Arrays.copyOf(docTo, n * 2);
+			end = Arrays.copyOf(end, n * 2);
+			position = Arrays.copyOf(position, n * 2);
+			order = Arrays.copyOf(order, n * 2);
+		}
+		docFrom[n] = from;
+		docTo[n] = to;
+		end[n] = e;
+		position[n] = ((long) start << 32) | ((e - start) ^ 0x80000000L) & 0xffffffffL;
+		order[n] = n;
+		n++;
+	}
+
+	/*
+	 * insertion sort; a provenance has only a handful of spans
+	 */
+	private void sort(){
+		for(int i = 1; i < n; i++){
+			int k = order[i];
+			int j = i - 1;
+			while(j >= 0 && compare(order[j], k) > 0){
+				order[j + 1] = order[j];
+				j--;
+			}
+			order[j + 1] = k;
+		}
+	}
+
+	private int compare(int a, int b){
+		int dc = compareDocids(a, b);
+		if(dc != 0)
+			return dc;
+		return position[a] < position[b] ? -1 : (position[a] > position[b] ? 1 : 0);
+	}
+
+	private int compareDocids(int a, int b){
+		int la = docTo[a] - docFrom[a];
+		int lb = docTo[b] - docFrom[b];
+		int lim = Math.min(la, lb);
+		for(int i = 0; i < lim; i++){
+			char ca = s.charAt(docFrom[a] + i);
+			char cb = s.charAt(docFrom[b] + i);
+			if(ca != cb)
+				return ca - cb;
+		}
+		return la - lb;
+	}
+
+	/*
+	 * Integer.parseInt over s[from, to) without the substring
+	 */
+	private int parseInt(String str, int from, int to){
+		if(from >= to)
+			throw new NumberFormatException("For input string: \"\"");
+		boolean negative = false;
+		int i = from;
+		char c = str.charAt(i);
+		if(c == '-' || c == '+'){
+			negative = c == '-';
+			i++;
+			if(i == to)
+				throw new NumberFormatException("For input string: \"" + str.substring(from, to) + "\"");
+		}
+		long value = 0;
+		for(; i < to; i++){
+			int digit = Character.digit(str.charAt(i), 10);
+			if(digit < 0)
+				throw new NumberFormatException("For input string: \"" + str.substring(from, to) + "\"");
+			value = value * 10 + digit;
+			if(value > (long) Integer.MAX_VALUE + 1)
+				throw new NumberFormatException("For input string: \"" + str.substring(from, to) + "\"");
+		}
+		value = negative ? -value : value;
+		if(value > Integer.MAX_VALUE)
+			throw new NumberFormatException("For input string: \"" + str.substring(from, to) + "\"");
+		return (int) value;
+	}
+}
@@ -16,6 +16,8 @@ import weka.classifiers.evaluation.NominalPrediction;
 import weka.classifiers.evaluation.Prediction;
 import weka.classifiers.functions.Logistic;
 import weka.classifiers.meta.AttributeSelectedClassifier;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
 import weka.core.FastVector;
 import weka.core.Instances;
 import weka.core.Range;
@@ -48,6 +50,11 @@ public class StackedClassifier {
 	boolean isTestingDataEmpty,isTrainingDataEmpty;
 	boolean isTrainingTargetSingleClass;
 	
+	//labels of the predicted target, as loadPredictions declares them
+	static final String[] PREDICTED_TARGETS = {"0","2"};
+	//predicted target of each test instance, an index into PREDICTED_TARGETS (NaN if there is none)
+	double[] predictedTargets = null;
+	
 	public StackedClassifier(){
 		inTrainDataFile = new String("/home/vidhoonv/workspace/RE_ensemble/weka_java_testing/2013.txt");
 		inTestDataFile = new String("/home/vidhoonv/workspace/RE_ensemble/weka_java_testing/2014.txt");
@@ -105,6 +112,34 @@ public class StackedClassifier {
 	    return false;
 	}
 	
+	/*
+	 * loads the features and target of an arff or bin file written by
+	 * a FeatureSink; these have no output columns to remove, so there
+	 * is no tab separated file to parse and no ARFF to write and read back
+	 */
+	public Instances loadFeatures(String infile) throws Exception{
+		if(infile.endsWith(FeatureSink.BINARY_EXT)){
+			return toInstances(FeatureSink.readMatrix(infile), new File(infile).getName());
+		}
+		DataSource source = new DataSource(infile);
+		return source.getDataSet();
+	}
+	
+	/*
+	 * numeric instances of the rows of a matrix
+	 */
+	public static Instances toInstances(FeatureSink.Matrix matrix, String name){
+		ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+		for(String column : matrix.columns){
+			attributes.add(new Attribute(column));
+		}
+		Instances data = new Instances(name, attributes, matrix.rows.size());
+		for(double[] row : matrix.rows){
+			data.add(new DenseInstance(1.0, row));
+		}
+		return data;
+	}
+	
 	public void savePredictions(String outfile) throws Exception{
 		String[] saverOptions = new String[2];
 		saverOptions[0]="-F";
@@ -157,23 +192,54 @@ public class StackedClassifier {
 	
 	public void preprocessData() throws Exception{
 		
-		//csvtoARFF conversion
-		isTrainingDataEmpty = loadCSVinput(inTrainDataFile,trainDataFile,"2013");
-		isTestingDataEmpty = loadCSVinput(inTestDataFile,testDataFile,"2014");
-		
+		Instances train,test;
+		if(FeatureSink.isDirect(inTrainDataFile) && FeatureSink.isDirect(inTestDataFile)){
+			//features only; the output columns are in the side file
+			train = loadFeatures(inTrainDataFile);
+			test = loadFeatures(inTestDataFile);
+			isTrainingDataEmpty = train.size()==0;
+			isTestingDataEmpty = test.size()==0;
+			
+			if(isTrainingDataEmpty || isTestingDataEmpty){
+				return;
+			}
+			//load predictions for writing predictions output
+			loadPredictions(FeatureSink.metaFile(inTestDataFile),testPredictionsFile,"2014");
+		}
+		else{
+			//csvtoARFF conversion
+			isTrainingDataEmpty = loadCSVinput(inTrainDataFile,trainDataFile,"2013");
+			isTestingDataEmpty = loadCSVinput(inTestDataFile,testDataFile,"2014");
+			
+			if(isTrainingDataEmpty || isTestingDataEmpty){
+				return;
+			}
+			//load predictions for writing predictions output
+			loadPredictions(inTestDataFile,testPredictionsFile,"2014");
+			
+			DataSource trainSource = new DataSource(trainDataFile);
+			train = trainSource.getDataSet();
+			DataSource testSource = new DataSource(testDataFile);
+			test = testSource.getDataSet();
+		}
+		prepareInstances(train,test);
+	}
+	
+	/*
+	 * takes the rows DataExtractor kept in memory (see Pipeline); the
+	 * predictions are then only kept in predictedTargets
+	 */
+	public void preprocessData(FeatureSink.Memory trainRows, FeatureSink.Memory testRows) throws Exception{
+		isTrainingDataEmpty = trainRows.size()==0;
+		isTestingDataEmpty = testRows.size()==0;
 		if(isTrainingDataEmpty || isTestingDataEmpty){
 			return;
 		}
-		//load predictions for writing predictions output
-		loadPredictions(inTestDataFile,testPredictionsFile,"2014");
-		
+		prepareInstances(toInstances(trainRows.matrix,"train"),toInstances(testRows.matrix,"test"));
+	}
+	
+	void prepareInstances(Instances train, Instances test) throws Exception{
 		//numericToNominal - BATCH
-		DataSource trainSource = new DataSource(trainDataFile);
-		Instances train = trainSource.getDataSet();
-		DataSource testSource = new DataSource(testDataFile);
-		Instances test = testSource.getDataSet();
-		
-		
 		NumericToNominal nnfilter = new NumericToNominal();
 		nnfilter.setAttributeIndices("45-last");
 		nnfilter.setInputFormat(train);
@@ -229,18 +295,32 @@ public class StackedClassifier {
 		 //FastVector predictions = new FastVector();
 		 
 		 List<Prediction> predictions = evals.predictions();
+		 predictedTargets = new double[predictions.size()];
 		 int i=0;
 		 for(Prediction p : predictions){
 			 NominalPrediction np = (NominalPrediction) p;
 			 
-			 predictionInstances.instance(i).setValue(predictionInstances.numAttributes()-2, np.predicted());
+			 predictedTargets[i] = np.predicted();
+			 if(predictionInstances != null){
+				 predictionInstances.instance(i).setValue(predictionInstances.numAttributes()-2, np.predicted());
+			 }
 			 i++;
 			// System.out.println("actual: "+np.actual() + "\t pred: " + np.predicted());			 
 		 }
 		 
 		
 		//save predictions
-		savePredictions(testPredictionsFile);    	
+		if(predictionInstances != null){
+			savePredictions(testPredictionsFile);
+		}
+	}
+	
+	/*
+	 * label of the predicted target of test instance i, "?" if there is none
+	 */
+	public String predictedTarget(int i){
+		double p = predictedTargets[i];
+		return Double.isNaN(p) ? "?" : PREDICTED_TARGETS[(int) p];
 	}
 	
 	/*
@@ -0,0 +1,182 @@
+package stackingm2;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/*
+ * ThresholdSweep class:
+ *
+ * Precision/recall curve of a scored run over its confidence values.
+ * Scoring the run with only the responses whose confidence is at or
+ * above a threshold t is done for every distinct t in one pass: the
+ * responses are sorted by decreasing confidence and added group by
+ * group (all responses of equal confidence at once), updating the
+ * counts incrementally. The key answers (the denominators of recall)
+ * do not depend on t; they come from the ScoreResult of the run.
+ *
+ * Within a query only the first response (in file order) of an
+ * equivalence class counts as Correct or Redundant with the KB, the
+ * later ones are redundant with it. When a group adds a response that
+ * precedes the one currently counted for its class, the counted
+ * response is replaced, exactly as if the run had been filtered
+ * and re-scored.
+ *
+ */
+public class ThresholdSweep {
+
+	static final String DELIMITER = "\t";
+
+	// one non-NIL response of the run
+	static class Entry {
+		double confidence;
+		String query;
+		String slot;
+		int position;      // index among the responses to query
+		int judgement;     // CORRECT, REDUNDANT or 0 for anything else
+		Integer eclass;
+	}
+
+	static final int CORRECT = 1;
+	static final int REDUNDANT = 2;
+
+	// counts of responses at the current threshold, indexed as below
+	static final int RESPONSES = 0;
+	static final int NUM_CORRECT = 1;
+	static final int NUM_KB_REDUNDANT = 2;
+
+	/*
+	 * writes the curve of rs, whose score() returned result, to curveFile
+	 *
+	 * one row per threshold for the whole run (slot ALL), followed by
+	 * one row for each slot whose responses changed at that threshold
+	 */
+	public static void write(ResponseScorer rs, ScoreResult result, String curveFile) throws IOException{
+		List<Entry> entries = entries(rs);
+		Collections.sort(entries, new Comparator<Entry>() {
+			public int compare(Entry a, Entry b) {
+				return Double.compare(b.confidence, a.confidence);
+			}
+		});
+
+		int answers = result.total.answers;
+		int kbAnswers = result.total.kb_answers;
+		int[] total = new int[3];
+		Map<String,int[]> slotTotals = new HashMap<String,int[]>();
+		// query \t eclass --> {position, judgement} of the response counted for that class
+		Map<String,int[]> counted = new HashMap<String,int[]>();
+
+		BufferedWriter bw = new BufferedWriter(new FileWriter(curveFile));
+		try {
+			bw.write("threshold"+DELIMITER+"slot"+DELIMITER+"responses"+DELIMITER+"correct"+DELIMITER+"kb_redundant"
+					+DELIMITER+"precision"+DELIMITER+"recall"+DELIMITER+"F1"
+					+DELIMITER+"diagnostic_precision"+DELIMITER+"diagnostic_recall"+DELIMITER+"diagnostic_F1\n");
+			int i = 0;
+			while(i < entries.size()){
+				double threshold = entries.get(i).confidence;
+				Set<String> touched = new TreeSet<String>();
+				//the order of the sort, so NaN confidences form a group too instead of never matching
+				for(; i < entries.size() && Double.compare(entries.get(i).confidence, threshold) == 0; i++){
+					Entry e = entries.get(i);
+					int[] slotTotal = slotTotals.get(e.slot);
+					if(slotTotal == null){
+						slotTotal = new int[3];
+						slotTotals.put(e.slot, slotTotal);
+					}
+					touched.add(e.slot);
+					total[RESPONSES]++;
+					slotTotal[RESPONSES]++;
+					if(e.judgement == 0){
+						continue;
+					}
+					String eclassKey = e.query + "\t" + e.eclass;
+					int[] first = counted.get(eclassKey);
+					if(first == null){
+						counted.put(eclassKey, new int[]{e.position, e.judgement});
+						count(total, slotTotal, e.judgement, 1);
+					}
+					else if(e.position < first[0]){
+						// e now comes first in its class; the one counted so far becomes redundant
+						count(total, slotTotal, first[1], -1);
+						count(total, slotTotal, e.judgement, 1);
+						first[0] = e.position;
+						first[1] = e.judgement;
+					}
+				}
+				writeRow(bw, threshold, "ALL", total, answers, kbAnswers);
+				for(String slot : touched){
+					ScoreResult.Counts c = result.slots.get(slot);
+					writeRow(bw, threshold, slot, slotTotals.get(slot), c.answers, c.kb_answers);
+				}
+			}
+		} finally {
+			bw.close();
+		}
+	}
+
+	/*
+	 * the non-NIL responses that score() counted, with their judgements
+	 */
+	static List<Entry> entries(ResponseScorer rs){
+		KeyModel key = rs.key;
+		List<Entry> entries = new ArrayList<Entry>();
+		for(String query : rs.slots){
+			String type = scorer2014.slotType(query);
+			if(type != "single" && type != "list" && (key.eclasses(query) != null || key.kbEclasses(query) != null))
+				continue;  // skipped by score() as well
+			List<String> responseList = rs.response.get(query);
+			if(responseList == null)
+				continue;
+			List<Double> confidences = rs.responseConfidence.get(query);
+			String slot = query.substring(query.indexOf(':') + 1);
+			for(int j = 0; j < responseList.size(); j++){
+				String responseString = responseList.get(j);
+				if(responseString.equals("NIL"))
+					continue;
+				Entry e = new Entry();
+				e.confidence = confidences.get(j);
+				e.query = query;
+				e.slot = slot;
+				e.position = j;
+				String rkey = query + "\t" + responseString;
+				String J = key.judgement(rkey);
+				if(KeyModel.CORRECT.equals(J)){
+					e.judgement = CORRECT;
+					e.eclass = key.equivalenceClass(rkey);
+				}
+				else if(KeyModel.REDUNDANT.equals(J)){
+					e.judgement = REDUNDANT;
+					e.eclass = key.equivalenceClass(rkey);
+				}
+				entries.add(e);
+			}
+		}
+		return entries;
+	}
+
+	private static void count(int[] total, int[] slotTotal, int judgement, int delta){
+		int index = judgement == CORRECT ? NUM_CORRECT : NUM_KB_REDUNDANT;
+		total[index] += delta;
+		slotTotal[index] += delta;
+	}
+
+	private static void writeRow(BufferedWriter bw, double threshold, String slot, int[] c, int answers, int kbAnswers) throws IOException{
+		int correct = c[NUM_CORRECT];
+		int kbRedundant = c[NUM_KB_REDUNDANT];
+		float precision = ((float) (correct + kbRedundant)) / c[RESPONSES];
+		float recall = ((float) (correct + kbRedundant)) / (answers + kbAnswers);
+		float diagnosticPrecision = ((float) correct) / (c[RESPONSES] - kbRedundant);
+		float diagnosticRecall = ((float) correct) / answers;
+		bw.write(threshold+DELIMITER+slot+DELIMITER+c[RESPONSES]+DELIMITER+correct+DELIMITER+kbRedundant
+				+DELIMITER+precision+DELIMITER+recall+DELIMITER+ScoreResult.f1(precision, recall)
+				+DELIMITER+diagnosticPrecision+DELIMITER+diagnosticRecall+DELIMITER+ScoreResult.f1(diagnosticPrecision, diagnosticRecall)+"\n");
+	}
+}
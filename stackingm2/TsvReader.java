@@ -0,0 +1,303 @@
+package stackingm2;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/*
+ * TsvReader class:
+ *
+ * Reads a tab separated file line by line over a memory-mapped
+ * window of the file. A line is only scanned once, for its end and
+ * its tabs; fields are kept as byte offsets into the mapping and a
+ * String is made only for the fields asked for. The fields of a
+ * line are those String.split("\t", limit) would give (or
+ * trim().split("\t", limit) with splitTrimmed()), including the
+ * removal of trailing empty fields when limit is 0, so a reader can
+ * switch from readLine() and split() without changing its results.
+ *
+ * Lines end at \n, \r or \r\n, as for BufferedReader.readLine().
+ * Text is decoded with the platform charset, as FileReader does;
+ * tabs and line ends are found in the raw bytes, which assumes an
+ * ASCII compatible charset such as UTF-8.
+ *
+ */
+public final class TsvReader implements Closeable {
+
+	// bytes mapped at once; grown for a line that does not fit
+	static final int WINDOW = 1 << 26;
+
+	private static final Charset CHARSET = Charset.defaultCharset();
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	// end of the part of the file read
+	private final long size;
+
+	private MappedByteBuffer buf;
+	private long bufStart;
+	private int window;
+
+	// file offset of the next line
+	private long next;
+
+	// current line [lineFrom, lineTo) in buf, with its tabs
+	private int lineFrom, lineTo;
+	private long lineOffset;
+	private int[] tabs = new int[16];
+	private int numTabs = 0;
+
+	// fields of the last split: [from, to) of the trimmed line, first tab and number of fields
+	private int from, to, firstTab, count, limit;
+
+	private byte[] scratch = new byte[256];
+
+	public TsvReader(String fileName) throws IOException{
+		this(fileName, 0, -1, WINDOW);
+	}
+
+	/*
+	 * reads the lines of fileName in [start, end), where start and end
+	 * are line starts (see chunks()); end -1 for the end of the file
+	 */
+	TsvReader(String fileName, long start, long end, int window) throws IOException{
+		this.window = window;
+		file = new RandomAccessFile(fileName, "r");
+		channel = file.getChannel();
+		size = end < 0 ? channel.size() : end;
+		next = start;
+		map(start);
+	}
+
+	TsvReader(String fileName, int window) throws IOException{
+		this(fileName, 0, -1, window);
+	}
+
+	/*
+	 * cuts fileName into at most n parts of about the same size at
+	 * line starts; returns the offsets of the parts and the file size
+	 */
+	static long[] chunks(String fileName, int n) throws IOException{
+		RandomAccessFile f = new RandomAccessFile(fileName, "r");
+		try {
+			FileChannel channel = f.getChannel();
+			long size = channel.size();
+			ByteBuffer bytes = ByteBuffer.allocate(1 << 12);
+			long[] offsets = new long[n + 1];
+			int count = 1;
+			for(int i = 1; i < n; i++){
+				long p = Math.max(size * i / n, offsets[count - 1]);
+				// move p past the next \n
+				boolean found = false;
+				while(!found && p < size){
+					bytes.clear();
+					int read = channel.read(bytes, p);
+					for(int k = 0; k < read && !found; k++, p++){
+						found = bytes.get(k) == '\n';
+					}
+				}
+				if(p >= size)
+					break;
+				if(p > offsets[count - 1])
+					offsets[count++] = p;
+			}
+			offsets[count++] = size;
+			return Arrays.copyOf(offsets, count);
+		} finally {
+			f.close();
+		}
+	}
+
+	private void map(long start) throws IOException{
+		bufStart = start;
+		buf = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(window, size - start));
+	}
+
+	/*
+	 * advances to the next line, split as split(0) would;
+	 * false at the end of the file
+	 */
+	public boolean next() throws IOException{
+		if(next >= size)
+			return false;
+		if(next - bufStart >= buf.limit())
+			map(next);
+		while(true){
+			int p = (int) (next - bufStart);
+			int end = buf.limit();
+			numTabs = 0;
+			while(p < end){
+				byte b = buf.get(p);
+				if(b == '\n' || b == '\r')
+					break;
+				if(b == '\t'){
+					if(numTabs == tabs.length)
+						tabs = Arrays.copyOf(tabs, numTabs * 2);
+					tabs[numTabs++] = p;
+				}
+				p++;
+			}
+			boolean atEnd = bufStart + end >= size;
+			// the line (or a \r\n) runs past the window: map again from the start of the line
+			if(!atEnd && (p == end || (buf.get(p) == '\r' && p + 1 == end))){
+				if(next == bufStart)
+					window = (int) Math.min(Integer.MAX_VALUE, 2L * window);
+				map(next);
+				continue;
+			}
+			lineOffset = next;
+			lineFrom = (int) (next - bufStart);
+			lineTo = p;
+			if(p < end){
+				p += (buf.get(p) == '\r' && p + 1 < end && buf.get(p + 1) == '\n') ? 2 : 1;
+			}
+			next = bufStart + p;
+			split(lineFrom, lineTo, 0, 0);
+			return true;
+		}
+	}
+
+	/*
+	 * splits the current line as line.split("\t", limit) would;
+	 * returns the number of fields
+	 */
+	public int split(int limit){
+		return split(lineFrom, lineTo, 0, limit);
+	}
+
+	/*
+	 * splits the current line as line.trim().split("\t", limit) would;
+	 * returns the number of fields
+	 */
+	public int splitTrimmed(int limit){
+		int f = lineFrom, t = lineTo;
+		while(f < t && (buf.get(f) & 0xff) <= ' ')
+			f++;
+		while(t > f && (buf.get(t - 1) & 0xff) <= ' ')
+			t--;
+		int first = 0;
+		while(first < numTabs && tabs[first] < f)
+			first++;
+		return split(f, t, first, limit);
+	}
+
+	private int split(int f, int t, int first, int limit){
+		from = f;
+		to = t;
+		firstTab = first;
+		this.limit = limit;
+		int n = 0;
+		while(first + n < numTabs && tabs[first + n] < t)
+			n++;
+		// n tabs in the line: n + 1 fields, or none of them split off
+		if(n == 0){
+			count = 1;
+			return count;
+		}
+		count = n + 1;
+		if(limit > 0)
+			count = Math.min(count, limit);
+		else if(limit == 0){
+			while(count > 0 && fieldFrom(count - 1) == fieldTo(count - 1))
+				count--;
+		}
+		return count;
+	}
+
+	public int fieldCount(){
+		return count;
+	}
+
+	private int fieldFrom(int i){
+		return i == 0 ? from : tabs[firstTab + i - 1] + 1;
+	}
+
+	private int fieldTo(int i){
+		if(limit > 0 && i == limit - 1)
+			return to;
+		int tab = firstTab + i;
+		return tab < numTabs && tabs[tab] < to ? tabs[tab] : to;
+	}
+
+	private void check(int i){
+		if(i < 0 || i >= count)
+			throw new ArrayIndexOutOfBoundsException(i);
+	}
+
+	/*
+	 * field i of the last split
+	 */
+	public String field(int i){
+		check(i);
+		return string(fieldFrom(i), fieldTo(i));
+	}
+
+	/*
+	 * true if field i of the last split is s, which must be ASCII;
+	 * makes no String
+	 */
+	public boolean fieldEquals(int i, String s){
+		check(i);
+		int f = fieldFrom(i);
+		int len = fieldTo(i) - f;
+		if(len != s.length())
+			return false;
+		for(int k = 0; k < len; k++){
+			if(buf.get(f + k) != s.charAt(k))
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	 * all fields of the last split, for readers that use most of them
+	 */
+	public String[] fields(){
+		String[] fields = new String[count];
+		for(int i = 0; i < count; i++)
+			fields[i] = string(fieldFrom(i), fieldTo(i));
+		return fields;
+	}
+
+	/*
+	 * the line from the start of field i of the last split to its end,
+	 * i.e. what split("\t", i + 1)[i] would be
+	 */
+	public String rest(int i){
+		if(i < 0 || (i > 0 && firstTab + i - 1 >= numTabs) || (i > 0 && tabs[firstTab + i - 1] >= to))
+			throw new ArrayIndexOutOfBoundsException(i);
+		return string(fieldFrom(i), to);
+	}
+
+	/*
+	 * file offset of the current line
+	 */
+	public long offset(){
+		return lineOffset;
+	}
+
+	/*
+	 * the whole current line
+	 */
+	public String line(){
+		return string(lineFrom, lineTo);
+	}
+
+	private String string(int f, int t){
+		int len = t - f;
+		if(len > scratch.length)
+			scratch = new byte[Math.max(len, 2 * scratch.length)];
+		buf.position(f);
+		buf.get(scratch, 0, len);
+		return new String(scratch, 0, len, CHARSET);
+	}
+
+	public void close() throws IOException{
+		file.close();
+	}
+}
@@ -24,57 +24,11 @@ public class WrappedTrainer {
 		fileExt = new String(fext);
 		
 		//add per slots
-		perSlots.add("per:alternate_names");
-		perSlots.add("per:date_of_birth");
-		perSlots.add("per:age");
-		perSlots.add("per:country_of_birth");
-		perSlots.add("per:stateorprovince_of_birth");
-		
-		perSlots.add("per:city_of_birth");
-		perSlots.add("per:origin");
-		perSlots.add("per:date_of_death");
-		perSlots.add("per:country_of_death");
-		perSlots.add("per:stateorprovince_of_death");
-		
-		perSlots.add("per:city_of_death");
-		perSlots.add("per:cause_of_death");
-		perSlots.add("per:countries_of_residence");
-		perSlots.add("per:statesorprovinces_of_residence");
-		perSlots.add("per:cities_of_residence");
-		
-		perSlots.add("per:schools_attended");
-		perSlots.add("per:title");
-		perSlots.add("per:employee_or_member_of");
-		perSlots.add("per:religion");
-		perSlots.add("per:spouse");
-		
-		perSlots.add("per:children");
-		perSlots.add("per:parents");
-		perSlots.add("per:siblings");
-		perSlots.add("per:other_family");
-		perSlots.add("per:charges");
-		
+		perSlots.addAll(SlotSchema.relationNames(SlotSchema.EntityType.PER));
 		
 		//add org slots
-		orgSlots.add("org:alternate_names");
-		orgSlots.add("org:political_religious_affiliation");
-		orgSlots.add("org:top_members_employees");
-		orgSlots.add("org:number_of_employees_members");
-		orgSlots.add("org:members");
-		
-		orgSlots.add("org:member_of");
-		orgSlots.add("org:subsidiaries");
-		orgSlots.add("org:parents");
-		orgSlots.add("org:founded_by");
-		orgSlots.add("org:date_founded");
+		orgSlots.addAll(SlotSchema.relationNames(SlotSchema.EntityType.ORG));
 		
-		orgSlots.add("org:date_dissolved");
-		orgSlots.add("org:country_of_headquarters");
-		orgSlots.add("org:stateorprovince_of_headquarters");
-		orgSlots.add("org:city_of_headquarters");
-		orgSlots.add("org:shareholders");
-		orgSlots.add("org:website");
-	
 	}
 	
 	public void buildClassifierForAllSlots() throws Exception{
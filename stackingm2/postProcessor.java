@@ -1,12 +1,11 @@
 package stackingm2;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -29,12 +28,16 @@ public class postProcessor {
 	 */
 	Map<String,String> mpOutput=new HashMap<String,String>();
 	Map<String,Double> mpConfidence=new HashMap<String,Double>();
-	Set<String> singleValuedSlots= new HashSet<String>();
 	Set<String> filledSlots = new HashSet<String>(); //only tracks single valued slots
 	Map<String,Boolean> slotfills = new HashMap<String,Boolean>();
 	Set<String> perSlots = new HashSet<String>();
 	Set<String> orgSlots = new HashSet<String>();
 	String runid = new String("");
+	// columns of the predictions file, see setColumns
+	int expectedNumFields=10,predictedTargetFieldIndex=8,fillIndex=4;
+	int conf1Index=6, conf2Index=7;
+	// rows taken and rows the classifier rejected
+	int nLines=0, nSkipped=0;
 	/*
 	 *  this function is keep track of what slots have fills or some entry
 	 *  from classifier result. The KBP mandates to have NIL slot fill if
@@ -45,57 +48,10 @@ public class postProcessor {
 	public void populateSlotFills(){
 		
 		//add per slots
-		perSlots.add("per:alternate_names");
-		perSlots.add("per:date_of_birth");
-		perSlots.add("per:age");
-		perSlots.add("per:country_of_birth");
-		perSlots.add("per:stateorprovince_of_birth");
-		
-		perSlots.add("per:city_of_birth");
-		perSlots.add("per:origin");
-		perSlots.add("per:date_of_death");
-		perSlots.add("per:country_of_death");
-		perSlots.add("per:stateorprovince_of_death");
-		
-		perSlots.add("per:city_of_death");
-		perSlots.add("per:cause_of_death");
-		perSlots.add("per:countries_of_residence");
-		perSlots.add("per:statesorprovinces_of_residence");
-		perSlots.add("per:cities_of_residence");
-		
-		perSlots.add("per:schools_attended");
-		perSlots.add("per:title");
-		perSlots.add("per:employee_or_member_of");
-		perSlots.add("per:religion");
-		perSlots.add("per:spouse");
-		
-		perSlots.add("per:children");
-		perSlots.add("per:parents");
-		perSlots.add("per:siblings");
-		perSlots.add("per:other_family");
-		perSlots.add("per:charges");
-		
+		perSlots.addAll(SlotSchema.relationNames(SlotSchema.EntityType.PER));
 		
 		//add org slots
-		orgSlots.add("org:alternate_names");
-		orgSlots.add("org:political_religious_affiliation");
-		orgSlots.add("org:top_members_employees");
-		orgSlots.add("org:number_of_employees_members");
-		orgSlots.add("org:members");
-		
-		orgSlots.add("org:member_of");
-		orgSlots.add("org:subsidiaries");
-		orgSlots.add("org:parents");
-		orgSlots.add("org:founded_by");
-		orgSlots.add("org:date_founded");
-		
-		orgSlots.add("org:date_dissolved");
-		orgSlots.add("org:country_of_headquarters");
-		orgSlots.add("org:stateorprovince_of_headquarters");
-		orgSlots.add("org:city_of_headquarters");
-		orgSlots.add("org:shareholders");
-		orgSlots.add("org:website");
-	
+		orgSlots.addAll(SlotSchema.relationNames(SlotSchema.EntityType.ORG));
 		
 		String queryPrefix = new String("SF14_ENG_");
 		String delimiter = new String("~");
@@ -121,27 +77,6 @@ public class postProcessor {
 		}
 		
 	}
-	public void populateSingleValuedSlots(){
-		singleValuedSlots.add("per:date_of_birth");
-		singleValuedSlots.add("per:age");
-		singleValuedSlots.add("per:country_of_birth");
-		singleValuedSlots.add("per:stateorprovince_of_birth");
-		singleValuedSlots.add("per:city_of_birth");
-		singleValuedSlots.add("per:date_of_death");
-		singleValuedSlots.add("per:country_of_death");
-		singleValuedSlots.add("per:stateorprovince_of_death");
-		singleValuedSlots.add("per:city_of_death");
-		singleValuedSlots.add("per:cause_of_death");
-		singleValuedSlots.add("per:religion");
-		
-		singleValuedSlots.add("org:number_of_employees_members");
-		singleValuedSlots.add("org:website");
-		singleValuedSlots.add("org:city_of_headquarters");
-		singleValuedSlots.add("org:stateorprovince_of_headquarters");
-		singleValuedSlots.add("org:country_of_headquarters");
-		singleValuedSlots.add("org:date_dissolved");
-		singleValuedSlots.add("org:date_founded");
-	}
 	
 
 	public void writeOutputFile(String file) throws IOException{
@@ -169,14 +104,37 @@ public class postProcessor {
 		
 	}
 	public void processClassifierOutput(String infile, String year) throws IOException{
-		int nLines=0, nSkipped=0;
-		BufferedReader csv = null;
-		csv = new BufferedReader(new FileReader(infile));
-		String line;
-		csv.readLine(); //skip header
-		int expectedNumFields=10,predictedTargetFieldIndex=8,fillIndex=4;
-		int conf1Index=6, conf2Index=7;
-		
+		setColumns(year);
+		TsvReader csv = new TsvReader(infile);
+		try {
+			csv.next(); //skip header
+			while (csv.next()) {
+				processRow(csv.fields());
+			}
+		} finally {
+			csv.close();
+		}
+		printCounts();
+	}
+	
+	/*
+	 * takes the rows of classifier output, each with the fields of a
+	 * line of the predictions file; Pipeline passes them in directly
+	 */
+	public void processClassifierOutput(List<String[]> predictions, String year){
+		setColumns(year);
+		for(String[] data : predictions) {
+			processRow(data);
+		}
+		printCounts();
+	}
+	
+	/*
+	 * columns of the predictions file of year, and the counts reset
+	 */
+	void setColumns(String year){
+		nLines=0;
+		nSkipped=0;
 		if(year.equals("2013")){
 			expectedNumFields=12;
 			predictedTargetFieldIndex=10;
@@ -194,80 +152,64 @@ public class postProcessor {
 		else{
 			System.out.println("ERR: Invalid year");
 		}
-		while ((line = csv.readLine()) != null) {
-			nLines++;
-			String[] data = line.split("\t");
-			runid=data[2];
-			if(data.length<expectedNumFields)
-				continue;
-			if(data[predictedTargetFieldIndex].trim().equals("0")){
-				//classifer predicted that this is not a good extraction
-				//System.out.println("skipping line");
-				nSkipped++;
-				continue;
-			}
-			
-			//good extraction
-			String query_id = data[0] + "~" + data[1] + "~" + data[fillIndex];
-			String output_string = new String("");
-			if(data[fillIndex].equals("NIL")){
-				output_string +=  data [0] + "\t" + data [1] + "\t" + data [2] + "\t" + data [fillIndex];
-			}
-			else{
-				output_string +=  data [0] + "\t" + data [1] + "\t" + data [2] + "\t" + data [3];
-				output_string += "\t" + data [fillIndex] + "\t" + data [5] ;
-			}
-			
-			Double conf1=0.0, conf2=0.0;
-			conf1=Double.parseDouble(data[conf1Index]);
-			conf2=Double.parseDouble(data[conf2Index]);
-			Double diff=conf1-conf2;
-			
-			String key = data[0] + "~" + data[1];
-			if(singleValuedSlots.contains(data[1])){
-				//chose the highest confidence value for extraction				
-				if(filledSlots.contains(key)){
-					//find which extraction to keep
-					Double econf = new Double("0.0");
-					String oldkey = new String("");
-					for(String k : mpConfidence.keySet()){
-						if(k.contains(key)){
-							econf = mpConfidence.get(k);
-							oldkey = k;
-							break;
-						}
-					}
-					
-					Double max_conf=new Double(Double.max(conf1,conf2));
-					if(Double.compare(econf, max_conf)<0){
-						mpConfidence.remove(oldkey);
-						mpOutput.remove(oldkey);
-						mpConfidence.put(query_id, Double.max(conf1,conf2));
-						mpOutput.put(query_id, output_string);
+	}
+	
+	/*
+	 * takes one row of classifier output into the slot fills
+	 */
+	void processRow(String[] data){
+		nLines++;
+		runid=data[2];
+		if(data.length<expectedNumFields)
+			return;
+		if(data[predictedTargetFieldIndex].trim().equals("0")){
+			//classifer predicted that this is not a good extraction
+			//System.out.println("skipping line");
+			nSkipped++;
+			return;
+		}
+		
+		//good extraction
+		String query_id = data[0] + "~" + data[1] + "~" + data[fillIndex];
+		String output_string = new String("");
+		if(data[fillIndex].equals("NIL")){
+			output_string +=  data [0] + "\t" + data [1] + "\t" + data [2] + "\t" + data [fillIndex];
+		}
+		else{
+			output_string +=  data [0] + "\t" + data [1] + "\t" + data [2] + "\t" + data [3];
+			output_string += "\t" + data [fillIndex] + "\t" + data [5] ;
+		}
+		
+		Double conf1=0.0, conf2=0.0;
+		conf1=Double.parseDouble(data[conf1Index]);
+		conf2=Double.parseDouble(data[conf2Index]);
+		Double diff=conf1-conf2;
+		
+		String key = data[0] + "~" + data[1];
+		if(SlotSchema.isSingleValued(data[1])){
+			//chose the highest confidence value for extraction				
+			if(filledSlots.contains(key)){
+				//find which extraction to keep
+				Double econf = new Double("0.0");
+				String oldkey = new String("");
+				for(String k : mpConfidence.keySet()){
+					if(k.contains(key)){
+						econf = mpConfidence.get(k);
+						oldkey = k;
+						break;
 					}
 				}
-				else{
-					
-					if(diff<0){
-						if(data[fillIndex].equals("NIL")==false)
-							output_string += "\t" + conf2;
-						mpConfidence.put(query_id,conf2);
-					}
-					else{
-						if(data[fillIndex].equals("NIL")==false)
-							output_string += "\t" + conf1;
-						mpConfidence.put(query_id,conf1);
-					}
+				
+				Double max_conf=new Double(Double.max(conf1,conf2));
+				if(Double.compare(econf, max_conf)<0){
+					mpConfidence.remove(oldkey);
+					mpOutput.remove(oldkey);
+					mpConfidence.put(query_id, Double.max(conf1,conf2));
 					mpOutput.put(query_id, output_string);
-					filledSlots.add(key);
-					if(slotfills.containsKey(key)){
-						slotfills.remove(key);
-						slotfills.put(key,true);
-					}
-					
 				}
 			}
 			else{
+				
 				if(diff<0){
 					if(data[fillIndex].equals("NIL")==false)
 						output_string += "\t" + conf2;
@@ -284,9 +226,30 @@ public class postProcessor {
 					slotfills.remove(key);
 					slotfills.put(key,true);
 				}
+				
 			}
 		}
-		csv.close();
+		else{
+			if(diff<0){
+				if(data[fillIndex].equals("NIL")==false)
+					output_string += "\t" + conf2;
+				mpConfidence.put(query_id,conf2);
+			}
+			else{
+				if(data[fillIndex].equals("NIL")==false)
+					output_string += "\t" + conf1;
+				mpConfidence.put(query_id,conf1);
+			}
+			mpOutput.put(query_id, output_string);
+			filledSlots.add(key);
+			if(slotfills.containsKey(key)){
+				slotfills.remove(key);
+				slotfills.put(key,true);
+			}
+		}
+	}
+	
+	void printCounts(){
 		System.out.println("Total lines: "+nLines);
 		System.out.println("Skipped lines: "+nSkipped);
 	}
@@ -302,7 +265,6 @@ public class postProcessor {
 		String outFile=new String(args[1]);
 		String year = new String(args[2]);
 		postProcessor pp = new postProcessor();
-		pp.populateSingleValuedSlots();
 		pp.populateSlotFills();
 		pp.processClassifierOutput(fname,year);
 		pp.writeOutputFile(outFile);
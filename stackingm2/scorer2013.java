@@ -253,7 +253,7 @@ package stackingm2;
 import java.io.*;
 import java.util.*;
 
-public class scorer2013 {
+public class scorer2013 implements OutputCache.Tables {
 
     // true to print out judgement for each line of response
      boolean trace = false;
@@ -308,6 +308,20 @@ public class scorer2013 {
      Map<String,Double> mpConfidence = new HashMap<String,Double>();
      Map<String,Integer> mpTarget = new HashMap<String,Integer>();
      String runid = new String("stackingm2");
+
+    /**
+     *  the tables above, to take from or store in an OutputCache
+     */
+
+    public OutputCache.Outputs outputs () {
+	return new OutputCache.Outputs(mpConfidence, mpTarget, mpOutput);
+    }
+
+    public void setOutputs (OutputCache.Outputs outputs) {
+	mpConfidence = outputs.mpConfidence;
+	mpTarget = outputs.mpTarget;
+	mpOutput = outputs.mpOutput;
+    }
     
     // codes in judgement file
     // static final String CORRECT = "C";
@@ -333,6 +347,12 @@ public class scorer2013 {
 
      String slotFile = null;
 
+    // directory holding compiled key indexes (see KeyIndex); null to always parse the key file
+    String keyIndexDir = null;
+
+    // result of the last run
+    ScoreResult result = null;
+
      Set<String> slots = new TreeSet<String>();
 
     /**
@@ -352,6 +372,7 @@ public class scorer2013 {
 	    System.out.println ("\tnocase -- ignore case in matching answer string");
 	    System.out.println ("\tslots=<slotfile> -- take list of entityId:slot pairs from slotfile");
 	    System.out.println ("\t                    (otherwise list of pairs is taken from system responses)");
+	    System.out.println ("\tkeyindex=<dir> -- load the key from a compiled index in dir (built on first use)");
 	    System.exit(1);
 	}
 	String responseFile = args[0];
@@ -369,6 +390,8 @@ public class scorer2013 {
 		nocase = true;
 	    } else if (flag.startsWith("slots=")) {
 		slotFile = flag.substring(6);
+	    } else if (flag.startsWith("keyindex=")) {
+		keyIndexDir = flag.substring(9);
 	    } else {
 		System.out.println ("Unknown flag: " + flag);
 		System.exit(1);
@@ -377,159 +400,41 @@ public class scorer2013 {
 
 	// ----------- read in slot judgements ------------
 
-	BufferedReader keyReader = null;
-	try {
-	    keyReader = new BufferedReader (new FileReader(keyFile));
-	} catch (FileNotFoundException e) {
-	    System.out.println ("Unable to open judgement file " + keyFile);
-	    System.exit (1);
-	}
-	String line;
-	while ((line = keyReader.readLine()) != null) {
-	    String[] fields = line.trim().split("\t", 12);
-	    if (fields.length != 12) {
-		System.out.println ("Warning: Invalid line in judgement file:");
-		System.out.println (line);
-		continue;
-	    }
-
-	    String query_id = fields[1];  //  entity_id + ":" + slot_name
-	    query_id = query_id.replace(",","/");
-
-	    String doc_id = fields[2];
-	    // 2010 participant annotations may include NILs, but these need not be recorded
-	    if (doc_id.equals("NIL"))
-		continue;
-	    if (anydoc)
-		doc_id = "*";
-	    String answerString = fields[3];
-	    answerString = answerString.trim();
-	    if (nocase)
-		answerString = answerString.toLowerCase();
-	    String filleroff = fields[4];
-	    //	    filleroff = filleroff.trim();
-	    String entityoff = fields[5];
-	    //	    entityoff = entityoff.trim();
-	    String predoff = fields[6];
-	    //	    predoff = predoff.trim();
-
-	    if (ignoreoffsets) {
-		filleroff = "*";
-		entityoff = "*";
-		predoff = "*";
-	    }
-
-	    String filleroffjment = fields[7];
-	    String entityoffjment = fields[8];
-	    String predoffjment = fields[9];
-	    String jment = fields[10];
-	    int eclass = 0;
-	    try {
-		eclass = Integer.parseInt(fields[11]);
-	    } catch (NumberFormatException e) {
-		System.out.println ("Warning: Invalid line in judgement file -- invalid equivalence class:");
-		System.out.println (line);
-		continue;
-	    }
-	    if (eclass == 0)
-		eclass = eclass_generator++;
-
-	    String key = query_id + ":" + doc_id + ":" + predoff + ":" + entityoff + ":" + filleroff + ":" + answerString;
-	    String J = judgement.get(key);
-	    if (J != null) {  // this may happen under lenient matching: nocase, ignoreoffsets, or anydoc
-
-	    // manage different judgments: keep the strongest
-		if (! jment.equals(J)) {  
-		    String strongerJ = solveDisagreement(J, jment); // pick the stronger judgment, e.g., C is preferred over W
-		    System.out.println("Warning: Multiple conflicting judgments for response " + key + ": " + jment + " vs. " + J + " => we kept " + strongerJ);
-		    if(! strongerJ.equals(J)) {
-		    	// update judgment
-		    	judgement.put(key, strongerJ);
-		    	// we might need to move the old eclass in query_eclasses and query_kb_eclasses because of new jment
-		    	// remove old eclass from query_eclasses and query_kb_eclasses, if necessary
-		    	int oldEclass = equivalenceClass.get(key);
-		    	if(J.equals(CORRECT)) query_eclasses.get(query_id).remove(oldEclass);  // should never true, because CORRECT is strongest judgment
-		    	else if(J.equals(REDUNDANT)) query_kb_eclasses.get(query_id).remove(oldEclass);  // if, e.g., "Harvard President" is in KB and "Yale President" is not in KB.... remove "Harvard President"
-		    	// add it to query_eclasses and query_kb_eclasses, if necessary
-		    	if(strongerJ.equals(CORRECT)) {  
-		    		if (query_eclasses.get(query_id) == null)
-						query_eclasses.put(query_id, new HashSet<Integer>());
-				query_eclasses.get(query_id).add(oldEclass); // we'll end up collapsing oldEclass and eclass later
-		    	}
-		    	else if(strongerJ.equals(REDUNDANT)) {
-		    		if(query_kb_eclasses.get(query_id) == null)
-		    			query_kb_eclasses.put(query_id, new HashSet<Integer>());
-		    		query_kb_eclasses.get(query_id).add(oldEclass); // we'll end up collapsing oldEclass and eclass later
-		    	}
-		    }
-		}
-
-		// we do NOT update equivalenceClass, query_eclasses, and query_kb_eclasses here
-		// for now, we just keep track of equivalent eclasses 
-		// after reading all keys, we replace all equivalent eclasses with a single value
-		if(equivEclassesByKey.get(key) == null) 
-			equivEclassesByKey.put(key, new HashSet<Integer>());
-		equivEclassesByKey.get(key).add(eclass);  
-		equivEclassesByKey.get(key).add(equivalenceClass.get(key)); 
-
-	    } else { // new key, this is easy: we shouldn't have any conflicts
-	    	
-	    	//this is tracking the number of entries in judgement per slot type
-	    	
-	    String slot_type=fields[1].split(":",2)[1];
-	
-	    
-		judgement.put(key, jment);
-		equivalenceClass.put(key, eclass);
-		predoffjudgement.put(key, predoffjment);
-		entityoffjudgement.put(key, entityoffjment);
-		filleroffjudgement.put(key, filleroffjment);
-		if (jment.equals(CORRECT)) {
-		    if (query_eclasses.get(query_id) == null)
-			query_eclasses.put(query_id, new HashSet<Integer>());
-		    query_eclasses.get(query_id).add(eclass);
-		}
-		if (jment.equals(REDUNDANT)) {
-		    if (query_kb_eclasses.get(query_id) == null)
-			query_kb_eclasses.put(query_id, new HashSet<Integer>());
-		    query_kb_eclasses.get(query_id).add(eclass);
-		}
-		
+	if (keyIndexDir != null) {
+	    // reuse the compiled key for this lenient mode unless the key file has changed
+	    File indexFile = KeyIndex.indexFile(keyIndexDir, keyFile, "2013", KeyIndex.mode(anydoc, ignoreoffsets, nocase));
+	    String keyHash = KeyIndex.hash(keyFile);
+	    if (KeyIndex.read(indexFile, keyHash, judgementTables(), equivalenceClass, query_eclasses, query_kb_eclasses)) {
+		System.out.println ("Read " + judgement.size() + " judgements from key index " + indexFile);
+	    } else {
+		readKey(keyFile);
+		KeyIndex.write(indexFile, keyHash, judgementTables(), equivalenceClass, query_eclasses, query_kb_eclasses);
 	    }
-	}
-	System.out.println ("Read " + judgement.size() + " judgements.");
-
-	// normalize eclasses; necessary for the lenient scoring
-	for(String key: equivEclassesByKey.keySet()) {
-	        int normEclass = findSmallest(equivEclassesByKey.get(key)); 
-		equivalenceClass.put(key, normEclass);
-		String qid = qidFromKey(key);
-		normalizeTo(query_eclasses.get(qid), equivEclassesByKey.get(key), normEclass);
-		normalizeTo(query_kb_eclasses.get(qid), equivEclassesByKey.get(key), normEclass);
+	} else {
+	    readKey(keyFile);
 	}
 
 	// --------- read in system responses -------------
 
-	BufferedReader responseReader = null;
+	TsvReader responseReader = null;
 	try {
-	    responseReader = new BufferedReader (new FileReader(responseFile));
+	    responseReader = new TsvReader(responseFile);
 	} catch (FileNotFoundException e) {
 	    System.out.println ("Unable to open responses file " + responseFile);
 	    System.exit (1);
 	}
-	// String line;
-	while ((line = responseReader.readLine()) != null) {
-	    String[] fields = line.trim().split("\t", 10);
-	    if (fields.length < 4 | fields.length > 10) {
-		System.out.println ("Warning: Invalid line in responses file:  " + fields.length + " fields");
-		System.out.println (line);
+	while (responseReader.next()) {
+	    int numFields = responseReader.splitTrimmed(10);
+	    if (numFields < 4 | numFields > 10) {
+		System.out.println ("Warning: Invalid line in responses file:  " + numFields + " fields");
+		System.out.println (responseReader.line());
 		continue;
 	    }
-	    String entity = fields[0];
-	    String slot = fields[1];
+	    String entity = responseReader.field(0);
+	    String slot = responseReader.field(1);
 	    String query_id = entity + ":" + slot;
 	    //runid = fields[2];
-	    String doc_id = fields[3];
+	    String doc_id = responseReader.field(3);
 	    if (anydoc && !doc_id.equals("NIL"))
 		doc_id = "*";
 	    String answer_string = "";
@@ -540,14 +445,14 @@ public class scorer2013 {
 	    Double confidence = new Double(1.0);
 	    
 	    if (!doc_id.equals("NIL")) {
-		answer_string = ":" + fields[4].trim();
+		answer_string = ":" + responseReader.field(4).trim();
 		if (!ignoreoffsets) {
-		    filleroff = fields[5].trim();
-		    entityoff = fields[6].trim();
-		    predoff = fields[7].trim();
+		    filleroff = responseReader.field(5).trim();
+		    entityoff = responseReader.field(6).trim();
+		    predoff = responseReader.field(7).trim();
 		}
 		provenance = doc_id + ":" + predoff + ":" + entityoff + ":" + filleroff;
-		confidence=Double.parseDouble(fields[8].trim());
+		confidence=Double.parseDouble(responseReader.field(8).trim());
 	    }
 	    if (nocase)
 		answer_string = answer_string.toLowerCase();
@@ -560,7 +465,7 @@ public class scorer2013 {
 	    	output_string=entity+ "\t" + slot + "\t" + runid + "\t" + "NIL" + "\t" + "DUMMY" + "\t" + "DUMMY" + "\t" + "DUMMY" + "\t" + "DUMMY";
 	    }
 	    else{
-	    	 String ans = new String(fields[4].trim());
+	    	 String ans = new String(responseReader.field(4).trim());
 	    	 key = entity+"~"+slot+"~"+ans;
 	    	 output_string=entity+ "\t" + slot + "\t" + runid + "\t" + doc_id + "\t" + ans  + "\t" + predoff + "\t" + entityoff + "\t" + filleroff;
 	    }
@@ -572,50 +477,46 @@ public class scorer2013 {
 	    response.get(query_id).add(provenance + answer_string);
 	    slots.add(query_id);	    
 	}
+	responseReader.close();
 	System.out.println ("Read responses for " + response.size() + " slots.");
 
+	result = score();
+	new ConsoleReporter().report(result);
+    }
+
+
+    /**
+     *  scores the responses read by run() and records mpTarget;
+     *  prints nothing, warnings and trace lines go to the result
+     */
+
+    ScoreResult score () {
+	ScoreResult r = new ScoreResult();
+
 	// -------------- read list of slots ----------
 	//   separate into single and list valued slots
 
-	if (slotFile != null)
+	if (slotFile != null) {
 	     slots = new TreeSet<String>(readLines(slotFile));
-	List<String> svSlots = new ArrayList<String> ();
-	List<String> lSlots = new ArrayList<String> ();
+	     r.slotFile = slotFile;
+	}
 	for (String slot : slots) {
 	    String type = slotType(slot);
 	    if (type  == "single")
-		svSlots.add(slot);
+		r.num_sv_slots++;
 	    else if (type == "list")
-		lSlots.add(slot);
+		r.num_list_slots++;
 	}
 
 	// ------------- score responses ------------
 	//          for both single-valued and list-valued slots
 
-	// number of non-NIL responses, including those Redundant with reference KB
-	int num_responses = 0;
-	// number of correct non-NIL responses, excluding those Redundant with reference KB
-	int num_correct = 0;
-
-	// counts for different error types for responses
-	int num_wrong = 0;  // includes spurious and incorrect
-	int num_inexact = 0;
-	int num_redundant = 0;  // redundant with another returned response
-	int num_kb_redundant = 0;  // redundant with reference KB
-
-	// number of Correct answers in key (that aren't in reference KB)
-	//   (correct single-value answers + list-value equivalence classes)
-	int num_answers = 0;
-
-	// number of Redundant answers in key (that are in reference KB)
-	//   (list-value kb equivalence classes)
-	int num_kb_answers = 0;
-	
 	for (String query : slots) {
 		String targetKey = new String("");
 		String[] qfields = query.split(":");
 		targetKey=qfields[0] + "~" + qfields[1] + ":" + qfields[2];
 	    String type = slotType(query);
+	    ScoreResult.Counts q = r.query(query);
 	    int num_answers_to_query = 0;
 	    if (query_eclasses.get(query) != null) {
 		if (type == "list")
@@ -623,11 +524,11 @@ public class scorer2013 {
 		else if (type == "single")
 		    num_answers_to_query = 1;
 		else {
-		    System.out.println ("Warning: unrecognizable slot type " + query);
+		    r.message ("Warning: unrecognizable slot type " + query);
 		    continue;
 		}
 	    }
-	    num_answers += num_answers_to_query;
+	    q.answers += num_answers_to_query;
 	    
 
 	    int num_kb_answers_to_query = 0;
@@ -637,11 +538,11 @@ public class scorer2013 {
 		else if (type == "single")  // this shouldn't happen if SF query entities enumerate single-valued slots to ignore because they're already filled in the reference KB
 		    num_kb_answers_to_query = 1;
 		else {
-		    System.out.println ("Warning: unrecognizable slot type " + query);
+		    r.message ("Warning: unrecognizable slot type " + query);
 		    continue;
 		}
 	    }
-	    num_kb_answers += num_kb_answers_to_query;
+	    q.kb_answers += num_kb_answers_to_query;
 	    
 	    
 	   
@@ -650,16 +551,18 @@ public class scorer2013 {
 
 	    List<String> responseList = response.get(query);
 	    if (responseList == null) {
-		System.out.println ("Warning: No system response for slot " + query);
+		r.message ("Warning: No system response for slot " + query);
 		continue;
 	    }
 	    int num_responses_to_query = responseList.size();  // used only for issuing warnings, not for computing scores
 	    if (type == "single") {
 		if (num_responses_to_query > 1) {
-		    System.out.println ("Warning: Ignoring all but first response among multiple responses for single-valued slot " + query);
+		    r.message ("Warning: Ignoring all but first response among multiple responses for single-valued slot " + query);
 		    responseList = responseList.subList(0,0);
 		    num_responses_to_query = responseList.size();
 		    if (num_responses_to_query != 1) {
+			for (String message : r.messages)
+			    System.out.println (message);
 			System.out.println ("Error: unable to take first of multiple responses for single-valued slot for query " + query);
 			System.exit (1);
 		    }
@@ -676,7 +579,7 @@ public class scorer2013 {
 		String symbol = "?";
 		if (doc_id.equals("NIL")) {
 		    if (num_responses_to_query > 1)
-			System.out.println ("Warning: More than one response, including NIL, for " + query);
+			r.message ("Warning: More than one response, including NIL, for " + query);
 		    num_responses_to_query = 0; //issue warning only once for query; don't warn again when we encounter other, possibly non-NIL, responses to query
 		    if (num_answers_to_query > 0) {
 			// missing filler in system response
@@ -693,32 +596,32 @@ public class scorer2013 {
 		    else
 		    	mpTarget.put(tkey,0);
 		} else /* non-NIL system response */ {
-		    num_responses++;
+		    q.responses++;
 		    String key = query + ":" + responseString;
 		    tkey += "~" + fields[4] ;
 		    String J = judgement.get(key);
 		    if (J == null) {
-			System.out.println ("Warning: No judgement for " + key);
+			r.message ("Warning: No judgement for " + key);
 			J = WRONG;
 		    }
 		    symbol = J;
 		    if (J.equals(IGNORE) || J.equals(WRONG)) {
-			num_wrong++;
+			q.wrong++;
 			
 			//adding target for this response
 			mpTarget.put(tkey,0);
 		    } else if (J.equals(INEXACT)) {
-			num_inexact++;
+			q.inexact++;
 			
 			//adding target for this response
 			mpTarget.put(tkey,0);
 		    } else if (J.equals(REDUNDANT)) {
 			Integer E = equivalenceClass.get(key);
 			if (distincts.contains(E)) {
-			    num_redundant++;
+			    q.redundant++;
 			    symbol = "r";   // redundant with other returned response
 			} else {
-			    num_kb_redundant++;
+			    q.kb_redundant++;
 			    distincts.add(E);
 			}
 			
@@ -727,13 +630,13 @@ public class scorer2013 {
 		    } else if (J.equals(CORRECT)) {
 			Integer E = equivalenceClass.get(key);
 			if (distincts.contains(E)) {
-			    num_redundant++;
+			    q.redundant++;
 			    symbol = "r";   // redundant with other returned response
 			    
 			    //adding target for this response
 			    mpTarget.put(tkey,2);
 			} else {
-			    num_correct++;
+			    q.correct++;
 			    distincts.add(E);
 			    
 			  //adding target for this response
@@ -745,47 +648,164 @@ public class scorer2013 {
 		    }
 		}
 	    if (trace)
-		System.out.println (symbol + " " + query + " " + responseString);
+		r.message (symbol + " " + query + " " + responseString);
 	    }
 	}
 
-	System.out.println ("\n======== Summary Statistics ===========");
-	if (slotFile != null)
-	    System.out.println ("Slot lists taken from file " + slotFile);
-	else
-	    System.out.println ("Slot lists taken from system responses");
-	System.out.println ("Slot lists include " + svSlots.size() + " single valued slots");
-	System.out.println ("               and " +  lSlots.size() + " list-valued slots");
-	System.out.println ("\nNumber of filled slots in key that are not in reference KB: " + num_answers);
-	System.out.println ("Number of filled slots in key that are in reference KB: " + num_kb_answers);
-	System.out.println ("\nNumber of filled slots in responses: " + num_responses);
-	System.out.println ("\tNumber Correct (not in reference KB): " + num_correct);
-	System.out.println ("\tNumber Redundant with reference KB: " + num_kb_redundant);
-	System.out.println ("\tNumber redundant with another response: " + num_redundant);
-	System.out.println ("\tNumber inexact: " + num_inexact);
-	System.out.println ("\tNumber incorrect / spurious: " + num_wrong);
-
-	float recall;
-	float precision;
-	float F;
-
-	recall = ((float) num_correct) / num_answers;
-	precision = ((float) num_correct) / (num_responses - num_kb_redundant);  // don't penalize for fillers already in reference KB
-	F = (2 * recall * precision) / (recall + precision);
-	System.out.println ("\nDiagnostic scores (ignoring slot fillers in key and responses that are already in reference KB):");
-	System.out.println ("\tDiagnostic Recall: " + num_correct + " / " + num_answers + " = " + recall);
-	System.out.println ("\tDiagnostic Precision: " + num_correct + " / (" + num_responses + "-" + num_kb_redundant + ") = " + precision);
-	System.out.println ("\tDiagnostic F1: " + F);
-
-	recall = ((float) (num_correct + num_kb_redundant)) / (num_answers + num_kb_answers);
-	precision = ((float) (num_correct + num_kb_redundant)) / (num_responses);  
-	F = (2 * recall * precision) / (recall + precision);
-	System.out.println ("\nOfficial Scores (requiring slot fillers that are already in reference KB):");
-	System.out.println ("\tRecall: (" + num_correct + "+" + num_kb_redundant + ") / (" + num_answers + "+" + num_kb_answers + ") = " + recall);
-	System.out.println ("\tPrecision: (" + num_correct + "+" + num_kb_redundant + ") / " + num_responses + " = " + precision);
-	System.out.println ("\tF1: " + F);
-	
+	r.finish();
+	return r;
+    }
+
+
+    /**
+     *  reads the key file into the judgement tables and normalizes
+     *  equivalence classes for lenient matching
+     */
+
+    void readKey (String keyFile) throws IOException {
+	TsvReader keyReader = null;
+	try {
+	    keyReader = new TsvReader(keyFile);
+	} catch (FileNotFoundException e) {
+	    System.out.println ("Unable to open judgement file " + keyFile);
+	    System.exit (1);
+	}
+	while (keyReader.next()) {
+	    int numFields = keyReader.splitTrimmed(12);
+	    if (numFields != 12) {
+		System.out.println ("Warning: Invalid line in judgement file:");
+		System.out.println (keyReader.line());
+		continue;
+	    }
+
+	    String query_id = keyReader.field(1);  //  entity_id + ":" + slot_name
+	    query_id = query_id.replace(",","/");
+
+	    String doc_id = keyReader.field(2);
+	    // 2010 participant annotations may include NILs, but these need not be recorded
+	    if (doc_id.equals("NIL"))
+		continue;
+	    if (anydoc)
+		doc_id = "*";
+	    String answerString = keyReader.field(3);
+	    answerString = answerString.trim();
+	    if (nocase)
+		answerString = answerString.toLowerCase();
+	    String filleroff = keyReader.field(4);
+	    //	    filleroff = filleroff.trim();
+	    String entityoff = keyReader.field(5);
+	    //	    entityoff = entityoff.trim();
+	    String predoff = keyReader.field(6);
+	    //	    predoff = predoff.trim();
+
+	    if (ignoreoffsets) {
+		filleroff = "*";
+		entityoff = "*";
+		predoff = "*";
+	    }
+
+	    String filleroffjment = keyReader.field(7);
+	    String entityoffjment = keyReader.field(8);
+	    String predoffjment = keyReader.field(9);
+	    String jment = keyReader.field(10);
+	    int eclass = 0;
+	    try {
+		eclass = Integer.parseInt(keyReader.field(11));
+	    } catch (NumberFormatException e) {
+		System.out.println ("Warning: Invalid line in judgement file -- invalid equivalence class:");
+		System.out.println (keyReader.line());
+		continue;
+	    }
+	    if (eclass == 0)
+		eclass = eclass_generator++;
+
+	    String key = query_id + ":" + doc_id + ":" + predoff + ":" + entityoff + ":" + filleroff + ":" + answerString;
+	    String J = judgement.get(key);
+	    if (J != null) {  // this may happen under lenient matching: nocase, ignoreoffsets, or anydoc
+
+	    // manage different judgments: keep the strongest
+		if (! jment.equals(J)) {  
+		    String strongerJ = solveDisagreement(J, jment); // pick the stronger judgment, e.g., C is preferred over W
+		    System.out.println("Warning: Multiple conflicting judgments for response " + key + ": " + jment + " vs. " + J + " => we kept " + strongerJ);
+		    if(! strongerJ.equals(J)) {
+		    	// update judgment
+		    	judgement.put(key, strongerJ);
+		    	// we might need to move the old eclass in query_eclasses and query_kb_eclasses because of new jment
+		    	// remove old eclass from query_eclasses and query_kb_eclasses, if necessary
+		    	int oldEclass = equivalenceClass.get(key);
+		    	if(J.equals(CORRECT)) query_eclasses.get(query_id).remove(oldEclass);  // should never true, because CORRECT is strongest judgment
+		    	else if(J.equals(REDUNDANT)) query_kb_eclasses.get(query_id).remove(oldEclass);  // if, e.g., "Harvard President" is in KB and "Yale President" is not in KB.... remove "Harvard President"
+		    	// add it to query_eclasses and query_kb_eclasses, if necessary
+		    	if(strongerJ.equals(CORRECT)) {  
+		    		if (query_eclasses.get(query_id) == null)
+						query_eclasses.put(query_id, new HashSet<Integer>());
+				query_eclasses.get(query_id).add(oldEclass); // we'll end up collapsing oldEclass and eclass later
+		    	}
+		    	else if(strongerJ.equals(REDUNDANT)) {
+		    		if(query_kb_eclasses.get(query_id) == null)
+		    			query_kb_eclasses.put(query_id, new HashSet<Integer>());
+		    		query_kb_eclasses.get(query_id).add(oldEclass); // we'll end up collapsing oldEclass and eclass later
+		    	}
+		    }
+		}
+
+		// we do NOT update equivalenceClass, query_eclasses, and query_kb_eclasses here
+		// for now, we just keep track of equivalent eclasses 
+		// after reading all keys, we replace all equivalent eclasses with a single value
+		if(equivEclassesByKey.get(key) == null) 
+			equivEclassesByKey.put(key, new HashSet<Integer>());
+		equivEclassesByKey.get(key).add(eclass);  
+		equivEclassesByKey.get(key).add(equivalenceClass.get(key)); 
+
+	    } else { // new key, this is easy: we shouldn't have any conflicts
+	    	
+	    	//this is tracking the number of entries in judgement per slot type
+	    	
+	    String slot_type=keyReader.field(1).split(":",2)[1];
 	
+	    
+		judgement.put(key, jment);
+		equivalenceClass.put(key, eclass);
+		predoffjudgement.put(key, predoffjment);
+		entityoffjudgement.put(key, entityoffjment);
+		filleroffjudgement.put(key, filleroffjment);
+		if (jment.equals(CORRECT)) {
+		    if (query_eclasses.get(query_id) == null)
+			query_eclasses.put(query_id, new HashSet<Integer>());
+		    query_eclasses.get(query_id).add(eclass);
+		}
+		if (jment.equals(REDUNDANT)) {
+		    if (query_kb_eclasses.get(query_id) == null)
+			query_kb_eclasses.put(query_id, new HashSet<Integer>());
+		    query_kb_eclasses.get(query_id).add(eclass);
+		}
+		
+	    }
+	}
+	keyReader.close();
+	System.out.println ("Read " + judgement.size() + " judgements.");
+
+	// normalize eclasses; necessary for the lenient scoring
+	for(String key: equivEclassesByKey.keySet()) {
+	        int normEclass = findSmallest(equivEclassesByKey.get(key)); 
+		equivalenceClass.put(key, normEclass);
+		String qid = qidFromKey(key);
+		normalizeTo(query_eclasses.get(qid), equivEclassesByKey.get(key), normEclass);
+		normalizeTo(query_kb_eclasses.get(qid), equivEclassesByKey.get(key), normEclass);
+	}
+    }
+
+    /**
+     *  judgement tables keyed by response key, in the order stored in a KeyIndex
+     */
+
+    List<Map<String, String>> judgementTables () {
+    	List<Map<String, String>> tables = new ArrayList<Map<String, String>>();
+    	tables.add(judgement);
+    	tables.add(predoffjudgement);
+    	tables.add(entityoffjudgement);
+    	tables.add(filleroffjudgement);
+    	return tables;
     }
 
     /**
@@ -814,82 +834,19 @@ public class scorer2013 {
 	return lines;
     }
 
-    static List<String> singleValuedSlots = Arrays.asList(
-	"per:date_of_birth",
-	"per:age",
-	"per:country_of_birth",
-	"per:stateorprovince_of_birth",
-	"per:city_of_birth",
-	"per:date_of_death",
-	"per:country_of_death",
-	"per:stateorprovince_of_death",
-	"per:city_of_death",
-	"per:cause_of_death",
-	"per:religion",
-	"org:number_of_employees_members",
-	"org:date_founded",
-	"org:date_dissolved",
-	"org:country_of_headquarters",
-	"org:stateorprovince_of_headquarters",
-	"org:city_of_headquarters",
-	"org:website");
-
-    static List<String> listValuedSlots = Arrays.asList(
-	"per:alternate_names",
-	"per:origin",
-	"per:countries_of_residence",
-	"per:statesorprovinces_of_residence",
-	"per:cities_of_residence",
-	"per:schools_attended",
-	"per:title",
-	//	"per:member_of",
-	//	"per:employee_of",
-	"per:employee_or_member_of",
-	"per:spouse",
-	"per:children",
-	"per:parents",
-	"per:siblings",
-	"per:other_family",
-	"per:charges",
-	"org:alternate_names",
-	"org:political_religious_affiliation",
-	"org:top_members_employees",
-	"org:members",
-	"org:member_of",
-	"org:subsidiaries",
-	"org:parents",
-	"org:founded_by",
-	"org:shareholders",
-	"per:awards_won",
-	"per:charities_supported",
-	"per:diseases",
-	"org:products",
-	"per:pos-from",
-	"per:neg-from",
-	"per:pos-towards",
-	"per:neg-towards",
-	"org:pos-from",
-	"org:neg-from",
-	"org:pos-towards",
-	"org:neg-towards",
-	"gpe:pos-from",
-	"gpe:neg-from",
-	"gpe:pos-towards",
-	"gpe:neg-towards");
     /*
      * given entityId:slot, classify slot as "single" or "list" valued
      */
 
     static String slotType (String slot) {
-	String[] slotFields = slot.split(":", 2);
-	if (slotFields.length != 2) {
+	int colon = slot.indexOf(':');
+	if (colon < 0) {
 	    System.out.println("Invalid slot " + slot);
 	    return "error";
 	}
-	if (singleValuedSlots.contains(slotFields[1]))
-	    return "single";
-	if (listValuedSlots.contains(slotFields[1]))
-	    return "list";
+	SlotSchema slotSchema = SlotSchema.parse(slot, colon + 1, slot.length());
+	if (slotSchema != null)
+	    return slotSchema.single ? "single" : "list";
 	System.out.println("Invalid slot " + slot);
         // return "list" if you want 2009 slots to be scored too
 	return "error"; 
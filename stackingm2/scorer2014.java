@@ -362,11 +362,14 @@ package stackingm2;
 import java.io.*;
 import java.util.*;
 
-public class scorer2014 {
+public class scorer2014 implements OutputCache.Tables {
 
  // true to print out judgement for each line of response
   boolean trace = false;
 
+ // file to write the judgement of each line of response to (see JudgmentLog); null for none
+  String traceFile = null;
+
  // true to ignore docId ... match only on answerString
   boolean anydoc = false;
 
@@ -376,63 +379,48 @@ public class scorer2014 {
  // true to ignore case in answerString
   boolean nocase = false;
 
- // tables built from judgement file
- // provenance is relationProv\tfillerProv
-
- //  mapping from entity_id:slot_name\tprovenance\tresponse_string --> judgement for filler (response_string and provenance)
-  Map<String, String> judgement = new HashMap<String, String> ();
+ //book keep confidence values for each query,slot (filled in from the ResponseScorer of the last run)
+  Map<String,String> mpOutput = new HashMap<String,String>();
+  Map<String,Double> mpConfidence = new HashMap<String,Double>();
+  Map<String,Integer> mpTarget = new HashMap<String,Integer>();
+  String runid = new String("stackingm2");
 
- //  mapping from entity_id:slot_name\tprovenance\tresponse_string --> judgement for relation provenance
-  Map<String, String> relationProvjudgement = new HashMap<String, String> ();
+ /**
+  *  the tables above, to take from or store in an OutputCache
+  */
 
- //  mapping from entity_id:slot_name\tprovenance\tresponse_string --> equivalence class of Correct or Redundant answers
-  Map<String, Integer> equivalenceClass = new HashMap<String, Integer> ();
+ public OutputCache.Outputs outputs () {
+	return new OutputCache.Outputs(mpConfidence, mpTarget, mpOutput);
+ }
 
- //  mapping from entity_id:slot_name --> set of equivalence classes for Correct answers not in the reference KB
-  Map<String, Set<Integer>> query_eclasses = new HashMap<String, Set<Integer>> ();
+ public void setOutputs (OutputCache.Outputs outputs) {
+	mpConfidence = outputs.mpConfidence;
+	mpTarget = outputs.mpTarget;
+	mpOutput = outputs.mpOutput;
+ }
 
- //  mapping from entity_id:slot_name --> set of equivalence classes for Correct answers already in the reference KB
-  Map<String, Set<Integer>> query_kb_eclasses = new HashMap<String, Set<Integer>> ();
+  String slotFile = null;
 
- // table built from responses file
+ // directory holding compiled key indexes (see KeyIndex); null to always parse the key file
+  String keyIndexDir = null;
 
- //  mapping from entity_id:slot_name --> list[provenance\tresponse_string]
-  Map<String, List<String>> response = new HashMap <String, List<String>> ();
+ // file to write the precision/recall curve over response confidence to (see ThresholdSweep); null for none
+  String curveFile = null;
 
- // keeps track of equivalent eclasses (necessary due to lenient matching)
-  Map<String, Set<Integer>> equivEclassesByKey = new HashMap<String, Set<Integer>> ();
-  
-  //book keep confidence values for each query,slot
-  Map<String,String> mpOutput = new HashMap<String,String>();
-  Map<String,Double> mpConfidence = new HashMap<String,Double>();
-  Map<String,Integer> mpTarget = new HashMap<String,Integer>();
-  String runid = new String("stackingm2");
- 
- // codes in judgement file
- // static final String CORRECT = "C";
- // static final String REDUNDANT = "R";
- // static final String INEXACT = "X";
- // static final String WRONG = "W";
- // static final String IGNORE = "I";
- // static final String NORESPONSE = "0";
- // static final String INEXACT_LONG = "L";
- // static final String INEXACT_SHORT = "S";
+ // true to score the responses one query at a time (see ResponseScorer.scoreGrouped); mpOutput, mpConfidence and mpTarget stay empty
+  boolean stream = false;
 
-  String CORRECT = "C";
-  String REDUNDANT = "R";
-  String INEXACT = "X";
-  String WRONG = "W";
-  String IGNORE = "I";
-  String NORESPONSE = "0";
-  String INEXACT_LONG = "L";
-  String INEXACT_SHORT = "S";
+ // file to keep per query scores in between runs (see IncrementalScorer); null for none
+  String cacheFile = null;
 
- // next unique equivalence class
-  int eclass_generator = 1000000;
+ // MD5 of the key file, needed to tag the cache
+  String keyHash = null;
 
-  String slotFile = null;
+ // true to load only the key lines of the queries scored (those in the slot file, or else in the responses)
+  boolean lazyKey = false;
 
-  Set<String> slots = new TreeSet<String>();
+ // result of the last run
+  ScoreResult result = null;
 
  /**
   *  SFScorer <responses file> <key file>
@@ -440,17 +428,23 @@ public class scorer2014 {
   */
 
  public  void run (String[] args) throws IOException {
-	 System.out.println("helloworld!");
-	if (args.length < 2 || args.length > 7) {
-	    System.out.println ("SlotScorer must be invoked with 2 to 8 arguments:");
+	if (args.length < 2 || args.length > 13) {
+	    System.out.println ("SlotScorer must be invoked with 2 to 13 arguments:");
 	    System.out.println ("\t<responses file>  <key file> [flag ...]");
 	    System.out.println ("flags:");
 	    System.out.println ("\ttrace  -- print a line with assessment of each system response");
+	    System.out.println ("\ttrace=<file> -- write the assessment of each system response to a binary judgment log");
 	    System.out.println ("\tanydoc -- judge response based only on answer string, ignoring doc id(s) and justification offsets");
 	    System.out.println ("\tignoreoffsets -- judge response based on answer string and doc id(s), ignoring justification offsets");
 	    System.out.println ("\tnocase -- ignore case in matching answer string");
 	    System.out.println ("\tslots=<slotfile> -- take list of entityId:slot pairs from slotfile");
 	    System.out.println ("\t                    (otherwise list of pairs is taken from system responses)");
+	    System.out.println ("\tkeyindex=<dir> -- load the key from a compiled index in dir (built on first use)");
+	    System.out.println ("\tcurve=<file> -- write precision, recall and F1 at every confidence threshold to file");
+	    System.out.println ("\tstream -- score each query as soon as its responses are read; the responses file must be grouped by query");
+	    System.out.println ("\tcache=<file> -- keep per query scores in file and only re-score queries whose responses changed");
+	    System.out.println ("\tlazykey -- load only the key lines of the queries in slotfile, or else in the responses file");
+	    System.out.println ("\t           (with keyindex=<dir>, through an index of the key file by query)");
 	    System.exit(1);
 	}
 	String responseFile = args[0];
@@ -459,6 +453,8 @@ public class scorer2014 {
 	    String flag = args[i];
 	    if (flag.equals("trace")) {
 		trace = true;
+	    } else if (flag.startsWith("trace=")) {
+		traceFile = flag.substring(6);
 	    } else if (flag.equals("anydoc")) {
 		anydoc = true;
 		ignoreoffsets = true;
@@ -468,408 +464,87 @@ public class scorer2014 {
 		nocase = true;
 	    } else if (flag.startsWith("slots=")) {
 		slotFile = flag.substring(6);
+	    } else if (flag.startsWith("keyindex=")) {
+		keyIndexDir = flag.substring(9);
+	    } else if (flag.startsWith("curve=")) {
+		curveFile = flag.substring(6);
+	    } else if (flag.equals("stream")) {
+		stream = true;
+	    } else if (flag.startsWith("cache=")) {
+		cacheFile = flag.substring(6);
+	    } else if (flag.equals("lazykey")) {
+		lazyKey = true;
 	    } else {
 		System.out.println ("Unknown flag: " + flag);
 		System.exit(1);
 	    }
 	}
-
-	// ----------- read in slot judgements ------------
-
-	BufferedReader keyReader = null;
-	try {
-	    keyReader = new BufferedReader (new FileReader(keyFile));
-	} catch (FileNotFoundException e) {
-	    System.out.println ("Unable to open judgement file " + keyFile);
-	    System.exit (1);
-	}
-	String line;
-	while ((line = keyReader.readLine()) != null) {
-	    String[] fields = line.trim().split("\t", 8);
-	    if (fields.length != 8) {
-		System.out.println ("Warning: Invalid line in judgement file:");
-		System.out.println (line);
-		continue;
-	    }
-
-	    String query_id = fields[1];  //  entity_id + ":" + slot_name
-	    query_id = query_id.replace(",","/");
-
-	    String relationProv = fields[2];
-	    // 2010 participant annotations may include NILs, but these need not be recorded
-	    if (relationProv.equals("NIL"))
-		continue;
-     relationProv = sortSpans(relationProv); // TODO: need to sort spans in relationProv for lenient (unofficial) scoring
-
-	    String answerString = fields[3];
-	    answerString = answerString.trim();
-	    if (nocase)
-		answerString = answerString.toLowerCase();
-
-	    String fillerProv = fields[4];
-	    fillerProv = fillerProv.trim();
-	    fillerProv = sortSpans(fillerProv); // TODO: need to sort spans in fillerProv for lenient (unofficial) scoring
-
-	    if (anydoc) { // ignore both relation provenance and filler provenance
-		relationProv = "*";
-		fillerProv = "*";
-	    }
-	    if (ignoreoffsets) { // TODO: remove offsets from spans, keep just the docs, remove duplicate docs
-		fillerProv = removeOffsets(fillerProv);
-		relationProv = removeOffsets(relationProv);
-	    }
-
-	    String jment = fields[5]; // overall judgment for the response
-	    String relationProvjment = fields[6];
-	    int eclass = 0;
-	    try {
-		eclass = Integer.parseInt(fields[7]);
-	    } catch (NumberFormatException e) {
-		System.out.println ("Warning: Invalid line in judgement file -- invalid equivalence class:");
-		System.out.println (line);
-		continue;
-	    }
-	    if (eclass == 0)
-		eclass = eclass_generator++;
-
-	    String key = query_id + "\t" + relationProv +  "\t" + fillerProv + "\t" + answerString;
-        //System.out.println("USING KEY: " + key);
-	    String J = judgement.get(key);
-	    if (J != null) {  // this may happen under lenient matching: nocase, ignoreoffsets, or anydoc
-
-	    // manage different judgments: keep the strongest
-		if (! jment.equals(J)) {  
-		    String strongerJ = solveDisagreement(J, jment); // pick the stronger judgment, e.g., C is preferred over W
-		   // System.out.println("Warning: Multiple conflicting judgments for response " + key + ": " + jment + " vs. " + J + " => we kept " + strongerJ);
-		    if(! strongerJ.equals(J)) {
-		    	// update judgment
-		    	judgement.put(key, strongerJ);
-		    	// we might need to move the old eclass in query_eclasses and query_kb_eclasses because of new jment
-		    	// remove old eclass from query_eclasses and query_kb_eclasses, if necessary
-		    	int oldEclass = equivalenceClass.get(key);
-		    	if(J.equals(CORRECT)) query_eclasses.get(query_id).remove(oldEclass);  // should never true, because CORRECT is strongest judgment
-		    	else if(J.equals(REDUNDANT)) query_kb_eclasses.get(query_id).remove(oldEclass);  // if, e.g., "Harvard President" is in KB and "Yale President" is not in KB.... remove "Harvard President"
-		    	// add it to query_eclasses and query_kb_eclasses, if necessary
-		    	if(strongerJ.equals(CORRECT)) {  
-		    		if (query_eclasses.get(query_id) == null)
-						query_eclasses.put(query_id, new HashSet<Integer>());
-				query_eclasses.get(query_id).add(oldEclass); // we'll end up collapsing oldEclass and eclass later
-		    	}
-		    	else if(strongerJ.equals(REDUNDANT)) {
-		    		if(query_kb_eclasses.get(query_id) == null)
-		    			query_kb_eclasses.put(query_id, new HashSet<Integer>());
-		    		query_kb_eclasses.get(query_id).add(oldEclass); // we'll end up collapsing oldEclass and eclass later
-		    	}
-		    }
-		}
-
-		// we do NOT update equivalenceClass, query_eclasses, and query_kb_eclasses here
-		// for now, we just keep track of equivalent eclasses 
-		// after reading all keys, we replace all equivalent eclasses with a single value
-		if(equivEclassesByKey.get(key) == null) 
-			equivEclassesByKey.put(key, new HashSet<Integer>());
-		equivEclassesByKey.get(key).add(eclass);  
-		equivEclassesByKey.get(key).add(equivalenceClass.get(key));
-
-	    } else { // new key, this is easy: we shouldn't have any conflicts
-		judgement.put(key, jment);
-		equivalenceClass.put(key, eclass);
-		relationProvjudgement.put(key, relationProvjment);
-		if (jment.equals(CORRECT)) {
-		    if (query_eclasses.get(query_id) == null)
-			query_eclasses.put(query_id, new HashSet<Integer>());
-		    query_eclasses.get(query_id).add(eclass);
-		}
-		if (jment.equals(REDUNDANT)) {
-		    if (query_kb_eclasses.get(query_id) == null)
-			query_kb_eclasses.put(query_id, new HashSet<Integer>());
-		    query_kb_eclasses.get(query_id).add(eclass);
-		}
-		
-	    }
-	}
-	System.out.println ("Read " + judgement.size() + " judgements.");
-
-	// normalize eclasses; necessary for the lenient scoring
-	for(String key: equivEclassesByKey.keySet()) {
-	        int normEclass = findSmallest(equivEclassesByKey.get(key)); 
-		equivalenceClass.put(key, normEclass);
-		String qid = qidFromKey(key);
-		normalizeTo(query_eclasses.get(qid), equivEclassesByKey.get(key), normEclass);
-		normalizeTo(query_kb_eclasses.get(qid), equivEclassesByKey.get(key), normEclass);
+	if (stream && curveFile != null) {
+	    System.out.println ("curve= needs all responses at once and cannot be combined with stream");
+	    System.exit(1);
 	}
-
-	// --------- read in system responses -------------
-
-	BufferedReader responseReader = null;
-	try {
-	    responseReader = new BufferedReader (new FileReader(responseFile));
-	} catch (FileNotFoundException e) {
-	    System.out.println ("Unable to open responses file " + responseFile);
-	    System.exit (1);
+	if (stream && cacheFile != null) {
+	    System.out.println ("cache= cannot be combined with stream");
+	    System.exit(1);
 	}
-	// String line;
-	while ((line = responseReader.readLine()) != null) {
-	    String[] fields = line.trim().split("\t", 7);
-	    if (fields.length < 4 | fields.length > 7) {
-		System.out.println ("Warning: Invalid line in responses file:  " + fields.length + " fields");
-		System.out.println (line);
-		continue;
-	    }
-	    String entity = fields[0];
-	    String slot = fields[1];
-	  //  runid = fields[2];
-	    String query_id = entity + ":" + slot;
-	    String relationProv = fields[3]; 
-     relationProv = sortSpans(relationProv); // TODO: need to sort spans in relationProv for lenient (unofficial) scoring
-     Double confidence = new Double(1.0);
-	    if (anydoc && !relationProv.equals("NIL"))
-		  relationProv = "*";
-	    String answer_string = "";
-	    String fillerProv = "*";
-	    String provenance = relationProv;
-	    
-	    if (!relationProv.equals("NIL")) {
-		answer_string = "\t" + fields[4].trim();
-		if (!ignoreoffsets) {
-		    fillerProv = fields[5].trim(); 
-         fillerProv = sortSpans(fillerProv); // TODO: need to sort spans in fillerProv for lenient (unofficial) scoring
-		} else if(! anydoc) {
-         // TODO: else if ignore offsets: remove offsets from spans, keep just the docs, remove duplicate docs
-         fillerProv = removeOffsets(fields[5].trim());
-         relationProv = removeOffsets(relationProv);            
-     }
-		confidence=Double.parseDouble(fields[6].trim());
-		provenance = relationProv + "\t"  + fillerProv;
-	    }
-	    if (nocase)
-		answer_string = answer_string.toLowerCase();
-	    String key=new String("");
-	    String output_string=new String("");
-	    if(relationProv.equals("NIL")){
-	    	key = entity+"~"+slot+"~"+"NIL";
-	    	output_string=entity+ "\t" + slot + "\t" + runid + "\t" + "DUMMY"+ "\t" + "NIL" + "\t" + "DUMMY" ;
-	    }
-	    else{
-	    	 String ans = new String(fields[4].trim());
-	    	 key = entity+"~"+slot+"~"+ans;
-	    	 output_string=entity+ "\t" + slot + "\t" + runid  + "\t" +relationProv + answer_string+ "\t" + fillerProv;
-	    }
-	    mpConfidence.put(key, confidence);
-	    mpOutput.put(key, output_string);
-	    if (response.get(query_id) == null)
-		response.put(query_id, new ArrayList<String>());
-     //System.out.println("ADDING TO RESPONSES: " + query_id + " WITH " + relationProv + " AND " + fillerProv + " AND " + answer_string);
-	    response.get(query_id).add(provenance + answer_string);
-	    slots.add(query_id);
+	if (traceFile != null && cacheFile != null) {
+	    System.out.println ("trace= needs every query scored and cannot be combined with cache=");
+	    System.exit(1);
 	}
-	System.out.println ("Read responses for " + response.size() + " slots.");
-
-	// -------------- read list of slots ----------
-	//   separate into single and list valued slots
-
-	if (slotFile != null)
-	     slots = new TreeSet<String>(readLines(slotFile));
-	List<String> svSlots = new ArrayList<String> ();
-	List<String> lSlots = new ArrayList<String> ();
-	for (String slot : slots) {
-	    String type = slotType(slot);
-	    if (type  == "single")
-		svSlots.add(slot);
-	    else if (type == "list")
-		lSlots.add(slot);
+	if (cacheFile != null)
+	    keyHash = KeyIndex.hash(keyFile);
+
+	Set<String> queries = null;
+	if (lazyKey) {
+	    if (slotFile != null)
+		queries = new HashSet<String>(readLines(slotFile));
+	    else
+		queries = ResponseScorer.readQueries(responseFile);
 	}
+	KeyModel key = KeyModel.load(keyFile, anydoc, ignoreoffsets, nocase, keyIndexDir, queries);
+	run(key, responseFile);
+ }
 
-	// ------------- score responses ------------
-	//          for both single-valued and list-valued slots
-
-	// number of non-NIL responses, including those Redundant with reference KB
-	int num_responses = 0;
-	// number of correct non-NIL responses, excluding those Redundant with reference KB
-	int num_correct = 0;
-
-	// counts for different error types for responses
-	int num_wrong = 0;  // includes spurious and incorrect
-	int num_inexact = 0;
-	int num_redundant = 0;  // redundant with another returned response
-	int num_kb_redundant = 0;  // redundant with reference KB
-
-	// number of Correct answers in key (that aren't in reference KB)
-	//   (correct single-value answers + list-value equivalence classes)
-	int num_answers = 0;
-
-	// number of Redundant answers in key (that are in reference KB)
-	//   (list-value kb equivalence classes)
-	int num_kb_answers = 0;
-	int nilc=0,nilw=0;
-	for (String query : slots) {
-		String targetKey = new String("");
-		String[] qfields = query.split(":");
-		targetKey=qfields[0] + "~" + qfields[1] + ":" + qfields[2];
-	    String type = slotType(query);
-	    int num_answers_to_query = 0;
-	    if (query_eclasses.get(query) != null) {
-		if (type == "list")
-		    num_answers_to_query = query_eclasses.get(query).size();
-		else if (type == "single")
-		    num_answers_to_query = 1;
-		else {
-		    System.out.println ("Warning: unrecognizable slot type " + query);
-		    continue;
-		}
-	    }
-	    num_answers += num_answers_to_query;
-
-	    int num_kb_answers_to_query = 0;
-	    if (query_kb_eclasses.get(query) != null) {
-		if (type == "list")
-		    num_kb_answers_to_query = query_kb_eclasses.get(query).size();
-		else if (type == "single")  // this shouldn't happen if SF query entities enumerate single-valued slots to ignore because they're already filled in the reference KB
-		    num_kb_answers_to_query = 1;
-		else {
-		    System.out.println ("Warning: unrecognizable slot type " + query);
-		    continue;
-		}
-	    }
-	    // for single-valued slots, increment num_kb_answers only if there isn't an answer that's not already in the reference KB.
-	    if (type == "list" || num_answers_to_query == 0)
-		num_kb_answers += num_kb_answers_to_query;
+ /**
+  *  scores responses file against a key that has already been loaded;
+  *  the key is only read, so it may be shared with other runs
+  */
 
-	    List<String> responseList = response.get(query);
-	    if (responseList == null) {
-		System.out.println ("Warning: No system response for slot " + query);
-		continue;
-	    }
-	    int num_responses_to_query = responseList.size();  // used only for issuing warnings, not for computing scores
-	    if (type == "single") {
-		if (num_responses_to_query > 1) {
-		    System.out.println ("Warning: Ignoring all but first response among multiple responses for single-valued slot " + query);
-		    responseList = responseList.subList(0,0);
-		    num_responses_to_query = responseList.size();
-		    if (num_responses_to_query != 1) {
-			System.out.println ("Error: unable to take first of multiple responses for single-valued slot for query " + query);
-			System.exit (1);
-		    }
-		}
-	    }
-	    Set<Integer> distincts = new HashSet<Integer>();
-	    for (String responseString : responseList) {
-		String fields[] = responseString.split("\t");  
-		String prov = fields[0];
-		String tkey= new String(targetKey);
-		
-		String symbol = "?";
-		if (prov.equals("NIL")) {
-		    if (num_responses_to_query > 1)
-			System.out.println ("Warning: More than one response, including NIL, for " + query);
-		    num_responses_to_query = 0; //issue warning only once for query; don't warn again when we encounter other, possibly non-NIL, responses to query
-		    if (num_answers_to_query > 0) {
-			// missing filler in system response
-			symbol = "M";
-		    } else if (num_kb_answers_to_query > 0) {
-			symbol = "m"; // missing a filler that is already in the reference KB
-		    } else {
-			symbol = "c"; // "correctly" discovers that there are no known fillers in the corpus
-		    }
-		    tkey += "~NIL";
-		    if(symbol.equals("c")){
-		    	//System.out.println("c "+tkey+" "+mpConfidence.get(tkey));
-		    	nilc++;
-		    	mpTarget.put(tkey,1);
-		    }
-		    else{
-		    	//System.out.println("w "+tkey+" "+mpConfidence.get(tkey));
-		    	nilw++;
-		    	mpTarget.put(tkey,0);
-		    }
-		} else /* non-NIL system response */ {
-		    num_responses++;
-		    String key = query + "\t" + responseString;
-		    tkey += "~" + fields[2] ;		  
-		    String J = judgement.get(key);
-		    if (J == null) {
-			System.out.println ("Warning: No judgement for " + key);
-			J = WRONG;
-		    }
-		    symbol = J;
-		    if (J.equals(IGNORE) || J.equals(WRONG)) {		    	
-			num_wrong++;
-			//adding target for this response
-			mpTarget.put(tkey,0);
-		    } else if (J.equals(INEXACT)) {			
-			num_inexact++;
-			//adding target for this response
-			mpTarget.put(tkey,0);
-		    } else if (J.equals(REDUNDANT)) {
-			Integer E = equivalenceClass.get(key);
-			if (distincts.contains(E)) {				
-			    num_redundant++;
-			    symbol = "r";   // redundant with other returned response			  
-			} else {
-			    num_kb_redundant++;
-			    distincts.add(E);
-			}
-			//adding target for this response
-			mpTarget.put(tkey,2);
-		    } else if (J.equals(CORRECT)) {
-			Integer E = equivalenceClass.get(key);
-			if (distincts.contains(E)) {
-			    num_redundant++;
-			    symbol = "r";   // redundant with other returned response
-			  //adding target for this response
-				mpTarget.put(tkey,2);
-			} else {
-			    num_correct++;
-			    distincts.add(E);
-			  //adding target for this response
-				mpTarget.put(tkey,2);
-			}
-		    } else {
-			System.out.println ("ERROR: Invalid judgement " + J);
-			System.exit (1);
-		    }
-		}
-	    if (trace)
-		System.out.println (symbol + " " + query + " " + responseString);
+ public void run (KeyModel key, String responseFile) throws IOException {
+	ResponseScorer rs = new ResponseScorer(key, runid);
+	rs.trace = trace;
+	rs.slotFile = slotFile;
+	if (traceFile != null)
+	    rs.judgmentLog = new JudgmentLog(traceFile);
+	try {
+	    if (stream) {
+		rs.keepOutputs = false;
+		result = rs.scoreGrouped(responseFile);
+		for (String warning : rs.readWarnings)
+		    System.out.println (warning);
+		System.out.println ("Read responses for " + rs.queriesRead + " slots.");
+	    } else {
+		rs.readResponses(responseFile);
+		for (String warning : rs.readWarnings)
+		    System.out.println (warning);
+		System.out.println ("Read responses for " + rs.response.size() + " slots.");
+		if (cacheFile != null && keyHash != null) {
+		    IncrementalScorer inc = new IncrementalScorer(cacheFile, IncrementalScorer.context(keyHash, key, rs));
+		    result = inc.score(rs);
+		    System.out.println ("Scored " + inc.rescored + " slots, took " + inc.reused + " unchanged slots from " + cacheFile);
+		} else
+		    result = rs.score();
 	    }
+	} finally {
+	    if (rs.judgmentLog != null)
+		rs.judgmentLog.close();
 	}
-
-	System.out.println ("\n======== Summary Statistics ===========");
-	if (slotFile != null)
-	    System.out.println ("Slot lists taken from file " + slotFile);
-	else
-	    System.out.println ("Slot lists taken from system responses");
-	System.out.println ("Slot lists include " + svSlots.size() + " single valued slots");
-	System.out.println ("               and " +  lSlots.size() + " list-valued slots");
-	System.out.println ("\nNumber of filled slots in key that are not in reference KB: " + num_answers);
-	System.out.println ("Number of filled slots in key that are in reference KB: " + num_kb_answers);
-	System.out.println ("\nNumber of filled slots in responses: " + num_responses);
-	System.out.println ("\tNumber Correct (not in reference KB): " + num_correct);
-	System.out.println ("\tNumber Redundant with reference KB: " + num_kb_redundant);
-	System.out.println ("\tNumber redundant with another response: " + num_redundant);
-	System.out.println ("\tNumber inexact: " + num_inexact);
-	System.out.println ("\tNumber incorrect / spurious: " + num_wrong);
-
-	System.out.println("nilc,nilw : "+nilc+","+nilw);
-	float recall;
-	float precision;
-	float F;
-
-	recall = ((float) num_correct) / num_answers;
-	precision = ((float) num_correct) / (num_responses - num_kb_redundant);  // don't penalize for fillers already in reference KB
-	F = (2 * recall * precision) / (recall + precision);
-	System.out.println ("\nDiagnostic scores (ignoring slot fillers in key and responses that are already in reference KB):");
-	System.out.println ("\tDiagnostic Recall: " + num_correct + " / " + num_answers + " = " + recall);
-	System.out.println ("\tDiagnostic Precision: " + num_correct + " / (" + num_responses + "-" + num_kb_redundant + ") = " + precision);
-	System.out.println ("\tDiagnostic F1: " + F);
-
-	recall = ((float) (num_correct + num_kb_redundant)) / (num_answers + num_kb_answers);
-	precision = ((float) (num_correct + num_kb_redundant)) / (num_responses);  
-	F = (2 * recall * precision) / (recall + precision);
-	System.out.println ("\nOfficial Scores (requiring slot fillers that are already in reference KB):");
-	System.out.println ("\tRecall: (" + num_correct + "+" + num_kb_redundant + ") / (" + num_answers + "+" + num_kb_answers + ") = " + recall);
-	System.out.println ("\tPrecision: (" + num_correct + "+" + num_kb_redundant + ") / " + num_responses + " = " + precision);
-	System.out.println ("\tF1: " + F);
+	new ConsoleReporter().report(result);
+	if (curveFile != null)
+	    ThresholdSweep.write(rs, result, curveFile);
+	mpOutput = rs.mpOutput;
+	mpConfidence = rs.mpConfidence;
+	mpTarget = rs.mpTarget;
  }
 
  /**
@@ -898,88 +573,25 @@ public class scorer2014 {
 	return lines;
  }
 
- static List<String> singleValuedSlots = Arrays.asList(
-	"per:date_of_birth",
-	"per:age",
-	"per:country_of_birth",
-	"per:stateorprovince_of_birth",
-	"per:city_of_birth",
-	"per:date_of_death",
-	"per:country_of_death",
-	"per:stateorprovince_of_death",
-	"per:city_of_death",
-	"per:cause_of_death",
-	"per:religion",
-	"org:number_of_employees_members",
-	"org:date_founded",
-	"org:date_dissolved",
-	"org:country_of_headquarters",
-	"org:stateorprovince_of_headquarters",
-	"org:city_of_headquarters",
-	"org:website");
-
- static List<String> listValuedSlots = Arrays.asList(
-	"per:alternate_names",
-	"per:origin",
-	"per:countries_of_residence",
-	"per:statesorprovinces_of_residence",
-	"per:cities_of_residence",
-	"per:schools_attended",
-	"per:title",
-	//	"per:member_of",
-	//	"per:employee_of",
-	"per:employee_or_member_of",
-	"per:spouse",
-	"per:children",
-	"per:parents",
-	"per:siblings",
-	"per:other_family",
-	"per:charges",
-	"org:alternate_names",
-	"org:political_religious_affiliation",
-	"org:top_members_employees",
-	"org:members",
-	"org:member_of",
-	"org:subsidiaries",
-	"org:parents",
-	"org:founded_by",
-	"org:shareholders",
-	"per:awards_won",
-	"per:charities_supported",
-	"per:diseases",
-	"org:products",
-	"per:pos-from",
-	"per:neg-from",
-	"per:pos-towards",
-	"per:neg-towards",
-	"org:pos-from",
-	"org:neg-from",
-	"org:pos-towards",
-	"org:neg-towards",
-	"gpe:pos-from",
-	"gpe:neg-from",
-	"gpe:pos-towards",
-	"gpe:neg-towards");
  /*
   * given entityId:slot, classify slot as "single" or "list" valued
   */
 
  static String slotType (String slot) {
-	String[] slotFields = slot.split(":", 2);
-	if (slotFields.length != 2) {
+	int colon = slot.indexOf(':');
+	if (colon < 0) {
 	    System.out.println("Invalid slot " + slot);
 	    return "error";
 	}
-	if (singleValuedSlots.contains(slotFields[1]))
-	    return "single";
-	if (listValuedSlots.contains(slotFields[1]))
-	    return "list";
+	SlotSchema slotSchema = SlotSchema.parse(slot, colon + 1, slot.length());
+	if (slotSchema != null)
+	    return slotSchema.single ? "single" : "list";
 	System.out.println("Invalid slot " + slot);
      // return "list" if you want 2009 slots to be scored too
 	return "error"; 
  }
 
- private static String solveDisagreement(String j1, String j2) {
+ static String solveDisagreement(String j1, String j2) {
  	if(j1.equals("C") || j2.equals("C")) return "C";
  	if(j1.equals("R") || j2.equals("R")) return "R";
  	if(j1.equals("I") || j2.equals("I")) return "I";
@@ -988,156 +600,15 @@ public class scorer2014 {
  	throw new RuntimeException("Unknown assessment type: " + j1 + " and " + j2);
  }
 
- private static int findSmallest(Set<Integer> s) {
- 	int min = Integer.MAX_VALUE;
- 	for(Integer e: s) {
- 		if(e < min) {
- 			min = e;
- 		}
- 	}
- 	return min;
- }
-
- // HTD: remember that  we now have tab-delimited (not colon-delimited) key == query_id + "\t" + relationProv +  "\t" + fillerProv + "\t" + answerString;
- private static String qidFromKey(String key) {
-	//    	String [] bits = key.split(":");
-	//    	assert(bits[0].startsWith("SF"));
-	//    	assert(bits[1].equals("per") || bits[1].equals("org"));
-	//    	String qid = bits[0] + ":" + bits[1] + ":" + bits[2];
- 	//System.out.println("Using qid " + qid + " from key " + key);
-	String [] bits = key.split("\t");
-	String qid = bits[0];
- 	return qid;
- }
-
- private static void normalizeTo(Set<Integer> eclasses, Set<Integer> equivs, int norm) {
- 	if(eclasses == null) return;
- 	// replace all equivalent eclasses with the normalized one
- 	boolean found = false;
- 	for(Integer eq: equivs){
- 		if(eclasses.contains(eq)) {
- 			eclasses.remove(eq);
- 			found = true;
- 		}
- 	}
- 	if(found) eclasses.add(norm);
- }
-
  /** Sorts spans by docids, then start offsets, then length */
- private static String sortSpans(String s) {
+ static String sortSpans(String s) {
      if(s.equals("*") || s.equals("NIL")) return s;
-     //System.err.println("SORT SPANS ON " + s);
-     List<Span> spans = toSpans(s);
-     String ns = spansToString(spans);
-     //System.err.println("\tfound spans: " + ns);
-     return ns;
+     return ProvenanceCache.sortSpans(s);
  }
 
  /** Removes offsets, removes duplicate docs, then sorts by docid */
- private static String removeOffsets(String s) {
+ static String removeOffsets(String s) {
      if(s.equals("*") || s.equals("NIL")) return s;
-     //System.err.println("REMOVE OFFSETS FROM " + s);
-     List<Span> spans = toSpans(s);
-     HashSet<String> docids = new HashSet<String>();
-     for(Span span: spans) docids.add(span.docid);
-     List<String> sortedDocids = new ArrayList<String>();
-     for(String d: docids) sortedDocids.add(d);
-     Collections.sort(sortedDocids); 
-     String ns = docidsToString(sortedDocids);
-     //System.err.println("\tunique docs: " + ns);   
-     return ns;
- }
-
- private static List<Span> toSpans(String s) {
-     String [] tokens = s.split(",");
-     List<Span> spans = new ArrayList<Span>();
-     assert(tokens.length > 0);
-     for(int i = 0; i < tokens.length; i ++) {
-         String [] bits = tokens[i].split(":");
-         assert(bits.length == 2);
-         int hyphen = bits[1].indexOf("-");
-         assert(hyphen > 0);
-         String start = bits[1].substring(0, hyphen);
-         String end = bits[1].substring(hyphen + 1);
-         spans.add(new Span(bits[0], Integer.parseInt(start), Integer.parseInt(end)));
-     }
-     scorer2014 ss = new scorer2014(); 
-     Collections.sort(spans, ss.new SpanComparator());
-     return spans;
- }
-
- private static String spansToString(List<Span> spans) {
-     StringBuilder sb = new StringBuilder();
-     boolean first = true;
-     for(Span span: spans) {
-         if(! first) sb.append(",");
-         sb.append(span.docid);
-         sb.append(":");
-         sb.append(span.start);
-         sb.append("-");
-         sb.append(span.end);
-         first = false;
-     }
-     return sb.toString();
- }
-
- private static String docidsToString(List<String> docids) {
-     StringBuilder sb = new StringBuilder();
-     boolean first = true;
-     for(String docid: docids) {
-         if(! first) sb.append(",");
-         sb.append(docid);
-         first = false;
-     }
-     return sb.toString();
- }
-
- /** Sort by docid, start offset, and then length of span */
-  class SpanComparator implements Comparator<Span> {
-     public int compare(Span s1,Span s2) {
-         if(s1.equals(s2)) return 0;
-
-         int dc = s1.docid.compareTo(s2.docid);
-         if(dc < 0) { // sort by docid
-             return -1;
-         } else if(dc > 0) {
-             return 1;
-         } else {
-             if(s1.start < s2.start) { // sort by start offset
-                 return -1;
-             } else if(s1.start > s2.start) {
-                 return 1;
-             } else {
-                 if(s1.end - s1.start < s2.end - s2.start) { // sort by span length
-                     return -1;
-                 } else if(s1.end - s1.start > s2.end - s2.start) {
-                     return 1;
-                 } else {
-                     return 0; // all equal!
-                 }
-             }
-         }
-     }
- }
-
- static class Span {
-     String docid;
-     int start;
-     int end;
-
-     Span(String d, int s, int e) {
-         docid = d;
-         start = s;
-         end = e;
-     }
-
-     public boolean equals(Span s) {
-         if(docid.equals(s.docid) && start == s.start && end == s.end) {
-             return true;
-         }
-         return false;
-     }
-
-     public String toString() { return docid + ":" + start + "-" + end; }
+     return ProvenanceCache.removeOffsets(s);
  }
 }